@@ -0,0 +1,377 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Matches whole movie catalogues against a reference catalogue held in
+ *  memory, using the same scoring, from {@link MovieScorer}, and acceptance
+ *  rule as {@link MovieMatcher#match(String, int, Set)} but without a Solr
+ *  query per record.
+ *  <p>
+ *  Candidates are found by blocking: each reference title is normalized and
+ *  broken into character trigrams, and each trigram is indexed together with
+ *  the decade of the movie's release. A query looks up its own trigrams in
+ *  its decade and the two adjacent ones, plus movies of unknown year, and
+ *  only the <code>maxCandidates</code> reference movies sharing the most
+ *  trigrams are scored.
+ *  <p>
+ *  Reference movies must all be added before matching begins. Matching is
+ *  thread-safe, and {@link #matchAll} spreads the scoring over a pool of
+ *  threads while reporting results in input order as they complete.
+ */
+public class BulkMovieMatcher {
+
+  /** A catalogue record. */
+  public static class Movie {
+    public final String id;
+    public final String title;
+    public final int year;
+    public final Set<String> cast;
+
+    public Movie(String id, String title, int year, Set<String> cast) {
+      this.id = id;
+      this.title = title;
+      this.year = year;
+      this.cast = cast;
+    }
+
+    /** Parse a tab separated line of id, title, year (or NULL) and comma
+     *  separated cast, the input format of {@link MovieMatcher#main}.
+     */
+    public static Movie parse(String line) {
+      String[] parts = line.split("\t");
+      int year = parts[2].equals("NULL") ? 0 : Integer.parseInt(parts[2]);
+      Set<String> cast = MovieScorer.castSet(
+          Arrays.asList(parts.length > 3 ? parts[3].split(",") : new String[0]));
+      return new Movie(parts[0], parts[1], year, cast);
+    }
+  }
+
+  /** Receives the results of {@link BulkMovieMatcher#matchAll}. */
+  public interface MatchListener {
+    /** @param matchId the id of the matching reference movie, or
+     *  <code>null</code> if there is no unambiguous match. */
+    void matched(Movie movie, String matchId);
+  }
+
+  public static final int DEFAULT_MAX_CANDIDATES = 10;
+  private static final int CHUNK_SIZE = 1000;
+  private static final int DECADE_UNKNOWN = 0;
+
+  private final List<Movie> movies = new ArrayList<Movie>();
+  private final Map<Long,IntList> postings = new HashMap<Long,IntList>();
+  private final Set<Integer> decades = new TreeSet<Integer>();
+  private final int maxCandidates;
+
+  private final ThreadLocal<int[]> counts = new ThreadLocal<int[]>();
+
+  public BulkMovieMatcher() {
+    this(DEFAULT_MAX_CANDIDATES);
+  }
+
+  /**
+   * @param maxCandidates
+   *   the number of blocked candidates scored for each query, the
+   *   counterpart of the rows requested by {@link MovieMatcher}.
+   */
+  public BulkMovieMatcher(int maxCandidates) {
+    this.maxCandidates = maxCandidates;
+  }
+
+  /** Add a movie to the reference catalogue. Not thread-safe, and may not be
+   *  called once matching has begun.
+   */
+  public void add(Movie movie) {
+    int doc = movies.size();
+    movies.add(movie);
+    int decade = decade(movie.year);
+    decades.add(decade);
+    for (long gram : trigrams(movie.title)) {
+      Long key = key(gram, decade);
+      IntList list = postings.get(key);
+      if (list == null) {
+        list = new IntList();
+        postings.put(key, list);
+      }
+      if (list.size == 0 || list.values[list.size - 1] != doc) {
+        list.add(doc);
+      }
+    }
+  }
+
+  /** Load a reference catalogue in the format read by {@link Movie#parse}. */
+  public void load(BufferedReader in) throws IOException {
+    for (String line = in.readLine(); line != null; line = in.readLine()) {
+      add(Movie.parse(line));
+    }
+  }
+
+  public int size() {
+    return movies.size();
+  }
+
+  /** Find the id of the reference movie matching the specified movie.
+   * @return the id, or <code>null</code> if there is no unambiguous match.
+   */
+  public String match(String title, int year, Set<String> cast) {
+    float bestScore = -1;
+    float secondScore = -1;
+    String bestId = null;
+    for (int doc : candidates(title, year)) {
+      Movie candidate = movies.get(doc);
+      float score = MovieScorer.score(title, year, cast,
+          candidate.title, candidate.year, candidate.cast);
+      if (bestId == null || score > bestScore) {
+        secondScore = bestScore;
+        bestScore = score;
+        bestId = candidate.id;
+      } else if (score > secondScore) {
+        secondScore = score;
+      }
+    }
+    // same acceptance rule as MovieMatcher.match
+    if (bestId != null && bestScore > 0.75 && secondScore < 0.75) {
+      return bestId;
+    }
+    return null;
+  }
+
+  /** Block the reference catalogue, returning the documents sharing the most
+   *  title trigrams with <code>title</code> in nearby decades.
+   */
+  int[] candidates(String title, int year) {
+    int[] count = counts.get();
+    if (count == null || count.length < movies.size()) {
+      count = new int[movies.size()];
+      counts.set(count);
+    }
+    IntList touched = new IntList();
+    List<Integer> searchDecades = new ArrayList<Integer>();
+    if (year == 0) {
+      searchDecades.addAll(decades);
+    } else {
+      int decade = decade(year);
+      searchDecades.add(decade - 1);
+      searchDecades.add(decade);
+      searchDecades.add(decade + 1);
+      searchDecades.add(DECADE_UNKNOWN);
+    }
+    for (long gram : trigrams(title)) {
+      for (int decade : searchDecades) {
+        IntList list = postings.get(key(gram, decade));
+        if (list == null) continue;
+        for (int i = 0; i < list.size; i++) {
+          int doc = list.values[i];
+          if (count[doc]++ == 0) touched.add(doc);
+        }
+      }
+    }
+
+    // order by shared trigrams, then by document, and keep the best
+    long[] ranked = new long[touched.size];
+    for (int i = 0; i < touched.size; i++) {
+      int doc = touched.values[i];
+      ranked[i] = ((long) -count[doc] << 32) | doc;
+      count[doc] = 0;
+    }
+    Arrays.sort(ranked);
+    int n = Math.min(maxCandidates, ranked.length);
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = (int) ranked[i];
+    }
+    return result;
+  }
+
+  /** Match every movie from <code>queries</code> using
+   *  <code>numThreads</code> threads. Movies are matched in chunks and a
+   *  bounded number of chunks is in flight at once, so arbitrarily large
+   *  inputs may be streamed. The listener is called from the calling thread,
+   *  in input order.
+   */
+  public void matchAll(Iterator<Movie> queries, int numThreads,
+                       MatchListener listener) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      LinkedList<Future<String[]>> pending = new LinkedList<Future<String[]>>();
+      LinkedList<List<Movie>> pendingChunks = new LinkedList<List<Movie>>();
+      while (queries.hasNext() || !pending.isEmpty()) {
+        while (queries.hasNext() && pending.size() < numThreads * 2) {
+          final List<Movie> chunk = new ArrayList<Movie>(CHUNK_SIZE);
+          while (queries.hasNext() && chunk.size() < CHUNK_SIZE) {
+            chunk.add(queries.next());
+          }
+          pendingChunks.add(chunk);
+          pending.add(executor.submit(new Callable<String[]>() {
+            public String[] call() {
+              String[] ids = new String[chunk.size()];
+              for (int i = 0; i < ids.length; i++) {
+                Movie movie = chunk.get(i);
+                ids[i] = match(movie.title, movie.year, movie.cast);
+              }
+              return ids;
+            }
+          }));
+        }
+        List<Movie> chunk = pendingChunks.removeFirst();
+        String[] ids;
+        try {
+          ids = pending.removeFirst().get();
+        } catch (ExecutionException e) {
+          throw new RuntimeException(e.getCause());
+        }
+        for (int i = 0; i < ids.length; i++) {
+          listener.matched(chunk.get(i), ids[i]);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Lower case the title and reduce it to letters and digits separated by
+   *  single spaces, with a space at either end.
+   */
+  static String normalize(String title) {
+    StringBuilder sb = new StringBuilder(title.length() + 2);
+    sb.append(' ');
+    for (int i = 0; i < title.length(); i++) {
+      char c = Character.toLowerCase(title.charAt(i));
+      if (Character.isLetterOrDigit(c)) {
+        sb.append(c);
+      } else if (sb.charAt(sb.length() - 1) != ' ') {
+        sb.append(' ');
+      }
+    }
+    if (sb.charAt(sb.length() - 1) != ' ') {
+      sb.append(' ');
+    }
+    return sb.toString();
+  }
+
+  /** The distinct trigrams of the normalized title, each packed into the low
+   *  48 bits of a long.
+   */
+  static long[] trigrams(String title) {
+    String normalized = normalize(title);
+    int n = Math.max(0, normalized.length() - 2);
+    long[] grams = new long[n];
+    for (int i = 0; i < n; i++) {
+      grams[i] = ((long) normalized.charAt(i) << 32)
+          | ((long) normalized.charAt(i + 1) << 16)
+          | normalized.charAt(i + 2);
+    }
+    Arrays.sort(grams);
+    int unique = 0;
+    for (int i = 0; i < n; i++) {
+      if (unique == 0 || grams[i] != grams[unique - 1]) grams[unique++] = grams[i];
+    }
+    return Arrays.copyOf(grams, unique);
+  }
+
+  private static int decade(int year) {
+    return year == 0 ? DECADE_UNKNOWN : year / 10;
+  }
+
+  private static Long key(long gram, int decade) {
+    return ((long) decade << 48) | gram;
+  }
+
+  static class IntList {
+    int[] values = new int[4];
+    int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+
+  /** Usage: <code>BulkMovieMatcher reference.tsv [threads] &lt; queries.tsv</code>.
+   *  Prints <code>id,matchId</code> for each query that matches.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    BulkMovieMatcher matcher = new BulkMovieMatcher();
+    BufferedReader reference = new BufferedReader(
+        new InputStreamReader(new FileInputStream(args[0]), "UTF-8"));
+    try {
+      matcher.load(reference);
+    } finally {
+      reference.close();
+    }
+    int threads = args.length > 1 ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+    final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+    Iterator<Movie> queries = new Iterator<Movie>() {
+      String next = readLine();
+
+      private String readLine() {
+        try {
+          return in.readLine();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      public Movie next() {
+        if (next == null) throw new NoSuchElementException();
+        Movie movie = Movie.parse(next);
+        next = readLine();
+        return movie;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+    matcher.matchAll(queries, threads, new MatchListener() {
+      public void matched(Movie movie, String matchId) {
+        if (matchId != null) {
+          System.out.println(movie.id + "," + matchId);
+        }
+      }
+    });
+  }
+}
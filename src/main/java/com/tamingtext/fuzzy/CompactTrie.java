@@ -0,0 +1,731 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A read-only trie stored in a handful of flat arrays rather than as a graph
+ *  of {@link TrieNode} objects.
+ *  <p>
+ *  Nodes are numbered in breadth-first order so that the children of a node
+ *  occupy a contiguous, label-sorted range of node ids. Each node costs a
+ *  <code>char</code> label, an <code>int</code> offset to its first child and
+ *  a single bit marking whether it ends a word, which is an order of
+ *  magnitude less than a <code>TrieNode</code> with its 26-slot child array.
+ *  Any <code>char</code> may be used as a label.
+ *  <p>
+ *  A trie may optionally carry a weight, such as popularity, for each word.
+ *  Each node then also records the largest weight found beneath it, which
+ *  lets {@link #getTopWords(String, int)} perform a best-first search that
+ *  only expands the nodes needed to find the <i>k</i> highest weighted
+ *  completions, rather than visiting the whole subtree below the prefix.
+ *  <p>
+ *  Once built the trie is immutable and may be shared between threads. The
+ *  traversal methods do not allocate when called with a caller-owned
+ *  {@link Scratch}.
+ *  <p>
+ *  Since the arrays contain no pointers, {@link #write(File)} can save them
+ *  as-is and {@link #open(File)} can serve lookups directly from a memory
+ *  mapped copy of the file. Opening a trie this way is nearly instantaneous
+ *  and every JVM on the machine shares the same pages of the OS page cache.
+ */
+public class CompactTrie {
+
+  /** Receives the words found by {@link CompactTrie#collectWords}. The buffer
+   *  is reused between calls and is only valid for the duration of the call.
+   */
+  public interface WordCollector {
+    void collect(char[] buffer, int length);
+  }
+
+  /** Per-thread working storage for traversals. */
+  public static class Scratch {
+    char[] buffer;
+    int[] nodes;
+    int[] cursors;
+    int[] heap;
+    float[] heapScores;
+
+    public Scratch() {
+      this(16);
+    }
+
+    public Scratch(int depth) {
+      ensureCapacity(depth);
+    }
+
+    void ensureCapacity(int depth) {
+      if (buffer == null || buffer.length < depth) {
+        buffer = new char[depth];
+        nodes = new int[depth + 1];
+        cursors = new int[depth + 1];
+      }
+    }
+
+    void ensureHeapCapacity(int size) {
+      if (heap == null) {
+        heap = new int[Math.max(16, size)];
+        heapScores = new float[heap.length];
+      } else if (heap.length < size) {
+        int newSize = Math.max(size, heap.length * 2);
+        heap = Arrays.copyOf(heap, newSize);
+        heapScores = Arrays.copyOf(heapScores, newSize);
+      }
+    }
+  }
+
+  /** Identifies a file written by {@link #write(File)}, "CTRI". */
+  static final int MAGIC = 0x43545249;
+  static final int VERSION = 1;
+  private static final int HEADER_SIZE = 24;
+  private static final int FLAG_WEIGHTED = 1;
+
+  private final CharBuffer labels;
+  private final IntBuffer firstChild; // size numNodes+1, children of n are [firstChild[n], firstChild[n+1])
+  private final LongBuffer words;
+  private final int numNodes;
+  private final int numWords;
+  private final int maxDepth;
+  private final FloatBuffer weights;    // weight of the word ending at each node, null if unweighted
+  private final FloatBuffer maxWeights; // largest word weight in each node's subtree, null if unweighted
+
+  CompactTrie(CharBuffer labels, IntBuffer firstChild, LongBuffer words,
+              FloatBuffer weights, FloatBuffer maxWeights,
+              int numNodes, int numWords, int maxDepth) {
+    this.labels = labels;
+    this.firstChild = firstChild;
+    this.words = words;
+    this.weights = weights;
+    this.maxWeights = maxWeights;
+    this.numNodes = numNodes;
+    this.numWords = numWords;
+    this.maxDepth = maxDepth;
+  }
+
+  /** Build a trie containing the specified words. The words need not be
+   *  sorted or unique.
+   */
+  public static CompactTrie build(Collection<String> words) {
+    String[] sorted = words.toArray(new String[words.size()]);
+    Arrays.sort(sorted);
+    return buildSorted(sorted, null, dedupe(sorted));
+  }
+
+  /** Build a weighted trie from a map of words to their weights. */
+  public static CompactTrie build(Map<String,Float> weightedWords) {
+    TreeMap<String,Float> sortedMap = new TreeMap<String,Float>(weightedWords);
+    String[] sorted = new String[sortedMap.size()];
+    float[] sortedWeights = new float[sorted.length];
+    int i = 0;
+    for (Map.Entry<String,Float> e : sortedMap.entrySet()) {
+      sorted[i] = e.getKey();
+      sortedWeights[i] = e.getValue();
+      i++;
+    }
+    return buildSorted(sorted, sortedWeights, sorted.length);
+  }
+
+  /** Build a trie containing the words held by the specified {@link TrieNode}. */
+  public static CompactTrie build(TrieNode root) {
+    List<String> words = root.getAllWords();
+    String[] sorted = words.toArray(new String[words.size()]);
+    return buildSorted(sorted, null, sorted.length);
+  }
+
+  /** Build a trie from a UTF-8 file containing one word per line. */
+  public static CompactTrie load(File wordFile) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader br = new BufferedReader(
+        new InputStreamReader(new FileInputStream(wordFile), "UTF-8"));
+    try {
+      for (String line = br.readLine(); line != null; line = br.readLine()) {
+        lines.add(line);
+      }
+    } finally {
+      br.close();
+    }
+    return build(lines);
+  }
+
+  /** Build a weighted trie from a UTF-8 file containing one word per line,
+   *  each followed by a tab and its weight. When a word appears more than
+   *  once the largest weight is kept.
+   */
+  public static CompactTrie loadWeighted(File wordFile) throws IOException {
+    Map<String,Float> weightedWords = new TreeMap<String,Float>();
+    BufferedReader br = new BufferedReader(
+        new InputStreamReader(new FileInputStream(wordFile), "UTF-8"));
+    try {
+      for (String line = br.readLine(); line != null; line = br.readLine()) {
+        int tab = line.lastIndexOf('\t');
+        if (tab < 0) {
+          throw new IOException("Missing weight on line: " + line);
+        }
+        String word = line.substring(0, tab);
+        float weight = Float.parseFloat(line.substring(tab + 1).trim());
+        Float previous = weightedWords.get(word);
+        if (previous == null || previous < weight) {
+          weightedWords.put(word, weight);
+        }
+      }
+    } finally {
+      br.close();
+    }
+    return build(weightedWords);
+  }
+
+  /** Remove adjacent duplicates in place, returning the new length. */
+  private static int dedupe(String[] sorted) {
+    int n = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (n == 0 || !sorted[i].equals(sorted[n - 1])) {
+        sorted[n++] = sorted[i];
+      }
+    }
+    return n;
+  }
+
+  /** Assign node ids breadth first. While building, <code>lo</code>,
+   *  <code>hi</code> and <code>depth</code> record, for each node, the range
+   *  of words sharing its prefix and the length of that prefix.
+   *  <code>wordWeights</code>, when not null, is parallel to
+   *  <code>sorted</code>.
+   */
+  static CompactTrie buildSorted(String[] sorted, float[] wordWeights, int count) {
+    int capacity = Math.max(16, count * 2);
+    char[] labels = new char[capacity];
+    int[] firstChild = new int[capacity + 1];
+    long[] words = new long[wordsLength(capacity)];
+    int[] lo = new int[capacity];
+    int[] hi = new int[capacity];
+    int[] depth = new int[capacity];
+    float[] weights = wordWeights == null ? null : new float[capacity];
+
+    int numNodes = 1;
+    int maxDepth = 0;
+    lo[0] = 0;
+    hi[0] = count;
+    depth[0] = 0;
+    for (int node = 0; node < numNodes; node++) {
+      int d = depth[node];
+      int start = lo[node];
+      int end = hi[node];
+      if (start < end && sorted[start].length() == d) {
+        words[node >> 6] |= 1L << node;
+        if (weights != null) {
+          weights[node] = wordWeights[start];
+        }
+        start++;
+      }
+      firstChild[node] = numNodes;
+      while (start < end) {
+        char c = sorted[start].charAt(d);
+        int next = start + 1;
+        while (next < end && sorted[next].charAt(d) == c) {
+          next++;
+        }
+        if (numNodes == labels.length) {
+          int newCapacity = labels.length * 2;
+          labels = Arrays.copyOf(labels, newCapacity);
+          firstChild = Arrays.copyOf(firstChild, newCapacity + 1);
+          words = Arrays.copyOf(words, wordsLength(newCapacity));
+          lo = Arrays.copyOf(lo, newCapacity);
+          hi = Arrays.copyOf(hi, newCapacity);
+          depth = Arrays.copyOf(depth, newCapacity);
+          if (weights != null) {
+            weights = Arrays.copyOf(weights, newCapacity);
+          }
+        }
+        labels[numNodes] = c;
+        lo[numNodes] = start;
+        hi[numNodes] = next;
+        depth[numNodes] = d + 1;
+        maxDepth = Math.max(maxDepth, d + 1);
+        numNodes++;
+        start = next;
+      }
+    }
+    firstChild[numNodes] = numNodes;
+
+    float[] maxWeights = null;
+    if (weights != null) {
+      weights = Arrays.copyOf(weights, numNodes);
+      maxWeights = new float[numNodes];
+      // children always have larger ids than their parent
+      for (int node = numNodes - 1; node >= 0; node--) {
+        float max = (words[node >> 6] & (1L << node)) != 0
+            ? weights[node] : Float.NEGATIVE_INFINITY;
+        for (int c = firstChild[node]; c < firstChild[node + 1]; c++) {
+          max = Math.max(max, maxWeights[c]);
+        }
+        maxWeights[node] = max;
+      }
+    }
+
+    return new CompactTrie(CharBuffer.wrap(Arrays.copyOf(labels, numNodes)),
+        IntBuffer.wrap(Arrays.copyOf(firstChild, numNodes + 1)),
+        LongBuffer.wrap(Arrays.copyOf(words, wordsLength(numNodes))),
+        weights == null ? null : FloatBuffer.wrap(weights),
+        maxWeights == null ? null : FloatBuffer.wrap(maxWeights),
+        numNodes, count, maxDepth);
+  }
+
+  public int getNumNodes() {
+    return numNodes;
+  }
+
+  public int getNumWords() {
+    return numWords;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public boolean isWeighted() {
+    return weights != null;
+  }
+
+  boolean isWord(int node) {
+    return (words.get(node >> 6) & (1L << node)) != 0;
+  }
+
+  /** The first node in the child range of <code>node</code>. */
+  int childStart(int node) {
+    return firstChild.get(node);
+  }
+
+  /** One past the last node in the child range of <code>node</code>. */
+  int childEnd(int node) {
+    return firstChild.get(node + 1);
+  }
+
+  char label(int node) {
+    return labels.get(node);
+  }
+
+  /** Find the child of <code>node</code> labeled <code>c</code> using a
+   *  binary search over the node's sorted children.
+   * @return the child node id, or -1 if there is no such child.
+   */
+  int child(int node, char c) {
+    int low = firstChild.get(node);
+    int high = firstChild.get(node + 1) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      char label = labels.get(mid);
+      if (label < c) {
+        low = mid + 1;
+      } else if (label > c) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Find the parent of <code>node</code>, that is the node whose child range
+   *  contains it, using a binary search over <code>firstChild</code>.
+   */
+  int parent(int node) {
+    int low = 0;
+    int high = node - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (firstChild.get(mid) <= node) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /** Walk the trie along the characters of <code>prefix</code>.
+   * @return the node reached, or -1 if no word starts with the prefix.
+   */
+  int find(CharSequence prefix) {
+    int node = 0;
+    for (int i = 0, n = prefix.length(); i < n && node >= 0; i++) {
+      node = child(node, prefix.charAt(i));
+    }
+    return node;
+  }
+
+  public boolean contains(CharSequence word) {
+    int node = find(word);
+    return node >= 0 && isWord(node);
+  }
+
+  /** Return the weight of <code>word</code>, or <code>NaN</code> if the word
+   *  is not in the trie or the trie is unweighted.
+   */
+  public float getWeight(CharSequence word) {
+    int node = find(word);
+    if (weights == null || node < 0 || !isWord(node)) {
+      return Float.NaN;
+    }
+    return weights.get(node);
+  }
+
+  /** Return up to <code>numWords</code> words starting with
+   *  <code>prefix</code>, in lexicographic order.
+   */
+  public String[] getWords(String prefix, int numWords) {
+    final List<String> results = new ArrayList<String>(Math.min(numWords, 64));
+    collectWords(prefix, numWords, new Scratch(maxDepth + prefix.length()),
+        new WordCollector() {
+          public void collect(char[] buffer, int length) {
+            results.add(new String(buffer, 0, length));
+          }
+        });
+    return results.toArray(new String[results.size()]);
+  }
+
+  /** Pass up to <code>numWords</code> words starting with <code>prefix</code>
+   *  to <code>collector</code>, in lexicographic order. No objects are
+   *  allocated when <code>scratch</code> is already large enough.
+   * @return the number of words collected.
+   */
+  public int collectWords(CharSequence prefix, int numWords,
+                          Scratch scratch, WordCollector collector) {
+    if (numWords <= 0) return 0;
+    int root = find(prefix);
+    if (root < 0) return 0;
+
+    int plen = prefix.length();
+    scratch.ensureCapacity(plen + maxDepth);
+    char[] buffer = scratch.buffer;
+    int[] nodes = scratch.nodes;
+    int[] cursors = scratch.cursors;
+    for (int i = 0; i < plen; i++) {
+      buffer[i] = prefix.charAt(i);
+    }
+
+    int count = 0;
+    if (isWord(root)) {
+      collector.collect(buffer, plen);
+      if (++count == numWords) return count;
+    }
+    int top = 0;
+    nodes[0] = root;
+    cursors[0] = firstChild.get(root);
+    while (top >= 0) {
+      int c = cursors[top];
+      if (c < firstChild.get(nodes[top] + 1)) {
+        cursors[top] = c + 1;
+        buffer[plen + top] = labels.get(c);
+        top++;
+        nodes[top] = c;
+        cursors[top] = firstChild.get(c);
+        if (isWord(c)) {
+          collector.collect(buffer, plen + top);
+          if (++count == numWords) return count;
+        }
+      } else {
+        top--;
+      }
+    }
+    return count;
+  }
+
+  /** Return up to <code>numWords</code> words starting with
+   *  <code>prefix</code> in order of decreasing weight. An unweighted trie
+   *  returns the same words as {@link #getWords(String, int)}.
+   */
+  public String[] getTopWords(String prefix, int numWords) {
+    final List<String> results = new ArrayList<String>(Math.min(numWords, 64));
+    collectTopWords(prefix, numWords, new Scratch(maxDepth + prefix.length()),
+        new WordCollector() {
+          public void collect(char[] buffer, int length) {
+            results.add(new String(buffer, 0, length));
+          }
+        });
+    return results.toArray(new String[results.size()]);
+  }
+
+  /** Pass up to <code>numWords</code> of the highest weighted words starting
+   *  with <code>prefix</code> to <code>collector</code>, best first.
+   *  <p>
+   *  The search keeps a heap of pending entries, each either a node to expand,
+   *  scored by the maximum weight in its subtree, or a word to emit, scored by
+   *  its own weight. Because no entry can lead to a word weighing more than its
+   *  score, the words are emitted in order and only the nodes on the paths to
+   *  the returned words, plus their siblings, are ever expanded.
+   * @return the number of words collected.
+   */
+  public int collectTopWords(CharSequence prefix, int numWords,
+                             Scratch scratch, WordCollector collector) {
+    if (weights == null) {
+      return collectWords(prefix, numWords, scratch, collector);
+    }
+    if (numWords <= 0) return 0;
+    int root = find(prefix);
+    if (root < 0) return 0;
+
+    int plen = prefix.length();
+    scratch.ensureCapacity(plen + maxDepth);
+    char[] buffer = scratch.buffer;
+    for (int i = 0; i < plen; i++) {
+      buffer[i] = prefix.charAt(i);
+    }
+
+    // expand entries hold the node id, emit entries hold its complement
+    int size = push(scratch, 0, root, maxWeights.get(root));
+    int count = 0;
+    while (size > 0) {
+      int entry = scratch.heap[0];
+      size = pop(scratch, size);
+      if (entry < 0) {
+        int node = ~entry;
+        int length = plen;
+        for (int n = node; n != root; n = parent(n)) {
+          length++;
+        }
+        for (int n = node, i = length - 1; n != root; n = parent(n), i--) {
+          buffer[i] = labels.get(n);
+        }
+        collector.collect(buffer, length);
+        if (++count == numWords) break;
+      } else {
+        if (isWord(entry)) {
+          size = push(scratch, size, ~entry, weights.get(entry));
+        }
+        for (int c = firstChild.get(entry); c < firstChild.get(entry + 1); c++) {
+          size = push(scratch, size, c, maxWeights.get(c));
+        }
+      }
+    }
+    return count;
+  }
+
+  /** Heap order: higher score first, then words before nodes, then lower
+   *  node ids, so that ties are broken the same way on every call.
+   */
+  private static boolean before(int entryA, float scoreA, int entryB, float scoreB) {
+    if (scoreA != scoreB) return scoreA > scoreB;
+    boolean wordA = entryA < 0;
+    if (wordA != entryB < 0) return wordA;
+    return wordA ? ~entryA < ~entryB : entryA < entryB;
+  }
+
+  private static int push(Scratch scratch, int size, int entry, float score) {
+    scratch.ensureHeapCapacity(size + 1);
+    int[] heap = scratch.heap;
+    float[] scores = scratch.heapScores;
+    int i = size;
+    while (i > 0) {
+      int p = (i - 1) >>> 1;
+      if (!before(entry, score, heap[p], scores[p])) break;
+      heap[i] = heap[p];
+      scores[i] = scores[p];
+      i = p;
+    }
+    heap[i] = entry;
+    scores[i] = score;
+    return size + 1;
+  }
+
+  private static int pop(Scratch scratch, int size) {
+    int[] heap = scratch.heap;
+    float[] scores = scratch.heapScores;
+    size--;
+    int entry = heap[size];
+    float score = scores[size];
+    int i = 0;
+    while (true) {
+      int c = 2 * i + 1;
+      if (c >= size) break;
+      if (c + 1 < size && before(heap[c + 1], scores[c + 1], heap[c], scores[c])) {
+        c++;
+      }
+      if (!before(heap[c], scores[c], entry, score)) break;
+      heap[i] = heap[c];
+      scores[i] = scores[c];
+      i = c;
+    }
+    heap[i] = entry;
+    scores[i] = score;
+    return size;
+  }
+
+  /** Save the trie to <code>file</code> in the format read by
+   *  {@link #open(File)}. The file holds a fixed size header followed by
+   *  each of the arrays in turn, padded to 8 byte boundaries.
+   */
+  public void write(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(weights != null ? FLAG_WEIGHTED : 0);
+      out.writeInt(numNodes);
+      out.writeInt(numWords);
+      out.writeInt(maxDepth);
+      for (int i = 0; i < numNodes; i++) {
+        out.writeChar(labels.get(i));
+      }
+      pad(out);
+      for (int i = 0; i <= numNodes; i++) {
+        out.writeInt(firstChild.get(i));
+      }
+      pad(out);
+      for (int i = 0, n = wordsLength(numNodes); i < n; i++) {
+        out.writeLong(words.get(i));
+      }
+      if (weights != null) {
+        for (int i = 0; i < numNodes; i++) {
+          out.writeFloat(weights.get(i));
+        }
+        pad(out);
+        for (int i = 0; i < numNodes; i++) {
+          out.writeFloat(maxWeights.get(i));
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void pad(DataOutputStream out) throws IOException {
+    while (out.size() % 8 != 0) {
+      out.writeByte(0);
+    }
+  }
+
+  private static int padded(int offset) {
+    return (offset + 7) & ~7;
+  }
+
+  private static int wordsLength(int numNodes) {
+    return (numNodes >> 6) + 1;
+  }
+
+  /** Memory map a trie saved by {@link #write(File)}. No copy of the trie is
+   *  made on the heap; the mapping remains valid after the file is closed.
+   */
+  public static CompactTrie open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    MappedByteBuffer buffer;
+    try {
+      long length = raf.length();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Trie file too large to map: " + file);
+      }
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      raf.close();
+    }
+
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a trie file: " + file);
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported trie file version " + buffer.getInt(4)
+          + ": " + file);
+    }
+    boolean weighted = (buffer.getInt(8) & FLAG_WEIGHTED) != 0;
+    int numNodes = buffer.getInt(12);
+    int numWords = buffer.getInt(16);
+    int maxDepth = buffer.getInt(20);
+
+    int offset = HEADER_SIZE;
+    CharBuffer labels = slice(buffer, offset, numNodes * 2).asCharBuffer();
+    offset = padded(offset + numNodes * 2);
+    IntBuffer firstChild = slice(buffer, offset, (numNodes + 1) * 4).asIntBuffer();
+    offset = padded(offset + (numNodes + 1) * 4);
+    LongBuffer words = slice(buffer, offset, wordsLength(numNodes) * 8).asLongBuffer();
+    offset += wordsLength(numNodes) * 8;
+    FloatBuffer weights = null;
+    FloatBuffer maxWeights = null;
+    if (weighted) {
+      weights = slice(buffer, offset, numNodes * 4).asFloatBuffer();
+      offset = padded(offset + numNodes * 4);
+      maxWeights = slice(buffer, offset, numNodes * 4).asFloatBuffer();
+    }
+    return new CompactTrie(labels, firstChild, words, weights, maxWeights,
+        numNodes, numWords, maxDepth);
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length)
+      throws IOException {
+    if (offset + length > buffer.limit()) {
+      throw new IOException("Truncated trie file");
+    }
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(offset);
+    dup.limit(offset + length);
+    return dup.slice();
+  }
+
+  /** Check whether <code>file</code> was written by {@link #write(File)}. */
+  public static boolean isTrieFile(File file) throws IOException {
+    if (file.length() < HEADER_SIZE) return false;
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      return in.readInt() == MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Usage: <code>CompactTrie words-or-trie-file [output-trie-file]</code>.
+   *  When an output file is given the trie is saved there, otherwise
+   *  prefixes are read from standard input and their completions printed.
+   */
+  public static void main(String[] args) throws IOException {
+    File input = new File(args[0]);
+    CompactTrie trie = isTrieFile(input) ? open(input) : load(input);
+    System.out.println("Loaded " + trie.getNumWords() + " words into "
+        + trie.getNumNodes() + " nodes");
+    if (args.length > 1) {
+      trie.write(new File(args[1]));
+      return;
+    }
+    BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+    for (String line = br.readLine(); line != null; line = br.readLine()) {
+      System.out.println(Arrays.asList(trie.getWords(line, 10)));
+    }
+  }
+}
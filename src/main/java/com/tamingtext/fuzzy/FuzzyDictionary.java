@@ -0,0 +1,200 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+
+/** An in-memory dictionary that finds every word within a given edit
+ *  distance of a query word, without a round trip to Solr.
+ *  <p>
+ *  The words are held in a {@link CompactTrie}. A lookup walks the trie depth
+ *  first while simulating a Levenshtein automaton for the query word: each
+ *  trie node extends its parent's row of the edit distance matrix by one
+ *  character, and a branch is abandoned as soon as every cell in its row
+ *  exceeds the maximum distance. Words sharing a prefix share the work for
+ *  that prefix, and most of the trie is never visited.
+ *  <p>
+ *  Instances are immutable and may be shared between threads.
+ */
+public class FuzzyDictionary {
+
+  /** Receives the words found by {@link FuzzyDictionary#collectWords}. The
+   *  buffer is reused between calls and is only valid for the duration of the
+   *  call.
+   */
+  public interface MatchCollector {
+    void collect(char[] buffer, int length, int distance);
+  }
+
+  private final CompactTrie trie;
+
+  public FuzzyDictionary(CompactTrie trie) {
+    this.trie = trie;
+  }
+
+  public FuzzyDictionary(Collection<String> words) {
+    this(CompactTrie.build(words));
+  }
+
+  /** Build a dictionary from the terms indexed in <code>field</code>. */
+  public static FuzzyDictionary build(IndexReader reader, String field)
+      throws IOException {
+    List<String> words = new ArrayList<String>();
+    TermEnum terms = reader.terms(new Term(field, ""));
+    try {
+      do {
+        Term term = terms.term();
+        if (term == null || !term.field().equals(field)) {
+          break;
+        }
+        words.add(term.text());
+      } while (terms.next());
+    } finally {
+      terms.close();
+    }
+    return new FuzzyDictionary(words);
+  }
+
+  public CompactTrie getTrie() {
+    return trie;
+  }
+
+  /** Return the words within <code>maxDistance</code> edits of
+   *  <code>word</code>, in lexicographic order.
+   */
+  public String[] getWords(String word, int maxDistance) {
+    final List<String> results = new ArrayList<String>();
+    collectWords(word, maxDistance, new MatchCollector() {
+      public void collect(char[] buffer, int length, int distance) {
+        results.add(new String(buffer, 0, length));
+      }
+    });
+    return results.toArray(new String[results.size()]);
+  }
+
+  /** Return the word closest to <code>word</code> that is within
+   *  <code>maxDistance</code> edits of it, or <code>null</code> if there is
+   *  none. The lexicographically first word wins a tie.
+   */
+  public String getClosestWord(String word, int maxDistance) {
+    final String[] best = new String[1];
+    final int[] bestDistance = { Integer.MAX_VALUE };
+    collectWords(word, maxDistance, new MatchCollector() {
+      public void collect(char[] buffer, int length, int distance) {
+        if (distance < bestDistance[0]) {
+          bestDistance[0] = distance;
+          best[0] = new String(buffer, 0, length);
+        }
+      }
+    });
+    return best[0];
+  }
+
+  /** Pass every word within <code>maxDistance</code> edits of
+   *  <code>word</code>, along with its distance, to <code>collector</code>.
+   * @return the number of words found.
+   */
+  public int collectWords(CharSequence word, int maxDistance,
+                          MatchCollector collector) {
+    int m = word.length();
+    char[] query = new char[m];
+    for (int i = 0; i < m; i++) {
+      query[i] = word.charAt(i);
+    }
+    int width = m + 1;
+    int maxDepth = trie.getMaxDepth();
+    int[] rows = new int[(maxDepth + 1) * width]; // row d starts at d * width
+    char[] buffer = new char[Math.max(1, maxDepth)];
+    int[] nodes = new int[maxDepth + 1];
+    int[] cursors = new int[maxDepth + 1];
+
+    int count = 0;
+    for (int j = 0; j <= m; j++) {
+      rows[j] = j;
+    }
+    if (trie.isWord(0) && m <= maxDistance) {
+      collector.collect(buffer, 0, m);
+      count++;
+    }
+    if (m > maxDistance + maxDepth) {
+      return count;
+    }
+
+    int top = 0;
+    nodes[0] = 0;
+    cursors[0] = trie.childStart(0);
+    while (top >= 0) {
+      int c = cursors[top];
+      if (c >= trie.childEnd(nodes[top])) {
+        top--;
+        continue;
+      }
+      cursors[top] = c + 1;
+      char label = trie.label(c);
+      buffer[top] = label;
+
+      int prev = top * width;
+      int curr = prev + width;
+      int rowMin = rows[curr] = top + 1;
+      for (int j = 1; j <= m; j++) {
+        int d = rows[prev + j - 1] + (query[j - 1] == label ? 0 : 1);
+        d = Math.min(d, rows[prev + j] + 1);
+        d = Math.min(d, rows[curr + j - 1] + 1);
+        rows[curr + j] = d;
+        if (d < rowMin) rowMin = d;
+      }
+
+      int distance = rows[curr + m];
+      if (distance <= maxDistance && trie.isWord(c)) {
+        collector.collect(buffer, top + 1, distance);
+        count++;
+      }
+      if (rowMin <= maxDistance) {
+        top++;
+        nodes[top] = c;
+        cursors[top] = trie.childStart(c);
+      }
+    }
+    return count;
+  }
+
+  public static void main(String[] args) throws IOException {
+    File input = new File(args[0]);
+    CompactTrie trie = CompactTrie.isTrieFile(input)
+        ? CompactTrie.open(input) : CompactTrie.load(input);
+    FuzzyDictionary dictionary = new FuzzyDictionary(trie);
+    int maxDistance = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+    BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+    for (String line = br.readLine(); line != null; line = br.readLine()) {
+      System.out.println(java.util.Arrays.asList(
+          dictionary.getWords(line, maxDistance)));
+    }
+  }
+}
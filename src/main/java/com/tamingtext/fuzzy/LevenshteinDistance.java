@@ -19,6 +19,8 @@
 
 package com.tamingtext.fuzzy;
 
+import java.util.Arrays;
+
 public class LevenshteinDistance {
 
   //<start id="ed-levenshtein"/>
@@ -54,4 +56,176 @@ public class LevenshteinDistance {
   </calloutlist>
    */
   //<end id="ed-levenshtein"/>
+
+  /** Compute the edit distance between <code>s</code> and <code>t</code> if
+   *  it is no more than <code>maxDistance</code>.
+   * @return the distance, or <code>maxDistance + 1</code> if it is larger.
+   * @see #levenshteinDistance(char[], char[], int, int[])
+   */
+  public int levenshteinDistance(char[] s, char[] t, int maxDistance) {
+    return levenshteinDistance(s, t, maxDistance, new int[2 * (t.length + 1)]);
+  }
+
+  /** Compute the edit distance between <code>s</code> and <code>t</code> if
+   *  it is no more than <code>maxDistance</code>, using
+   *  <code>scratch</code> instead of allocating a distance matrix.
+   *  <p>
+   *  Only two rows of the matrix are kept and within each row only the cells
+   *  no more than <code>maxDistance</code> from the diagonal are computed,
+   *  since any path through the other cells already costs more than that.
+   *  The computation stops as soon as every cell in a row exceeds
+   *  <code>maxDistance</code>.
+   *
+   * @param scratch
+   *   working storage of at least <code>2 * (t.length + 1)</code> ints,
+   *   which may be reused between calls.
+   * @return the distance, or <code>maxDistance + 1</code> if it is larger.
+   */
+  public int levenshteinDistance(char[] s, char[] t, int maxDistance,
+                                 int[] scratch) {
+    int m = s.length;
+    int n = t.length;
+    int k = Math.min(maxDistance, Math.max(m, n));
+    int limit = k + 1;
+    if (Math.abs(m - n) > k) {
+      return maxDistance + 1;
+    }
+
+    int prev = 0;      // offset of the previous row in scratch
+    int curr = n + 1;  // offset of the current row in scratch
+    for (int j = 0; j <= Math.min(n, k); j++) {
+      scratch[prev + j] = j;
+    }
+    if (k + 1 <= n) {
+      scratch[prev + k + 1] = limit;
+    }
+
+    for (int i = 1; i <= m; i++) {
+      int lo = Math.max(1, i - k);
+      int hi = Math.min(n, i + k);
+      int rowMin;
+      if (lo == 1) {
+        scratch[curr] = rowMin = Math.min(i, limit);
+      } else {
+        scratch[curr + lo - 1] = rowMin = limit;
+      }
+      char si = s[i - 1];
+      for (int j = lo; j <= hi; j++) {
+        int d = scratch[prev + j - 1] + (si == t[j - 1] ? 0 : 1);
+        d = Math.min(d, scratch[prev + j] + 1);
+        d = Math.min(d, scratch[curr + j - 1] + 1);
+        if (d > limit) d = limit;
+        scratch[curr + j] = d;
+        if (d < rowMin) rowMin = d;
+      }
+      if (hi < n) {
+        scratch[curr + hi + 1] = limit;
+      }
+      if (rowMin > k) {
+        return maxDistance + 1;
+      }
+      int tmp = prev;
+      prev = curr;
+      curr = tmp;
+    }
+    int d = scratch[prev + n];
+    return d > k ? maxDistance + 1 : d;
+  }
+
+  /** Computes the edit distance between a fixed pattern of at most 64
+   *  characters and any number of other strings using Myers' bit-parallel
+   *  algorithm, as reformulated for edit distance by Hyyr&ouml;. Each column
+   *  of the distance matrix is encoded as bit vectors of vertical deltas
+   *  so a whole column is updated with a few word operations, making each
+   *  comparison linear in the length of the other string.
+   *  <p>
+   *  This is well suited to spelling correction, where one misspelling is
+   *  compared against many candidates. Instances are immutable and may be
+   *  shared between threads.
+   */
+  public static class BitParallelMatcher {
+
+    public static final int MAX_PATTERN_LENGTH = 64;
+
+    private final int m;
+    private final long[] asciiMasks = new long[128];
+    private final char[] otherChars;
+    private final long[] otherMasks;
+
+    public BitParallelMatcher(char[] pattern) {
+      m = pattern.length;
+      if (m > MAX_PATTERN_LENGTH) {
+        throw new IllegalArgumentException("Pattern longer than "
+            + MAX_PATTERN_LENGTH + " characters: " + new String(pattern));
+      }
+      char[] chars = new char[m];
+      long[] masks = new long[m];
+      int numOther = 0;
+      for (int i = 0; i < m; i++) {
+        char c = pattern[i];
+        if (c < 128) {
+          asciiMasks[c] |= 1L << i;
+        } else {
+          int o = 0;
+          while (o < numOther && chars[o] != c) o++;
+          if (o == numOther) chars[numOther++] = c;
+          masks[o] |= 1L << i;
+        }
+      }
+      otherChars = Arrays.copyOf(chars, numOther);
+      otherMasks = Arrays.copyOf(masks, numOther);
+    }
+
+    private long mask(char c) {
+      if (c < 128) return asciiMasks[c];
+      for (int o = 0; o < otherChars.length; o++) {
+        if (otherChars[o] == c) return otherMasks[o];
+      }
+      return 0L;
+    }
+
+    public int distance(char[] t) {
+      return distance(t, Integer.MAX_VALUE - 1);
+    }
+
+    /** Compute the edit distance between the pattern and <code>t</code> if
+     *  it is no more than <code>maxDistance</code>. The computation stops
+     *  once the remaining characters of <code>t</code> can no longer bring
+     *  the distance back within bounds.
+     * @return the distance, or <code>maxDistance + 1</code> if it is larger.
+     */
+    public int distance(char[] t, int maxDistance) {
+      int n = t.length;
+      if (m == 0) {
+        return n <= maxDistance ? n : maxDistance + 1;
+      }
+      if (Math.abs(m - n) > maxDistance) {
+        return maxDistance + 1;
+      }
+      long last = 1L << (m - 1);
+      long pv = -1L;
+      long mv = 0L;
+      int score = m;
+      for (int j = 0; j < n; j++) {
+        long eq = mask(t[j]);
+        long xv = eq | mv;
+        long xh = (((eq & pv) + pv) ^ pv) | eq;
+        long ph = mv | ~(xh | pv);
+        long mh = pv & xh;
+        if ((ph & last) != 0) {
+          score++;
+        } else if ((mh & last) != 0) {
+          score--;
+        }
+        ph = (ph << 1) | 1L;
+        mh <<= 1;
+        pv = mh | ~(xv | ph);
+        mv = ph & xv;
+        if (score - (n - j - 1) > maxDistance) {
+          return maxDistance + 1;
+        }
+      }
+      return score <= maxDistance ? score : maxDistance + 1;
+    }
+  }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Computes MinHash signatures, fixed size sketches of a set whose
+ *  agreement estimates the Jaccard coefficient of the sets they were
+ *  computed from.
+ *  <p>
+ *  For each of <code>numHashes</code> random hash functions the signature
+ *  records the smallest hash value of any member of the set. Two sets have
+ *  the same minimum for a given function with probability equal to their
+ *  Jaccard coefficient, so the fraction of matching positions in two
+ *  signatures estimates it with a standard error of roughly
+ *  <code>1/sqrt(numHashes)</code>, however large the documents are.
+ *  <p>
+ *  Instances are immutable and may be shared between threads. Signatures are
+ *  only comparable when computed by instances with the same number of hashes
+ *  and seed.
+ */
+public class MinHash {
+
+  private final long[] multipliers;
+  private final long[] increments;
+
+  public MinHash(int numHashes) {
+    this(numHashes, 0x5eed);
+  }
+
+  public MinHash(int numHashes, long seed) {
+    Random random = new Random(seed);
+    multipliers = new long[numHashes];
+    increments = new long[numHashes];
+    for (int i = 0; i < numHashes; i++) {
+      multipliers[i] = random.nextLong() | 1L; // odd multipliers
+      increments[i] = random.nextLong();
+    }
+  }
+
+  public int getNumHashes() {
+    return multipliers.length;
+  }
+
+  /** Hash function <code>i</code>, a multiply-shift hash of the 32 bit
+   *  element id.
+   */
+  private int hash(int i, int x) {
+    return (int) ((multipliers[i] * (x & 0xFFFFFFFFL) + increments[i]) >>> 32);
+  }
+
+  /** Compute the signature of a set of ids, such as token ids or n-gram
+   *  hashes. Duplicates do not affect the result.
+   * @param signature
+   *   receives the signature, must hold at least {@link #getNumHashes()} ints.
+   */
+  public int[] signature(int[] ids, int offset, int length, int[] signature) {
+    int k = multipliers.length;
+    Arrays.fill(signature, 0, k, Integer.MAX_VALUE);
+    for (int j = offset, end = offset + length; j < end; j++) {
+      int x = ids[j];
+      for (int i = 0; i < k; i++) {
+        int h = hash(i, x);
+        if (h < signature[i]) signature[i] = h;
+      }
+    }
+    return signature;
+  }
+
+  public int[] signature(int[] ids) {
+    return signature(ids, 0, ids.length, new int[multipliers.length]);
+  }
+
+  /** Compute the signature of the set of character n-grams, or shingles, of
+   *  <code>text</code>. Each n-gram is hashed in place, so no strings are
+   *  created. Text shorter than <code>n</code> is treated as a single n-gram.
+   */
+  public int[] signature(CharSequence text, int n, int[] signature) {
+    int k = multipliers.length;
+    Arrays.fill(signature, 0, k, Integer.MAX_VALUE);
+    int length = text.length();
+    int last = Math.max(0, length - n);
+    for (int start = 0; start <= last; start++) {
+      int x = shingleHash(text, start, Math.min(length, start + n));
+      for (int i = 0; i < k; i++) {
+        int h = hash(i, x);
+        if (h < signature[i]) signature[i] = h;
+      }
+    }
+    return signature;
+  }
+
+  public int[] signature(CharSequence text, int n) {
+    return signature(text, n, new int[multipliers.length]);
+  }
+
+  /** Hash the characters of <code>text</code> from <code>start</code> up to
+   *  <code>end</code> as {@link String#hashCode()} would.
+   */
+  static int shingleHash(CharSequence text, int start, int end) {
+    int x = 0;
+    for (int c = start; c < end; c++) {
+      x = 31 * x + text.charAt(c);
+    }
+    return x;
+  }
+
+  /** Estimate the Jaccard coefficient of two sets from their signatures. */
+  public static float similarity(int[] s, int[] t) {
+    int k = Math.min(s.length, t.length);
+    if (k == 0) return 0f;
+    int same = 0;
+    for (int i = 0; i < k; i++) {
+      if (s[i] == t[i]) same++;
+    }
+    return (float) same / k;
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** A locality sensitive hashing index for finding near-duplicate documents
+ *  without comparing every pair.
+ *  <p>
+ *  Each document is reduced to a {@link MinHash} signature of
+ *  <code>numBands * rowsPerBand</code> hashes. The signature is cut into
+ *  bands and each band is hashed into its own table, so two documents become
+ *  candidates when they agree on every row of at least one band. Documents
+ *  with Jaccard coefficient <i>s</i> collide with probability
+ *  <code>1 - (1 - s<sup>r</sup>)<sup>b</sup></code>, a steep S-curve around
+ *  <code>(1/b)<sup>1/r</sup></code>; for example 20 bands of 5 rows picks out
+ *  pairs above roughly 0.55. Candidates are then verified with the exact
+ *  Jaccard coefficient of their sets using
+ *  {@link OverlapMeasures#jaccard(int[], int, int[], int)}.
+ *  <p>
+ *  Documents may be added while the index is being queried.
+ */
+public class MinHashIndex {
+
+  /** A document found by {@link MinHashIndex#query}. */
+  public static class Match {
+    private final int doc;
+    private final float similarity;
+
+    public Match(int doc, float similarity) {
+      this.doc = doc;
+      this.similarity = similarity;
+    }
+
+    /** The number assigned to the document when it was added. */
+    public int getDoc() {
+      return doc;
+    }
+
+    public float getSimilarity() {
+      return similarity;
+    }
+
+    public String toString() {
+      return doc + ":" + similarity;
+    }
+  }
+
+  private static final Comparator<Match> BY_SIMILARITY = new Comparator<Match>() {
+    public int compare(Match a, Match b) {
+      if (a.similarity != b.similarity) return a.similarity > b.similarity ? -1 : 1;
+      return a.doc - b.doc;
+    }
+  };
+
+  private final int numBands;
+  private final int rowsPerBand;
+  private final int shingleSize;
+  private final MinHash minHash;
+  private final OverlapMeasures measures = new OverlapMeasures();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final LongIntMap[] bands;
+  private final List<int[]> sets = new ArrayList<int[]>();
+  /** For the entry of each document in each band, the previous document
+   *  added to the same bucket, or -1.
+   */
+  private int[] chain = new int[1024];
+
+  /**
+   * @param shingleSize
+   *   the length of the character n-grams used to represent text documents.
+   */
+  public MinHashIndex(int numBands, int rowsPerBand, int shingleSize) {
+    this.numBands = numBands;
+    this.rowsPerBand = rowsPerBand;
+    this.shingleSize = shingleSize;
+    this.minHash = new MinHash(numBands * rowsPerBand);
+    this.bands = new LongIntMap[numBands];
+    for (int b = 0; b < numBands; b++) {
+      bands[b] = new LongIntMap();
+    }
+  }
+
+  public MinHashIndex() {
+    this(20, 5, 5);
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return sets.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Add a document given as a set of ids, such as token ids.
+   * @return the number assigned to the document, starting at 0.
+   */
+  public int add(int[] ids, int length) {
+    int[] set = Arrays.copyOf(ids, length);
+    set = Arrays.copyOf(set, OverlapMeasures.toSortedSet(set, length));
+    return addSet(set);
+  }
+
+  /** Add a text document, represented by its set of character shingles.
+   * @return the number assigned to the document, starting at 0.
+   */
+  public int add(CharSequence text) {
+    return addSet(shingles(text));
+  }
+
+  private int addSet(int[] set) {
+    long[] keys = bandKeys(minHash.signature(set, 0, set.length,
+        new int[minHash.getNumHashes()]));
+    lock.writeLock().lock();
+    try {
+      int doc = sets.size();
+      sets.add(set);
+      if (chain.length < (doc + 1) * numBands) {
+        chain = Arrays.copyOf(chain, Math.max(chain.length * 2, (doc + 1) * numBands));
+      }
+      for (int b = 0; b < numBands; b++) {
+        chain[doc * numBands + b] = bands[b].put(keys[b], doc);
+      }
+      return doc;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Find the documents whose sets have a Jaccard coefficient of at least
+   *  <code>threshold</code> with the specified set of ids.
+   * @return the matches, most similar first.
+   */
+  public List<Match> query(int[] ids, int length, float threshold) {
+    int[] set = Arrays.copyOf(ids, length);
+    set = Arrays.copyOf(set, OverlapMeasures.toSortedSet(set, length));
+    return querySet(set, threshold);
+  }
+
+  /** Find the text documents whose shingle sets have a Jaccard coefficient of
+   *  at least <code>threshold</code> with those of <code>text</code>.
+   * @return the matches, most similar first.
+   */
+  public List<Match> query(CharSequence text, float threshold) {
+    return querySet(shingles(text), threshold);
+  }
+
+  private List<Match> querySet(int[] set, float threshold) {
+    long[] keys = bandKeys(minHash.signature(set, 0, set.length,
+        new int[minHash.getNumHashes()]));
+    List<Match> matches = new ArrayList<Match>();
+    Set<Integer> seen = new HashSet<Integer>();
+    lock.readLock().lock();
+    try {
+      for (int b = 0; b < numBands; b++) {
+        for (int doc = bands[b].get(keys[b]); doc >= 0; doc = chain[doc * numBands + b]) {
+          if (seen.add(doc)) {
+            int[] other = sets.get(doc);
+            float similarity = measures.jaccard(set, set.length, other, other.length);
+            if (similarity >= threshold) {
+              matches.add(new Match(doc, similarity));
+            }
+          }
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    Collections.sort(matches, BY_SIMILARITY);
+    return matches;
+  }
+
+  /** Hash the sorted, distinct character shingles of <code>text</code>. */
+  int[] shingles(CharSequence text) {
+    int length = text.length();
+    int count = Math.max(1, length - shingleSize + 1);
+    int[] hashes = new int[count];
+    for (int start = 0; start < count; start++) {
+      hashes[start] = MinHash.shingleHash(text, start, Math.min(length, start + shingleSize));
+    }
+    return Arrays.copyOf(hashes, OverlapMeasures.toSortedSet(hashes, count));
+  }
+
+  /** Combine the rows of each band of a signature into a single key. */
+  private long[] bandKeys(int[] signature) {
+    long[] keys = new long[numBands];
+    for (int b = 0; b < numBands; b++) {
+      long key = 1125899906842597L;
+      for (int r = b * rowsPerBand, end = r + rowsPerBand; r < end; r++) {
+        key = 31 * key + signature[r];
+      }
+      keys[b] = key;
+    }
+    return keys;
+  }
+
+  /** An open addressing hash map from long keys to the most recent int
+   *  value stored under that key.
+   */
+  static class LongIntMap {
+    private long[] keys = new long[16];
+    private int[] values = new int[16];
+    private boolean[] used = new boolean[16];
+    private int size;
+
+    private static int slot(long key, int mask) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h >>> 32) & mask;
+    }
+
+    /** @return the value stored under <code>key</code>, or -1. */
+    int get(long key) {
+      int mask = keys.length - 1;
+      for (int i = slot(key, mask); used[i]; i = (i + 1) & mask) {
+        if (keys[i] == key) return values[i];
+      }
+      return -1;
+    }
+
+    /** Store <code>value</code> under <code>key</code>.
+     * @return the value previously stored under <code>key</code>, or -1.
+     */
+    int put(long key, int value) {
+      if (2 * (size + 1) > keys.length) {
+        rehash(keys.length * 2);
+      }
+      int mask = keys.length - 1;
+      int i = slot(key, mask);
+      while (used[i]) {
+        if (keys[i] == key) {
+          int previous = values[i];
+          values[i] = value;
+          return previous;
+        }
+        i = (i + 1) & mask;
+      }
+      used[i] = true;
+      keys[i] = key;
+      values[i] = value;
+      size++;
+      return -1;
+    }
+
+    private void rehash(int capacity) {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      boolean[] oldUsed = used;
+      keys = new long[capacity];
+      values = new int[capacity];
+      used = new boolean[capacity];
+      int mask = capacity - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldUsed[j]) {
+          int i = slot(oldKeys[j], mask);
+          while (used[i]) i = (i + 1) & mask;
+          used[i] = true;
+          keys[i] = oldKeys[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+  }
+}
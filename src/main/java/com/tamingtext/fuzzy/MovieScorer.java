@@ -0,0 +1,68 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.search.spell.JaroWinklerDistance;
+import org.apache.lucene.search.spell.StringDistance;
+
+/** The record scoring of {@link MovieMatcher}, which combines the
+ *  Jaro-Winkler distance of the titles, the reciprocal distance of the years
+ *  and the overlap of the casts, for matching without a Solr server.  It is
+ *  stateless and thread-safe.
+ */
+public final class MovieScorer {
+
+  private static final StringDistance sd = new JaroWinklerDistance();
+
+  private MovieScorer() {
+  }
+
+  /** Score two movies as {@link MovieMatcher} scores a candidate. */
+  public static float score(String title1, int year1, Set<String> cast1,
+                            String title2, int year2, Set<String> cast2) {
+    float titleScore = sd.getDistance(title1.toLowerCase(), title2.toLowerCase());
+    float yearScore = (float) 1/(Math.abs(year1-year2)+1);
+    float castScore = (float) intersectionSize(cast1,cast2)/
+                        Math.min(cast1.size(),cast2.size());
+    return (titleScore*.5f)+
+           (yearScore*0.2f)+
+           (castScore*0.3f);
+  }
+
+  private static int intersectionSize(Set<String> cast1, Set<String> cast2) {
+    int size = 0;
+    for (String actor : cast1)
+      if (cast2.contains(actor)) size++;
+    return size;
+  }
+
+  /** The lower cased names of the cast, the form {@link #score} expects. */
+  public static Set<String> castSet(Collection<?> cast) {
+    Set<String> castSet = new HashSet<String>();
+    for (Object actor : cast) {
+      castSet.add(actor.toString().toLowerCase());
+    }
+    return castSet;
+  }
+}
@@ -42,13 +42,28 @@ import org.apache.solr.analysis.PatternTokenizer;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.regex.Pattern;
 
 public class OverlapMeasures {
   
-  //<start id="jaccard_end"/>
+  /** Compute the Jaccard coefficient, <code>|S&cap;T|/|S&cup;T|</code>, of
+   *  the sets of characters in <code>s</code> and <code>t</code>.  Runs in
+   *  linear time and allocates nothing.
+   */
   public float jaccard(char[] s, char[] t) {
+    long overlap = charOverlap(s, t);
+    int intersection = (int) (overlap >>> 32);
+    int union = (int) overlap - intersection;
+    return union == 0 ? 1f : (float) intersection / union;
+  }
+
+  /** The Jaccard coefficient computed by comparing every pair of characters,
+   *  which {@link #jaccard(char[], char[])} matches.
+   */
+  //<start id="jaccard_end"/>
+  float jaccardByScan(char[] s, char[] t) {
     int intersection = 0;
     int union = s.length+t.length;
     boolean[] sdup = new boolean[s.length];
@@ -97,6 +112,152 @@ public class OverlapMeasures {
    */
   //<end id="jaccard_end"/>
 
+  /** Compute the Dice coefficient, <code>2|S&cap;T|/(|S|+|T|)</code>, of the
+   *  sets of characters in <code>s</code> and <code>t</code>.
+   */
+  public float dice(char[] s, char[] t) {
+    long overlap = charOverlap(s, t);
+    int total = (int) overlap;
+    return total == 0 ? 1f : (float) 2 * (overlap >>> 32) / total;
+  }
+
+  /** Bitsets over all char values, reused by each thread and left cleared. */
+  private static final ThreadLocal<long[][]> charSets = new ThreadLocal<long[][]>() {
+    @Override
+    protected long[][] initialValue() {
+      return new long[2][(Character.MAX_VALUE + 1) >> 6];
+    }
+  };
+
+  /** Count the distinct characters of <code>s</code> and <code>t</code>, and
+   *  those they share, by marking them in the thread's bitsets and clearing
+   *  only the marked words afterwards.
+   * @return the size of the intersection in the high 32 bits, and the sum
+   *   of the sizes of the two sets in the low 32 bits.
+   */
+  private static long charOverlap(char[] s, char[] t) {
+    long[][] sets = charSets.get();
+    long[] sBits = sets[0];
+    long[] tBits = sets[1];
+    int total = 0;
+    int intersection = 0;
+    for (char c : s) {
+      long bit = 1L << c;
+      if ((sBits[c >> 6] & bit) == 0) {
+        sBits[c >> 6] |= bit;
+        total++;
+      }
+    }
+    for (char c : t) {
+      long bit = 1L << c;
+      if ((tBits[c >> 6] & bit) == 0) {
+        tBits[c >> 6] |= bit;
+        total++;
+        if ((sBits[c >> 6] & bit) != 0) {
+          intersection++;
+        }
+      }
+    }
+    for (char c : s) {
+      sBits[c >> 6] = 0;
+    }
+    for (char c : t) {
+      tBits[c >> 6] = 0;
+    }
+    return ((long) intersection << 32) | total;
+  }
+
+  /** Sort the first <code>length</code> ids and remove duplicates in place,
+   *  preparing them for the sorted set measures below.
+   * @return the number of distinct ids, now at the front of the array.
+   */
+  public static int toSortedSet(int[] ids, int length) {
+    Arrays.sort(ids, 0, length);
+    int n = 0;
+    for (int i = 0; i < length; i++) {
+      if (n == 0 || ids[i] != ids[n - 1]) ids[n++] = ids[i];
+    }
+    return n;
+  }
+
+  /** Count the ids common to two sorted, duplicate free arrays with a
+   *  single linear merge.
+   */
+  public static int intersectionSize(int[] s, int sLength, int[] t, int tLength) {
+    int intersection = 0;
+    int si = 0;
+    int ti = 0;
+    while (si < sLength && ti < tLength) {
+      int a = s[si];
+      int b = t[ti];
+      if (a < b) {
+        si++;
+      } else if (a > b) {
+        ti++;
+      } else {
+        intersection++;
+        si++;
+        ti++;
+      }
+    }
+    return intersection;
+  }
+
+  /** Compute the Jaccard coefficient of two sets of token or n-gram ids, each
+   *  given as a sorted, duplicate free array (see {@link #toSortedSet}).
+   *  Runs in linear time and allocates nothing.
+   */
+  public float jaccard(int[] s, int sLength, int[] t, int tLength) {
+    int intersection = intersectionSize(s, sLength, t, tLength);
+    int union = sLength + tLength - intersection;
+    return union == 0 ? 1f : (float) intersection / union;
+  }
+
+  /** Compute the Dice coefficient of two sets of ids, each given as a sorted,
+   *  duplicate free array (see {@link #toSortedSet}).
+   */
+  public float dice(int[] s, int sLength, int[] t, int tLength) {
+    int total = sLength + tLength;
+    return total == 0 ? 1f
+        : (float) 2 * intersectionSize(s, sLength, t, tLength) / total;
+  }
+
+  /** Compute the Jaccard coefficient of two sets of ids held as bitsets,
+   *  where bit <code>i</code> of word <code>i &gt;&gt; 6</code> is set when id
+   *  <code>i</code> is a member. Suited to small, dense id spaces such as
+   *  characters or a fixed n-gram vocabulary.
+   */
+  public float jaccard(long[] s, long[] t) {
+    int intersection = 0;
+    int union = 0;
+    int n = Math.min(s.length, t.length);
+    for (int i = 0; i < n; i++) {
+      intersection += Long.bitCount(s[i] & t[i]);
+      union += Long.bitCount(s[i] | t[i]);
+    }
+    union += remainingBits(s, n) + remainingBits(t, n);
+    return union == 0 ? 1f : (float) intersection / union;
+  }
+
+  /** Compute the Dice coefficient of two sets of ids held as bitsets. */
+  public float dice(long[] s, long[] t) {
+    int intersection = 0;
+    int n = Math.min(s.length, t.length);
+    for (int i = 0; i < n; i++) {
+      intersection += Long.bitCount(s[i] & t[i]);
+    }
+    int total = remainingBits(s, 0) + remainingBits(t, 0);
+    return total == 0 ? 1f : (float) 2 * intersection / total;
+  }
+
+  private static int remainingBits(long[] bits, int from) {
+    int count = 0;
+    for (int i = from; i < bits.length; i++) {
+      count += Long.bitCount(bits[i]);
+    }
+    return count;
+  }
+
   public TopDocs cosine(String queryTerm, int n, String... terms) throws IOException, ParseException {
     Directory directory = new RAMDirectory();
     final Pattern pattern = Pattern.compile(".");
@@ -21,16 +21,34 @@ package com.tamingtext.fuzzy;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.search.spell.StringDistance;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.CommonsHttpSolrServer;
+import org.apache.solr.client.solrj.response.Group;
+import org.apache.solr.client.solrj.response.GroupCommand;
+import org.apache.solr.client.solrj.response.GroupResponse;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.util.ConcurrentLRUCache;
 
 //<start id="did-you-mean.corrector"/>
 public class SpellCorrector {
@@ -39,6 +57,15 @@ public class SpellCorrector {
   private SolrQuery query;
   private StringDistance sd;
   private float threshold;
+
+  /** Cached in place of a <code>null</code> suggestion. */
+  private static final String NO_SUGGESTION = new String("");
+  public static final int DEFAULT_CACHE_SIZE = 10000;
+  public static final int DEFAULT_BATCH_SIZE = 10;
+
+  private ConcurrentLRUCache<String,String> cache;
+  private ExecutorService executor;
+  private int batchSize = DEFAULT_BATCH_SIZE;
   
   public SpellCorrector(StringDistance sd, float threshold) 
     throws MalformedURLException { 
@@ -49,10 +76,32 @@ public class SpellCorrector {
     query.setRows(50); //<co id="co.dym.num"/>
     this.sd = sd;
     this.threshold = threshold;
+    this.cache = createCache(DEFAULT_CACHE_SIZE);
+  }
+
+  /** Create a SpellCorrector that sends its queries to <code>solr</code>
+   *  and, when <code>executor</code> is not null, uses it to look up the
+   *  batches of {@link #topSuggestions(Collection)} in parallel. The executor is not shut down by the SpellCorrector.
+   */
+  public SpellCorrector(SolrServer solr, StringDistance sd, float threshold,
+                        ExecutorService executor, int cacheSize) {
+    this.solr = solr;
+    query = new SolrQuery();
+    query.setFields("word");
+    query.setRows(50);
+    this.sd = sd;
+    this.threshold = threshold;
+    this.executor = executor;
+    this.cache = createCache(cacheSize);
   }
   
   public String topSuggestion(String spelling)
           throws SolrServerException {
+    String cached = cache.get(spelling);
+    if (cached != null) {
+      return cached == NO_SUGGESTION ? null : cached;
+    }
+    SolrQuery query = this.query.getCopy();
     query.setQuery("wordNGram:"+spelling); //<co id="co.dym.field"/>
     QueryResponse response = solr.query(query);
     SolrDocumentList dl = response.getResults();
@@ -69,10 +118,171 @@ public class SpellCorrector {
       }
     }
     if (maxDistance > threshold) { //<co id="co.dym.threshold"/>
-      return suggestion;
+      return cache(spelling, suggestion);
     }
-    return null;
+    return cache(spelling, null);
   }  
+
+  /** Find the top suggestion for each distinct word in
+   *  <code>spellings</code>.
+   *  <p>
+   *  Words already in the cache are not looked up again.  The rest are
+   *  looked up <code>batchSize</code> at a time with a single request that
+   *  ORs together their n-gram queries and groups the matches by each
+   *  word's own n-gram query, so every word gets up to as many candidates
+   *  as {@link #topSuggestion(String)} considers, no matter what else is in
+   *  the batch.  Within a word's group the candidates are ranked by the
+   *  batch query, so a word with more matches than that may keep slightly
+   *  different ones.  Batches run on the executor when one was provided.
+   *  This method is safe to call from multiple threads.
+   *
+   * @return a map from each distinct input word, in input order, to its
+   *   suggestion or <code>null</code> if there is none.
+   */
+  public Map<String,String> topSuggestions(Collection<String> spellings)
+          throws SolrServerException {
+    Map<String,String> suggestions = new LinkedHashMap<String,String>();
+    List<String> misses = new ArrayList<String>();
+    for (String spelling : new LinkedHashSet<String>(spellings)) {
+      String cached = cache.get(spelling);
+      if (cached == null) {
+        misses.add(spelling);
+      }
+      suggestions.put(spelling, cached == NO_SUGGESTION ? null : cached);
+    }
+
+    List<Callable<List<String>>> lookups = new ArrayList<Callable<List<String>>>();
+    for (int start = 0; start < misses.size(); start += batchSize) {
+      final List<String> batch =
+        misses.subList(start, Math.min(misses.size(), start + batchSize));
+      lookups.add(new Callable<List<String>>() {
+        public List<String> call() throws Exception {
+          return batchSuggestions(batch);
+        }
+      });
+    }
+    int next = 0;
+    for (List<String> batchSuggestions : invokeAll(lookups)) {
+      for (String suggestion : batchSuggestions) {
+        suggestions.put(misses.get(next++), suggestion);
+      }
+    }
+    return suggestions;
+  }
+
+  /** Retrieve the candidates for a batch of words with one query, grouped
+   *  by the n-gram query of each word, and return the suggestion for each
+   *  word in the batch, in order. The candidates are scored on the calling
+   *  thread: this runs on the executor, and waiting there for more tasks on
+   *  the same executor could deadlock it.
+   */
+  private List<String> batchSuggestions(List<String> batch)
+          throws SolrServerException {
+    SolrQuery query = this.query.getCopy();
+    StringBuilder q = new StringBuilder();
+    String[] wordQueries = new String[batch.size()];
+    for (int i = 0; i < wordQueries.length; i++) {
+      wordQueries[i] = "wordNGram:(" + ClientUtils.escapeQueryChars(batch.get(i)) + ')';
+      if (q.length() > 0) q.append(" OR ");
+      q.append(wordQueries[i]);
+    }
+    query.setQuery(q.toString());
+    query.set(GroupParams.GROUP, true);
+    query.set(GroupParams.GROUP_QUERY, wordQueries);
+    query.set(GroupParams.GROUP_LIMIT, this.query.getRows());
+    Map<String,SolrDocumentList> groups = new HashMap<String,SolrDocumentList>();
+    GroupResponse response = solr.query(query).getGroupResponse();
+    if (response != null) {
+      for (GroupCommand command : response.getValues()) {
+        for (Group group : command.getValues()) {
+          groups.put(command.getName(), group.getResult());
+        }
+      }
+    }
+
+    List<String> results = new ArrayList<String>(batch.size());
+    for (int i = 0; i < wordQueries.length; i++) {
+      SolrDocumentList dl = groups.get(wordQueries[i]);
+      Set<String> unique = new LinkedHashSet<String>();
+      if (dl != null) {
+        for (SolrDocument doc : dl) {
+          unique.add((String) doc.getFieldValue("word"));
+        }
+      }
+      results.add(cache(batch.get(i), bestCandidate(batch.get(i), unique)));
+    }
+    return results;
+  }
+
+  private String bestCandidate(String spelling, Collection<String> candidates) {
+    float maxDistance = 0;
+    String suggestion = null;
+    for (String word : candidates) {
+      float distance = sd.getDistance(word, spelling);
+      if (distance > maxDistance) {
+        maxDistance = distance;
+        suggestion = word;
+      }
+    }
+    return maxDistance > threshold ? suggestion : null;
+  }
+
+  /** Run the tasks on the executor, or in the calling thread if there is
+   *  none, returning their results in order.
+   */
+  private <T> List<T> invokeAll(List<Callable<T>> tasks)
+          throws SolrServerException {
+    List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      if (executor == null || tasks.size() < 2) {
+        for (Callable<T> task : tasks) {
+          results.add(task.call());
+        }
+      } else {
+        for (Future<T> future : executor.invokeAll(tasks)) {
+          results.add(future.get());
+        }
+      }
+    } catch (ExecutionException e) {
+      throw unwrap(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrServerException(e);
+    } catch (Exception e) {
+      throw unwrap(e);
+    }
+    return results;
+  }
+
+  private static SolrServerException unwrap(Throwable t) {
+    if (t instanceof SolrServerException) {
+      return (SolrServerException) t;
+    }
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    }
+    return new SolrServerException(t);
+  }
+
+  private String cache(String key, String suggestion) {
+    cache.put(key, suggestion == null ? NO_SUGGESTION : suggestion);
+    return suggestion;
+  }
+
+  private static ConcurrentLRUCache<String,String> createCache(int size) {
+    return new ConcurrentLRUCache<String,String>(size, (int) (size * 0.9));
+  }
+
+  /** Number of words looked up per Solr request by
+   *  {@link #topSuggestions(Collection)}.
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  public ConcurrentLRUCache.Stats getCacheStats() {
+    return cache.getStats();
+  }
 }
 /*
 <calloutlist>
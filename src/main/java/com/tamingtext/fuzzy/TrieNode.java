@@ -159,6 +159,13 @@ public class TrieNode {
   </calloutlist>    
   */
   //<end id="trie-getWords"/>
+
+  /** Return every word in the trie in lexicographic order. */
+  List<String> getAllWords() {
+    List<String> words = new ArrayList<String>();
+    collectWords(words, -1, "");
+    return words;
+  }
   
   public String toString() {
     StringBuffer cs = new StringBuffer(children.length);
@@ -20,6 +20,9 @@
 package com.tamingtext.fuzzy;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.util.ReaderUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.request.QueryResponseWriter;
 import org.apache.solr.request.SolrQueryRequest;
@@ -30,9 +33,28 @@ import org.apache.solr.response.SolrQueryResponse;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+/** Writes the value of the <code>word</code> field of each document in the
+ *  response as an HTML list for type-ahead widgets.
+ *  <p>
+ *  The following init args are supported:
+ *  <ul>
+ *  <li><code>field</code>: the field to display, <code>word</code> by
+ *  default.</li>
+ *  <li><code>useFieldCache</code>: when <code>true</code> the values are read
+ *  from the Lucene {@link FieldCache} of each segment instead of loading each
+ *  stored document.  The field must then be indexed as a single token, e.g. a
+ *  <code>string</code> field.</li>
+ *  <li><code>format</code>: <code>html</code> (the default) or
+ *  <code>json</code>, which writes a JSON array of the values.</li>
+ *  </ul>
+ *  Values are escaped directly into the response writer, so besides loading
+ *  stored documents nothing is allocated per hit.
+ */
 //<start id="type-ahead-response-writer"/>
 public class TypeAheadResponseWriter implements QueryResponseWriter {
 
@@ -41,19 +63,24 @@ public class TypeAheadResponseWriter implements QueryResponseWriter {
   @Override
   public String getContentType(SolrQueryRequest req,
                                SolrQueryResponse solrQueryResponse) {
-    return "text/html;charset=UTF-8";
+    return json ? "application/json;charset=UTF-8" : "text/html;charset=UTF-8";
   }
 
 
   public void init(NamedList n) {
+    configure(n);
     fields = new HashSet<String>();
-    fields.add("word");  //<co id="co.fuzzy.type-ahead.field"/>
+    fields.add(wordField);  //<co id="co.fuzzy.type-ahead.field"/>
   }
 
   @Override
   public void write(Writer w, SolrQueryRequest req,
                     SolrQueryResponse rsp) throws IOException {
     SolrIndexSearcher searcher = req.getSearcher();
+    SegmentValues cached = useFieldCache
+        ? new SegmentValues(searcher.getIndexReader(), wordField) : null;
+    boolean first = true;
+    if (json) w.write('[');
     NamedList nl = rsp.getValues();
     int sz = nl.size();
     for (int li = 0; li < sz; li++) {
@@ -61,18 +88,26 @@ public class TypeAheadResponseWriter implements QueryResponseWriter {
       if (val instanceof DocList) { //<co id="co.fuzzy.type-ahead.doclist"/>
         DocList dl = (DocList) val;
         DocIterator iterator = dl.iterator();
-        w.append("<ul>\n");
+        if (!json) w.write("<ul>\n");
         while (iterator.hasNext()) {
           int id = iterator.nextDoc(); 
-          Document doc = searcher.doc(id, fields); //<co id="co.fuzzy.type-ahead.search"/>
-          String name = doc.get("word");
-          w.append("<li>" + name + "</li>\n");
+          String name;
+          if (cached != null) {
+            name = cached.get(id);
+          } else {
+            Document doc = searcher.doc(id, fields); //<co id="co.fuzzy.type-ahead.search"/>
+            name = doc.get(wordField);
+          }
+          if (name != null) {
+            writeValue(w, name, first);
+            first = false;
+          }
         }
-        w.append("</ul>\n");
+        if (!json) w.write("</ul>\n");
       }
     }
+    if (json) w.write("]\n");
   }
-}
 /*
 <calloutlist>
 <callout arearefs="co.fuzzy.type-ahead.field"><para>Specify field displayed by response writer.</para></callout>
@@ -81,3 +116,110 @@ public class TypeAheadResponseWriter implements QueryResponseWriter {
 </calloutlist>
  */
 //<end id="type-ahead-response-writer"/>
+
+  private String wordField;
+  private boolean useFieldCache;
+  private boolean json;
+
+  private void configure(NamedList n) {
+    Object field = n == null ? null : n.get("field");
+    wordField = field == null ? "word" : field.toString();
+    if (n != null) {
+      useFieldCache = Boolean.parseBoolean(String.valueOf(n.get("useFieldCache")));
+      json = "json".equals(n.get("format"));
+    }
+  }
+
+  private void writeValue(Writer w, String name, boolean first) throws IOException {
+    if (json) {
+      if (!first) w.write(',');
+      w.write('"');
+      writeJsonEscaped(w, name);
+      w.write('"');
+    } else {
+      w.write("<li>");
+      writeHtmlEscaped(w, name);
+      w.write("</li>\n");
+    }
+  }
+
+  /** The values of a field for the documents of a top-level reader, read
+   *  from the field cache of the segment each document is in.  The entries of
+   *  a segment are shared by every searcher that has the segment open, so only
+   *  new segments are read after a commit, and the top-level reader is never
+   *  cached alongside its segments.  The {@link FieldCache.StringIndex} is
+   *  used, as it is the entry that sorting on the field already fills.
+   */
+  static class SegmentValues {
+    private final IndexReader[] readers;
+    private final int[] starts;
+    private final FieldCache.StringIndex[] values;
+    private final String field;
+
+    SegmentValues(IndexReader reader, String field) {
+      List<IndexReader> subs = new ArrayList<IndexReader>();
+      ReaderUtil.gatherSubReaders(subs, reader);
+      this.readers = subs.toArray(new IndexReader[subs.size()]);
+      this.starts = new int[readers.length];
+      for (int i = 1; i < readers.length; i++) {
+        starts[i] = starts[i - 1] + readers[i - 1].maxDoc();
+      }
+      this.values = new FieldCache.StringIndex[readers.length];
+      this.field = field;
+    }
+
+    String get(int doc) throws IOException {
+      int i = ReaderUtil.subIndex(doc, starts);
+      if (values[i] == null) {
+        values[i] = FieldCache.DEFAULT.getStringIndex(readers[i], field);
+      }
+      return values[i].lookup[values[i].order[doc - starts[i]]];
+    }
+  }
+
+  static void writeHtmlEscaped(Writer w, String s) throws IOException {
+    int start = 0;
+    for (int i = 0, n = s.length(); i < n; i++) {
+      String replacement;
+      switch (s.charAt(i)) {
+        case '&': replacement = "&amp;"; break;
+        case '<': replacement = "&lt;"; break;
+        case '>': replacement = "&gt;"; break;
+        case '"': replacement = "&quot;"; break;
+        case '\'': replacement = "&#39;"; break;
+        default: continue;
+      }
+      w.write(s, start, i - start);
+      w.write(replacement);
+      start = i + 1;
+    }
+    w.write(s, start, s.length() - start);
+  }
+
+  static void writeJsonEscaped(Writer w, String s) throws IOException {
+    int start = 0;
+    for (int i = 0, n = s.length(); i < n; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+        continue;
+      }
+      w.write(s, start, i - start);
+      switch (c) {
+        case '"': w.write("\\\""); break;
+        case '\\': w.write("\\\\"); break;
+        case '\n': w.write("\\n"); break;
+        case '\r': w.write("\\r"); break;
+        case '\t': w.write("\\t"); break;
+        default:
+          w.write("\\u");
+          for (int shift = 12; shift >= 0; shift -= 4) {
+            w.write(HEX[(c >> shift) & 0xF]);
+          }
+      }
+      start = i + 1;
+    }
+    w.write(s, start, s.length() - start);
+  }
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
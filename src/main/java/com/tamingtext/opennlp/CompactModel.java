@@ -0,0 +1,285 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.opennlp;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import opennlp.model.AbstractModel;
+import opennlp.model.AbstractModelReader;
+import opennlp.model.Context;
+import opennlp.model.EvalParameters;
+import opennlp.model.IndexHashTable;
+import opennlp.model.UniformPrior;
+
+/** A GIS or perceptron model that keeps its parameters in a few flat
+ *  primitive arrays instead of a {@link Context} object, with its own
+ *  outcome and parameter arrays, for every predicate.
+ *  <p>
+ *  The parameters of every predicate are stored one after another in a single
+ *  array, with an offset per predicate, and the outcomes they belong to are
+ *  stored once per outcome pattern, which many predicates share.  Predicates
+ *  are looked up in a hash table of int slots over the predicate names.  The
+ *  model evaluates exactly as {@link opennlp.maxent.GISModel} and
+ *  {@link opennlp.perceptron.PerceptronModel} do, to the last bit, and is
+ *  written out in the same format; the {@link Context} objects the model
+ *  writers need are only created while it is being written.
+ *  <p>
+ *  Models are read with {@link PooledGenericModelReader}, which
+ *  {@link PooledGenericModelSerializer} uses for the models it loads.
+ */
+public class CompactModel extends AbstractModel {
+
+  /** The outcomes of pattern i are patternOutcomes[patternStarts[i]] to patternOutcomes[patternStarts[i + 1]]. */
+  private final int[] patternStarts;
+  private final int[] patternOutcomes;
+  /** The outcome pattern of each predicate. */
+  private final int[] predicatePatterns;
+  /** The parameters of predicate i start at parameters[parameterStarts[i]], one for each outcome of its pattern. */
+  private final int[] parameterStarts;
+  private final double[] parameters;
+  private final PredicateTable predicates;
+
+  private CompactModel(ModelType modelType, String[] outcomeNames, PredicateTable predicates,
+      int[] patternStarts, int[] patternOutcomes, int[] predicatePatterns, int[] parameterStarts,
+      double[] parameters, int correctionConstant, double correctionParam) {
+    super(new Context[0], null, predicates, outcomeNames);
+    this.modelType = modelType;
+    this.predicates = predicates;
+    this.patternStarts = patternStarts;
+    this.patternOutcomes = patternOutcomes;
+    this.predicatePatterns = predicatePatterns;
+    this.parameterStarts = parameterStarts;
+    this.parameters = parameters;
+    this.evalParams = new Parameters(correctionParam, correctionConstant, outcomeNames.length);
+    this.prior = new UniformPrior();
+    this.prior.setLabels(outcomeNames, null);
+  }
+
+  /** Read the parameters of a model whose header has been read up to and
+   *  including its predicates, as {@link AbstractModelReader} reads them.
+   *
+   * @param outcomePatterns the patterns as returned by the reader: the number
+   *   of predicates with the pattern followed by the ids of its outcomes.
+   */
+  static CompactModel read(AbstractModelReader reader, ModelType modelType, String[] outcomeNames,
+      int[][] outcomePatterns, String[] predLabels, int correctionConstant, double correctionParam)
+      throws IOException {
+    int[] patternStarts = new int[outcomePatterns.length + 1];
+    int numParameters = 0;
+    for (int pi = 0; pi < outcomePatterns.length; pi++) {
+      int numOutcomes = outcomePatterns[pi].length - 1;
+      patternStarts[pi + 1] = patternStarts[pi] + numOutcomes;
+      numParameters += outcomePatterns[pi][0] * numOutcomes;
+    }
+    int[] patternOutcomes = new int[patternStarts[outcomePatterns.length]];
+    int[] predicatePatterns = new int[predLabels.length];
+    int[] parameterStarts = new int[predLabels.length + 1];
+    double[] parameters = new double[numParameters];
+    int pid = 0;
+    int offset = 0;
+    for (int pi = 0; pi < outcomePatterns.length; pi++) {
+      int[] pattern = outcomePatterns[pi];
+      System.arraycopy(pattern, 1, patternOutcomes, patternStarts[pi], pattern.length - 1);
+      for (int i = 0; i < pattern[0]; i++) {
+        predicatePatterns[pid] = pi;
+        for (int oi = 1; oi < pattern.length; oi++) {
+          parameters[offset++] = reader.readDouble();
+        }
+        parameterStarts[++pid] = offset;
+      }
+    }
+    if (pid != predLabels.length) {
+      throw new IOException("Outcome patterns cover " + pid + " predicates, expected " + predLabels.length);
+    }
+    return new CompactModel(modelType, outcomeNames, new PredicateTable(predLabels), patternStarts,
+        patternOutcomes, predicatePatterns, parameterStarts, parameters, correctionConstant, correctionParam);
+  }
+
+  public double[] eval(String[] context) {
+    return eval(context, null, new double[outcomeNames.length]);
+  }
+
+  public double[] eval(String[] context, float[] values) {
+    return eval(context, values, new double[outcomeNames.length]);
+  }
+
+  public double[] eval(String[] context, double[] probs) {
+    return eval(context, null, probs);
+  }
+
+  public double[] eval(String[] context, float[] values, double[] outsums) {
+    int[] scontexts = new int[context.length];
+    for (int i = 0; i < context.length; i++) {
+      scontexts[i] = predicates.get(context[i]);
+    }
+    if (modelType == ModelType.Perceptron) {
+      Arrays.fill(outsums, 0);
+      sum(scontexts, values, outsums, null);
+      return normalizePerceptron(outsums);
+    }
+    prior.logPrior(outsums, scontexts, values);
+    int[] numfeats = new int[outcomeNames.length];
+    sum(scontexts, values, outsums, numfeats);
+    return normalizeGIS(outsums, numfeats);
+  }
+
+  /** Add the weighted parameters of the active predicates to the outcome sums. */
+  private void sum(int[] scontexts, float[] values, double[] outsums, int[] numfeats) {
+    double value = 1;
+    for (int ci = 0; ci < scontexts.length; ci++) {
+      int pid = scontexts[ci];
+      if (pid >= 0) {
+        if (values != null) {
+          value = values[ci];
+        }
+        int pattern = predicatePatterns[pid];
+        int offset = parameterStarts[pid];
+        for (int oi = patternStarts[pattern]; oi < patternStarts[pattern + 1]; oi++) {
+          int oid = patternOutcomes[oi];
+          if (numfeats != null) {
+            numfeats[oid]++;
+          }
+          outsums[oid] += parameters[offset++] * value;
+        }
+      }
+    }
+  }
+
+  private double[] normalizeGIS(double[] outsums, int[] numfeats) {
+    double normal = 0.0;
+    for (int oid = 0; oid < outsums.length; oid++) {
+      if (evalParams.getCorrectionParam() != 0) {
+        outsums[oid] = Math.exp(outsums[oid] * evalParams.getConstantInverse()
+            + ((1.0 - ((double) numfeats[oid] / evalParams.getCorrectionConstant()))
+                * evalParams.getCorrectionParam()));
+      }
+      else {
+        outsums[oid] = Math.exp(outsums[oid] * evalParams.getConstantInverse());
+      }
+      normal += outsums[oid];
+    }
+    for (int oid = 0; oid < outsums.length; oid++) {
+      outsums[oid] /= normal;
+    }
+    return outsums;
+  }
+
+  private double[] normalizePerceptron(double[] outsums) {
+    double maxPrior = 1;
+    for (int oid = 0; oid < outsums.length; oid++) {
+      if (maxPrior < Math.abs(outsums[oid])) {
+        maxPrior = Math.abs(outsums[oid]);
+      }
+    }
+    double normal = 0.0;
+    for (int oid = 0; oid < outsums.length; oid++) {
+      outsums[oid] = Math.exp(outsums[oid] / maxPrior);
+      normal += outsums[oid];
+    }
+    for (int oid = 0; oid < outsums.length; oid++) {
+      outsums[oid] /= normal;
+    }
+    return outsums;
+  }
+
+  /** The correction values of the model, and its parameters as
+   *  {@link Context}s for the model writers, which are built on each call.
+   */
+  private class Parameters extends EvalParameters {
+    Parameters(double correctionParam, int correctionConstant, int numOutcomes) {
+      super(null, correctionParam, correctionConstant, numOutcomes);
+    }
+
+    @Override
+    public Context[] getParams() {
+      int[][] outcomes = new int[patternStarts.length - 1][];
+      for (int pi = 0; pi < outcomes.length; pi++) {
+        outcomes[pi] = Arrays.copyOfRange(patternOutcomes, patternStarts[pi], patternStarts[pi + 1]);
+      }
+      Context[] params = new Context[predicatePatterns.length];
+      for (int pid = 0; pid < params.length; pid++) {
+        params[pid] = new Context(outcomes[predicatePatterns[pid]],
+            Arrays.copyOfRange(parameters, parameterStarts[pid], parameterStarts[pid + 1]));
+      }
+      return params;
+    }
+  }
+
+  /** An open addressing hash table from predicate name to id that stores only
+   *  the names and an int slot per entry.  It extends {@link IndexHashTable}
+   *  so the model writers can get the names back from
+   *  {@link AbstractModel#getDataStructures()}, but none of its storage is used.
+   */
+  static class PredicateTable extends IndexHashTable<String> {
+    private final String[] names;
+    /** The id + 1 of the name hashed to each slot, or 0 for an empty slot. */
+    private final int[] slots;
+    private final int mask;
+
+    PredicateTable(String[] names) {
+      super(new String[0], 1);
+      this.names = names;
+      int capacity = Integer.highestOneBit(Math.max(1, names.length + names.length / 3)) << 1;
+      this.slots = new int[capacity];
+      this.mask = capacity - 1;
+      for (int id = 0; id < names.length; id++) {
+        int slot = hash(names[id]) & mask;
+        while (slots[slot] != 0 && !names[slots[slot] - 1].equals(names[id])) {
+          slot = (slot + 1) & mask;
+        }
+        if (slots[slot] == 0) {
+          slots[slot] = id + 1;
+        }
+      }
+    }
+
+    private static int hash(String name) {
+      int h = name.hashCode();
+      return h ^ (h >>> 16);
+    }
+
+    /** The id of the predicate, or -1 if the model does not have it. */
+    @Override
+    public int get(String name) {
+      for (int slot = hash(name) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+        int id = slots[slot] - 1;
+        if (names[id].equals(name)) {
+          return id;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public int size() {
+      return names.length;
+    }
+
+    @Override
+    public String[] toArray(String[] array) {
+      if (array.length < names.length) {
+        array = new String[names.length];
+      }
+      System.arraycopy(names, 0, array, 0, names.length);
+      return array;
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.opennlp;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** A JVM wide registry of OpenNLP models, so that each model file is read
+ *  only once however many Solr cores, plugins or factories use it, and not at
+ *  all until one of them needs it.
+ *  <p>
+ *  Models are keyed by the canonical path and modification time of their file
+ *  and by their type, which must have a public constructor that reads the
+ *  model from an <code>InputStream</code>, as the OpenNLP model classes do.
+ *  {@link #acquire(File, Class)} only registers interest in a model and
+ *  returns a {@link Handle}.  The model is read the first time
+ *  {@link Handle#get()} is called, on a shared pool of loader threads, so
+ *  {@link #load(Handle...)} can read several models in parallel.  Replacing a
+ *  model file gives it a new key, so cores created after that see the new
+ *  model while cores still open keep the old one.
+ *  <p>
+ *  Each handle holds a reference to its model.  A model is dropped from the
+ *  registry once every handle to it has been released, either explicitly with
+ *  {@link Handle#release()} or, as Solr gives analysis factories and query
+ *  parser plugins no way to learn that their core has closed, by the handle
+ *  being garbage collected.
+ */
+public class ModelRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(ModelRegistry.class);
+
+  private static final Map<String,Entry<?>> entries = new HashMap<String,Entry<?>>();
+
+  /** The handles that have not been released, which are enqueued once their
+   *  owner drops them without releasing them. */
+  private static final Set<HandleReference> live = new HashSet<HandleReference>();
+  private static final ReferenceQueue<Handle<?>> dropped = new ReferenceQueue<Handle<?>>();
+
+  private static final ExecutorService loaders = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "modelLoader-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private ModelRegistry() {
+  }
+
+  /** Register interest in the model of the given type read from a file.  The
+   *  file is not read until {@link Handle#get()} is called.
+   *
+   * @throws FileNotFoundException if the file does not exist, so that
+   *   configuration errors are still reported at startup.
+   */
+  public static <T> Handle<T> acquire(File file, Class<T> type) throws IOException {
+    if (!file.isFile()) {
+      throw new FileNotFoundException("Model file not found: " + file);
+    }
+    String path = file.getCanonicalPath();
+    String key = path + '@' + file.lastModified() + '#' + type.getName();
+    synchronized (entries) {
+      expungeDropped();
+      @SuppressWarnings("unchecked")
+      Entry<T> entry = (Entry<T>) entries.get(key);
+      if (entry == null) {
+        entry = new Entry<T>(key, new File(path), type);
+        entries.put(key, entry);
+      }
+      entry.refs++;
+      Handle<T> handle = new Handle<T>(entry);
+      live.add(handle.reference);
+      return handle;
+    }
+  }
+
+  /** Start reading any of the models that have not been read yet, each on its
+   *  own loader thread, and wait for them all.
+   */
+  public static void load(Handle<?>... handles) throws IOException {
+    for (Handle<?> handle : handles) {
+      handle.entry.start();
+    }
+    for (Handle<?> handle : handles) {
+      handle.get();
+    }
+  }
+
+  /** The number of models registered, whether they have been read or not. */
+  public static int size() {
+    synchronized (entries) {
+      expungeDropped();
+      return entries.size();
+    }
+  }
+
+  private static void release(HandleReference reference) {
+    if (live.remove(reference)) {
+      Entry<?> entry = reference.entry;
+      if (--entry.refs == 0) {
+        entries.remove(entry.key);
+        log.info("Released model {}", entry.file);
+      }
+    }
+  }
+
+  private static void expungeDropped() {
+    HandleReference reference;
+    while ((reference = (HandleReference) dropped.poll()) != null) {
+      release(reference);
+    }
+  }
+
+  /** One model and the number of handles to it. */
+  private static class Entry<T> {
+    final String key;
+    final File file;
+    final FutureTask<T> task;
+    final AtomicBoolean started = new AtomicBoolean();
+    int refs;
+
+    Entry(String key, final File file, final Class<T> type) {
+      this.key = key;
+      this.file = file;
+      this.task = new FutureTask<T>(new Callable<T>() {
+        public T call() throws Exception {
+          return read(file, type);
+        }
+      });
+    }
+
+    void start() {
+      if (started.compareAndSet(false, true)) {
+        loaders.execute(task);
+      }
+    }
+
+    T get() throws IOException {
+      start();
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw (IOException) new IOException("Interrupted loading model " + file).initCause(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw (IOException) new IOException("Unable to load model " + file).initCause(cause);
+      }
+    }
+  }
+
+  private static <T> T read(File file, Class<T> type) throws Exception {
+    log.info("Loading model {}", file);
+    long start = System.currentTimeMillis();
+    Constructor<T> constructor = type.getConstructor(InputStream.class);
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      T model = constructor.newInstance(in);
+      log.info("Loaded model {} in {} ms", file, System.currentTimeMillis() - start);
+      return model;
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    } finally {
+      in.close();
+    }
+  }
+
+  /** A reference to a registered model, which may not have been read yet. */
+  public static class Handle<T> {
+    private final Entry<T> entry;
+    private final HandleReference reference;
+
+    Handle(Entry<T> entry) {
+      this.entry = entry;
+      this.reference = new HandleReference(this, entry);
+    }
+
+    /** The model, read by the first caller and shared with every other.
+     *
+     * @throws IOException if the model could not be read; every later call
+     *   fails the same way.
+     */
+    public T get() throws IOException {
+      return entry.get();
+    }
+
+    public File getFile() {
+      return entry.file;
+    }
+
+    /** Give up this handle's reference to the model.  It must not be used
+     *  afterwards. */
+    public void release() {
+      synchronized (entries) {
+        reference.clear();
+        ModelRegistry.release(reference);
+      }
+    }
+  }
+
+  private static class HandleReference extends WeakReference<Handle<?>> {
+    final Entry<?> entry;
+
+    HandleReference(Handle<?> handle, Entry<?> entry) {
+      super(handle, dropped);
+      this.entry = entry;
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 
 import opennlp.maxent.io.GISModelReader;
 import opennlp.model.AbstractModel;
+import opennlp.model.AbstractModel.ModelType;
 import opennlp.model.AbstractModelReader;
 import opennlp.model.DataReader;
 import opennlp.model.GenericModelReader;
@@ -36,10 +37,15 @@ import opennlp.perceptron.PerceptronModelReader;
  *  The assumption here is that there is enough duplication in the strings in
  *  multiple models being loaded that we will benefit from maintaining a single
  *  copy of each string.
+ *  <p>
+ *  A compact reader goes further and reads the model into a
+ *  {@link CompactModel}, which keeps the parameters in flat arrays instead of
+ *  an object per predicate.
  */  
 public class PooledGenericModelReader extends GenericModelReader {
   
   private AbstractModelReader delegateModelReader;
+  private boolean compact;
   
   public PooledGenericModelReader(File f) throws IOException {
     super(f);
@@ -49,14 +55,24 @@ public class PooledGenericModelReader extends GenericModelReader {
     super(dataReader);
   }
 
+  /** @param compact read the model into a {@link CompactModel} */
+  public PooledGenericModelReader(DataReader dataReader, boolean compact) {
+    super(dataReader);
+    this.compact = compact;
+  }
+
   @Override
   public void checkModelType() throws IOException {
     String modelType = readUTF();
     if (modelType.equals("Perceptron")) {
-      delegateModelReader = new LocalPooledPerceptronModelReader(this.dataReader);
+      delegateModelReader = compact
+          ? new LocalCompactPerceptronModelReader(this.dataReader)
+          : new LocalPooledPerceptronModelReader(this.dataReader);
     }
     else if (modelType.equals("GIS")) {
-      delegateModelReader = new LocalPooledGISModelReader(this.dataReader);
+      delegateModelReader = compact
+          ? new LocalCompactGISModelReader(this.dataReader)
+          : new LocalPooledGISModelReader(this.dataReader);
     }
     else {
       throw new IOException("Unknown model format: "+modelType);
@@ -97,4 +113,42 @@ public class PooledGenericModelReader extends GenericModelReader {
       return super.readUTF().intern();
     }
   }
+  
+  /** Subclass of {@link LocalPooledGISModelReader} that reads the model into
+   *  a {@link CompactModel}.
+   */
+  static class LocalCompactGISModelReader extends LocalPooledGISModelReader {
+    public LocalCompactGISModelReader(DataReader reader) {
+      super(reader);
+    }
+
+    @Override
+    public AbstractModel constructModel() throws IOException {
+      int correctionConstant = getCorrectionConstant();
+      double correctionParam = getCorrectionParameter();
+      String[] outcomeLabels = getOutcomes();
+      int[][] outcomePatterns = getOutcomePatterns();
+      String[] predLabels = getPredicates();
+      return CompactModel.read(this, ModelType.Maxent, outcomeLabels,
+          outcomePatterns, predLabels, correctionConstant, correctionParam);
+    }
+  }
+
+  /** Subclass of {@link LocalPooledPerceptronModelReader} that reads the
+   *  model into a {@link CompactModel}.
+   */
+  static class LocalCompactPerceptronModelReader extends LocalPooledPerceptronModelReader {
+    public LocalCompactPerceptronModelReader(DataReader reader) {
+      super(reader);
+    }
+
+    @Override
+    public AbstractModel constructModel() throws IOException {
+      String[] outcomeLabels = getOutcomes();
+      int[][] outcomePatterns = getOutcomePatterns();
+      String[] predLabels = getPredicates();
+      return CompactModel.read(this, ModelType.Perceptron, outcomeLabels,
+          outcomePatterns, predLabels, 0, 0);
+    }
+  }
 }
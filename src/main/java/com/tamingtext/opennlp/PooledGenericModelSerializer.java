@@ -31,14 +31,15 @@ import opennlp.tools.util.model.GenericModelSerializer;
 
 /** A variant of {@link opennlp.tools.util.model.GenericModelSerializer} that
  *  conserves memory by interning the strings read as a part of a model
- *  by using a {@link com.tamingtext.opennlp.PooledGenericModelReader} to read the model.
+ *  by using a {@link com.tamingtext.opennlp.PooledGenericModelReader} to read the model,
+ *  and by reading the model's parameters into a {@link CompactModel}.
  */
 public class PooledGenericModelSerializer extends GenericModelSerializer {
 
   @Override
   public AbstractModel create(InputStream in) throws IOException,
       InvalidFormatException {
-    return new PooledGenericModelReader(new BinaryFileDataReader(in)).getModel();
+    return new PooledGenericModelReader(new BinaryFileDataReader(in), true).getModel();
   }
   
   @SuppressWarnings("rawtypes")
@@ -29,7 +29,8 @@ import opennlp.tools.util.model.ArtifactSerializer;
 
 /** A variant of {@link opennlp.tools.namefind.TokenNameFinderModel} that will
  *  use <code>intern()</code> when reading strings from the model files via 
- *  {@link PooledGenericModelSerializer}.
+ *  {@link PooledGenericModelSerializer}, which also keeps the parameters of
+ *  each model in a {@link CompactModel}.
  *  <p>
  *  The assumption here is that there is enough duplication in the strings in
  *  multiple models being loaded that we will benefit from maintaining only a 
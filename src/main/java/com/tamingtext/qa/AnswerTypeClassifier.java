@@ -27,15 +27,14 @@ import java.io.InputStream;
 
 import opennlp.maxent.GIS;
 import opennlp.maxent.GISModel;
+import opennlp.model.EventStream;
 import opennlp.model.MaxentModel;
-import opennlp.model.TwoPassDataIndexer;
-import opennlp.tools.chunker.ChunkerME;
+import opennlp.model.OnePassDataIndexer;
+import opennlp.model.UniformPrior;
 import opennlp.tools.chunker.ChunkerModel;
 import opennlp.tools.doccat.DoccatModel;
 import opennlp.tools.parser.Parse;
-import opennlp.tools.parser.Parser;
 import opennlp.tools.postag.POSModel;
-import opennlp.tools.postag.POSTaggerME;
 
 public class AnswerTypeClassifier {
 
@@ -74,40 +73,60 @@ public class AnswerTypeClassifier {
 
   /** Train the answer model
    * <p>
+   *  The questions are parsed and their features generated once, in parallel, into a binary event cache which GIS
+   *  then trains from using the same number of threads.  Each worker thread generates the features of the questions
+   *  it parses.  Give a cache file to keep it; if it already exists the questions are not parsed at all, which makes
+   *  retraining with different parameters quick.  The number of threads defaults to the number of processors.
    *  Hint:
    *  <pre>
    *  mvn exec:java -Dexec.mainClass=com.tamingtext.qa.AnswerTypeClassifier \
-   *    -Dexec.args="dist/data/questions-train.txt en-answer.bin" \
+   *    -Dexec.args="dist/data/questions-train.txt en-answer.bin [events.bin]" \
    *    -Dmodel.dir=../../opennlp-models \
-   *    -Dwordnet.dir=../../Wordnet-3.0/dict
+   *    -Dwordnet.dir=../../Wordnet-3.0/dict [-Dthreads=4]
    *  </pre>
    * @param args
    * @throws IOException
    */
-  public static void main(String[] args) throws IOException {
+  public static void main(String[] args) throws IOException, InterruptedException {
     if (args.length < 2) {
-      System.err.println("Usage: AnswerTypeClassifier trainFile modelFile");
+      System.err.println("Usage: AnswerTypeClassifier trainFile modelFile [eventCacheFile]");
       System.exit(1);
     }
     String trainFile = args[0];
     File outFile = new File(args[1]);
-    String modelsDirProp = System.getProperty("model.dir");
-    File modelsDir = new File(modelsDirProp);
-    String wordnetDir = System.getProperty("wordnet.dir");
-    InputStream chunkerStream = new FileInputStream(
-        new File(modelsDir,"en-chunker.bin"));
-    ChunkerModel chunkerModel = new ChunkerModel(chunkerStream);
-    ChunkerME chunker = new ChunkerME(chunkerModel);
-    InputStream posStream = new FileInputStream(
-        new File(modelsDir,"en-pos-maxent.bin"));
-    POSModel posModel = new POSModel(posStream);
-    POSTaggerME tagger =  new POSTaggerME(posModel);
-    Parser parser = new ChunkParser(chunker, tagger);
-    AnswerTypeContextGenerator actg = new AnswerTypeContextGenerator(new File(wordnetDir));
+    int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+    File cacheFile;
+    if (args.length > 2) {
+      cacheFile = new File(args[2]);
+    } else {
+      cacheFile = File.createTempFile("answer-events", ".bin");
+      cacheFile.deleteOnExit();
+    }
+    if (args.length <= 2 || !cacheFile.exists()) {
+      String modelsDirProp = System.getProperty("model.dir");
+      File modelsDir = new File(modelsDirProp);
+      String wordnetDir = System.getProperty("wordnet.dir");
+      InputStream chunkerStream = new FileInputStream(
+          new File(modelsDir,"en-chunker.bin"));
+      ChunkerModel chunkerModel = new ChunkerModel(chunkerStream);
+      InputStream posStream = new FileInputStream(
+          new File(modelsDir,"en-pos-maxent.bin"));
+      POSModel posModel = new POSModel(posStream);
+      AnswerTypeContextGenerator actg = new AnswerTypeContextGenerator(new File(wordnetDir));
+      AnswerTypeEventStream questions = new AnswerTypeEventStream(trainFile, null,
+              actg, chunkerModel, posModel, threads);
+      int count;
+      try {
+        count = AnswerTypeEventCache.write(questions, cacheFile);
+      } finally {
+        questions.close();
+      }
+      System.out.println("Cached " + count + " events in " + cacheFile);
+    }
     //<start id="atc.train"/>
-    AnswerTypeEventStream es = new AnswerTypeEventStream(trainFile,
-            actg, parser);
-    GISModel model = GIS.trainModel(100, new TwoPassDataIndexer(es, 3));//<co id="atc.train.do"/>
+    EventStream es = new AnswerTypeEventCache.Reader(cacheFile);
+    GISModel model = GIS.trainModel(100, new OnePassDataIndexer(es, 3),
+            true, false, new UniformPrior(), 0, threads);//<co id="atc.train.do"/>
     new DoccatModel("en", model).serialize(new FileOutputStream(outFile));
     /*
     <calloutlist>
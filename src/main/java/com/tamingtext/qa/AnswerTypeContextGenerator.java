@@ -47,15 +47,58 @@ public class AnswerTypeContextGenerator {
   private static final Pattern queryWordPattern = Pattern.compile("^(who|what|when|where|why|how|whom|which|name)$");
   private static final Pattern useFocusNounPattern = Pattern.compile("^(who|what|which|name)$");
   private static final Pattern howModifierTagPattern = Pattern.compile("^(JJ|RB)");
-  private JWNLDictionary wordnet;
+  /**
+   * Guards the use of JWNL, which keeps a single, process wide dictionary that is replaced whenever a
+   * {@link JWNLDictionary} is created.
+   */
+  private static final Object wordnetLock = new Object();
+  private final HypernymTable hypernyms;
 
   /**
    *
    * @param dictDir The dict directory under the wordnet dir
    */
   public AnswerTypeContextGenerator(File dictDir) {
+    this(buildHypernymTable(dictDir));
+  }
+
+  /**
+   * Use the snapshot of the WordNet hypernym table, if it exists, rather than building it from the dict directory,
+   * which is slow.  Otherwise build it and save it to the snapshot for next time.
+   *
+   * @param dictDir  The dict directory under the wordnet dir
+   * @param snapshot A snapshot written by {@link HypernymTable#save(File)}, or null
+   */
+  public AnswerTypeContextGenerator(File dictDir, File snapshot) {
+    try {
+      if (snapshot != null && snapshot.exists()) {
+        hypernyms = HypernymTable.load(snapshot);
+      } else {
+        hypernyms = buildHypernymTable(dictDir);
+        if (snapshot != null) {
+          hypernyms.save(snapshot);
+        }
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException("Unable to initalize",e);
+    }
+  }
+
+  public AnswerTypeContextGenerator(HypernymTable hypernyms) {
+    this.hypernyms = hypernyms;
+  }
+
+  /**
+   * Load WordNet and copy its noun hypernyms into memory, so that generating features makes no dictionary I/O.
+   *
+   * @param dictDir The dict directory under the wordnet dir
+   */
+  public static HypernymTable buildHypernymTable(File dictDir) {
     try {
-      wordnet = new JWNLDictionary(dictDir.getAbsolutePath());
+      synchronized (wordnetLock) {
+        return HypernymTable.build(new JWNLDictionary(dictDir.getAbsolutePath()));
+      }
     }
     catch (IOException e) {
       throw new RuntimeException("Unable to initalize",e);
@@ -199,22 +242,11 @@ public class AnswerTypeContextGenerator {
     return (null);
   }
   
-  private String[] getLemmas(Parse np) {
-    // make sure we're getting a single word.
-    String word = np.getHead().toString().toLowerCase();
-    return wordnet.getLemmas(word,"NN");
-  }
-  
   private Set<String> getSynsetSet(Parse np) {
-
     Set<String> synsetSet = new HashSet<String>();
-    String[] lemmas = getLemmas(np);
-    for (int li = 0; li < lemmas.length; li++) {
-      String[] synsets = wordnet.getParentSenseKeys(lemmas[li],"NN",0);
-      for (int si=0,sn=synsets.length;si<sn;si++) {
-        synsetSet.add(synsets[si]);
-      }
-    }
+    // make sure we're getting a single word.
+    String word = np.getHead().toString().toLowerCase();
+    hypernyms.addParentSenseKeys(word, synsetSet);
     return (synsetSet);
   }
 
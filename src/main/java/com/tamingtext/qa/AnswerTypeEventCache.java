@@ -0,0 +1,169 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.model.Event;
+import opennlp.model.EventStream;
+
+/**
+ * A binary file of training events, so the questions are parsed and their features generated only once however many
+ * times the model is trained from them.
+ * <p>
+ * Outcomes and context predicates are stored as variable length ids into a string table that is built as the file is
+ * written: the first occurrence of a string is followed by its text, later ones are just the id.  Training events
+ * share most of their predicates, so the file is a fraction of the size of the text format of
+ * {@link opennlp.model.FileEventStream}, and reading it creates each string only once.
+ */
+public class AnswerTypeEventCache {
+
+  private static final int MAGIC = 0x41544543; // "ATEC"
+  private static final int VERSION = 1;
+
+  private AnswerTypeEventCache() {
+  }
+
+  /**
+   * Write every event of the stream to the file.
+   *
+   * @return the number of events written
+   */
+  public static int write(EventStream events, File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      Map<String, Integer> ids = new HashMap<String, Integer>();
+      int count = 0;
+      while (events.hasNext()) {
+        Event event = events.next();
+        String[] context = event.getContext();
+        writeString(out, event.getOutcome(), ids);
+        writeVInt(out, context.length);
+        for (String predicate : context) {
+          writeString(out, predicate, ids);
+        }
+        count++;
+      }
+      return count;
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s, Map<String, Integer> ids) throws IOException {
+    Integer id = ids.get(s);
+    if (id != null) {
+      writeVInt(out, id);
+    } else {
+      writeVInt(out, ids.size());
+      out.writeUTF(s);
+      ids.put(s, ids.size());
+    }
+  }
+
+  private static void writeVInt(DataOutputStream out, int i) throws IOException {
+    while ((i & ~0x7F) != 0) {
+      out.writeByte((i & 0x7F) | 0x80);
+      i >>>= 7;
+    }
+    out.writeByte(i);
+  }
+
+  /** Reads the events of a cache file back, in the order they were written. */
+  public static class Reader implements EventStream {
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<String>();
+    private Event next;
+
+    public Reader(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        in.close();
+        throw new IOException("Not an answer type event cache: " + file);
+      }
+    }
+
+    public boolean hasNext() throws IOException {
+      if (next == null) {
+        next = read();
+      }
+      return next != null;
+    }
+
+    public Event next() throws IOException {
+      if (!hasNext()) {
+        throw new IOException("No more events");
+      }
+      Event event = next;
+      next = null;
+      return event;
+    }
+
+    private Event read() throws IOException {
+      int first = in.read();
+      if (first < 0) {
+        in.close();
+        return null;
+      }
+      String outcome = readString(readVInt(first));
+      String[] context = new String[readVInt(in.readUnsignedByte())];
+      for (int i = 0; i < context.length; i++) {
+        context[i] = readString(readVInt(in.readUnsignedByte()));
+      }
+      return new Event(outcome, context);
+    }
+
+    private String readString(int id) throws IOException {
+      if (id == strings.size()) {
+        strings.add(in.readUTF());
+      } else if (id > strings.size()) {
+        throw new EOFException("Corrupt answer type event cache");
+      }
+      return strings.get(id);
+    }
+
+    private int readVInt(int b) throws IOException {
+      int i = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        b = in.readUnsignedByte();
+        i |= (b & 0x7F) << shift;
+      }
+      return i;
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
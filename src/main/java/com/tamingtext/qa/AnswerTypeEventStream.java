@@ -26,6 +26,12 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import opennlp.model.Event;
 import opennlp.model.EventStream;
@@ -43,7 +49,16 @@ public class AnswerTypeEventStream implements EventStream {
   protected String line;
   protected AnswerTypeContextGenerator atcg;
   protected Parser parser;
-  
+
+  /** The number of questions read and parsed together when parsing in batches. */
+  private static final int BATCH_SIZE = 4096;
+  private ChunkerModel chunkerModel;
+  private int numThreads;
+  private ExecutorService executor;
+  private ThreadLocal<Parser> parsers;
+  private List<Event> events;
+  private int next;
+
   public AnswerTypeEventStream(String fileName, String encoding, AnswerTypeContextGenerator atcg,Parser parser) throws IOException {
     if (encoding == null) {
       reader = new BufferedReader(new FileReader(fileName));
@@ -58,6 +73,28 @@ public class AnswerTypeEventStream implements EventStream {
   public AnswerTypeEventStream(String fileName,AnswerTypeContextGenerator atcg,Parser parser) throws IOException {
     this(fileName,null,atcg,parser);
   }
+
+  /**
+   * Parse the questions in batches spread over <code>numThreads</code> threads, each with its own tagger and chunker,
+   * rather than one at a time.  See {@link ChunkParser#parseAll}.  The threads and their parsers are created once
+   * and used for every batch; they are stopped when the last question has been read, or by {@link #close}.
+   */
+  public AnswerTypeEventStream(String fileName, String encoding, AnswerTypeContextGenerator atcg,
+                               ChunkerModel chunkerModel, POSModel posModel, int numThreads) throws IOException {
+    this(fileName, encoding, atcg, (Parser) null);
+    this.chunkerModel = chunkerModel;
+    this.numThreads = Math.max(1, numThreads);
+    this.parsers = ChunkParser.threadParsers(chunkerModel, posModel);
+    this.executor = Executors.newFixedThreadPool(this.numThreads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "answerTypeParser-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
     
   /**
    * Creates a new file event stream from the specified file.
@@ -69,6 +106,9 @@ public class AnswerTypeEventStream implements EventStream {
   }
   
   public boolean hasNext() {
+    if (chunkerModel != null) {
+      return (events != null && next < events.size()) || nextBatch();
+    }
     try {
       return (null != (line = reader.readLine()));
     }
@@ -77,8 +117,54 @@ public class AnswerTypeEventStream implements EventStream {
       return (false);
     }
   }
+
+  /** Read the next batch of questions, and parse them and generate their features in parallel. */
+  private boolean nextBatch() {
+    final List<String> outcomes = new ArrayList<String>(BATCH_SIZE);
+    List<String> questions = new ArrayList<String>(BATCH_SIZE);
+    try {
+      while (questions.size() < BATCH_SIZE && null != (line = reader.readLine())) {
+        int split = line.indexOf(' ');
+        outcomes.add(line.substring(0,split));
+        questions.add(line.substring(split+1));
+      }
+      if (questions.isEmpty()) {
+        executor.shutdown();
+        return (false);
+      }
+      events = ChunkParser.parseAll(questions, 1, executor, numThreads, parsers,
+          new ChunkParser.ParseHandler<Event>() {
+            public Event handle(int index, Parse[] parses) {
+              return new Event(outcomes.get(index), atcg.getContext(parses[0]));
+            }
+          });
+    }
+    catch (IOException e) {
+      System.err.println(e);
+      executor.shutdown();
+      return (false);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      executor.shutdown();
+      return (false);
+    }
+    next = 0;
+    return (true);
+  }
+
+  /** Close the file, and stop the parsing threads, if any. */
+  public void close() throws IOException {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    reader.close();
+  }
   
   public Event next() {
+    if (chunkerModel != null) {
+      return events.get(next++);
+    }
     int split = line.indexOf(' ');
     String outcome = line.substring(0,split);
     String question = line.substring(split+1);
@@ -19,19 +19,38 @@
 
 package com.tamingtext.qa;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import opennlp.tools.chunker.ChunkerME;
+import opennlp.tools.chunker.ChunkerModel;
+import opennlp.tools.cmdline.parser.ParserTool;
+import opennlp.tools.parser.AbstractBottomUpParser;
 import opennlp.tools.parser.Parse;
 import opennlp.tools.parser.Parser;
+import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.Sequence;
 import opennlp.tools.util.Span;
 
 /**
  * Finds flat chunks instead of a tree structure using a simpler model.
  *
- * This class is not thread-safe, but should be lightweight to construct.
+ * This class is not thread-safe, but should be lightweight to construct.  To parse many questions at once, use
+ * {@link #parseAll(List, int, ChunkerModel, POSModel, int)}, which gives each thread its own parser.
  */
 public class ChunkParser implements Parser {
 
+  /** The number of questions a worker of {@link #parseAll} claims at a time. */
+  private static final int BATCH_SIZE = 64;
+
   private ChunkerME chunker;
   private POSTaggerME tagger;
 
@@ -67,6 +86,12 @@ public class ChunkParser implements Parser {
     </calloutlist>
     */
     //<end id="cp.pos"/>
+    chunk(tokens, children, words, tags, probs);
+    return tokens;
+  }
+
+  /** Add the chunks of the tagged words to the parse. */
+  private void chunk(Parse tokens, Parse[] children, String[] words, String[] tags, double[] probs) {
     String[] chunks = chunker.chunk(words, tags);
     chunker.probs(probs);
     int chunkStart = -1;
@@ -89,13 +114,153 @@ public class ChunkParser implements Parser {
       Span span = new Span(children[chunkStart].getSpan().getStart(),children[ci-1].getSpan().getEnd());
       tokens.insert(new Parse(tokens.getText(), span, chunkType, logProb,children[ci-1]));
     }
-    return tokens;
   }
 
+  /**
+   * Parse the tokens once for each of the <code>numParses</code> most likely tag sequences, best parse first.
+   */
   @Override
   public Parse[] parse(Parse tokens, int numParses) {
-    //TODO: get multiple tag sequences and chunk each.
-    return new Parse[] {parse(tokens)};
+    if (numParses <= 1) {
+      return new Parse[] {parse(tokens)};
+    }
+    Parse[] children = tokens.getChildren();
+    String[] words = new String[children.length];
+    for (int i = 0; i < children.length; i++) {
+      words[i] = children[i].toString();
+    }
+    Sequence[] sequences = tagger.topKSequences(words);
+    Parse[] parses = new Parse[Math.min(numParses, sequences.length)];
+    for (int k = 0; k < parses.length; k++) {
+      Parse p = copyTokens(tokens);
+      Parse[] tokenNodes = p.getChildren();
+      String[] tags = sequences[k].getOutcomes().toArray(new String[words.length]);
+      double[] probs = sequences[k].getProbs();
+      for (int j = 0; j < words.length; j++) {
+        Parse word = tokenNodes[j];
+        p.insert(new Parse(word.getText(), word.getSpan(), tags[j], probs[j], j));
+        p.addProb(Math.log(probs[j]));
+      }
+      chunk(p, tokenNodes, words, tags, new double[words.length]);
+      parses[k] = p;
+    }
+    Arrays.sort(parses);
+    return parses;
+  }
+
+  /** Copy the incomplete parse and its token nodes, so each parse of the tokens gets its own tree. */
+  private static Parse copyTokens(Parse tokens) {
+    String text = tokens.getText();
+    Parse copy = new Parse(text, tokens.getSpan(), AbstractBottomUpParser.INC_NODE, 0, 0);
+    Parse[] children = tokens.getChildren();
+    for (int i = 0; i < children.length; i++) {
+      copy.insert(new Parse(text, children[i].getSpan(), AbstractBottomUpParser.TOK_NODE, 0, i));
+    }
+    return copy;
+  }
+
+  /** Work done with the parses of each question, on the thread that parsed it. */
+  public interface ParseHandler<T> {
+    /**
+     * @param index the position of the question in the list given to {@link ChunkParser#parseAll}.
+     * @param parses the parses of the question, best first.
+     */
+    T handle(int index, Parse[] parses);
+  }
+
+  /**
+   * Parse many questions, each a line of whitespace separated tokens as read by
+   * {@link ParserTool#parseLine(String, Parser, int)}, spread across threads.  Each thread tags and chunks with its
+   * own {@link POSTaggerME} and {@link ChunkerME} over the shared models.
+   *
+   * @return the parses of each question, best first, in the order of the questions.
+   */
+  public static List<Parse[]> parseAll(List<String> questions, int numParses,
+                                       ChunkerModel chunkerModel, POSModel posModel,
+                                       int numThreads) throws InterruptedException {
+    return parseAll(questions, numParses, chunkerModel, posModel, numThreads, new ParseHandler<Parse[]>() {
+      public Parse[] handle(int index, Parse[] parses) {
+        return parses;
+      }
+    });
+  }
+
+  /**
+   * Parse many questions as {@link #parseAll(List, int, ChunkerModel, POSModel, int)} does, and pass the parses of
+   * each to the handler on the same thread, so the handler must be thread-safe.
+   *
+   * @return what the handler returned for each question, in the order of the questions.
+   */
+  public static <T> List<T> parseAll(List<String> questions, int numParses,
+                                     ChunkerModel chunkerModel, POSModel posModel,
+                                     int numThreads, ParseHandler<T> handler) throws InterruptedException {
+    numThreads = Math.max(1, Math.min(numThreads, (questions.size() + BATCH_SIZE - 1) / BATCH_SIZE));
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      return parseAll(questions, numParses, executor, numThreads, threadParsers(chunkerModel, posModel), handler);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Parse many questions as {@link #parseAll(List, int, ChunkerModel, POSModel, int, ParseHandler)} does, but on
+   * the caller's executor and with the caller's parsers, so that a caller parsing many lists of questions creates
+   * its threads and their parsers only once.  The executor is left running.
+   *
+   * @param numThreads the number of workers to submit to the executor.
+   * @param parsers    the parser of each thread, see {@link #threadParsers}.
+   * @return what the handler returned for each question, in the order of the questions.
+   */
+  public static <T> List<T> parseAll(final List<String> questions, final int numParses, ExecutorService executor,
+                                     int numThreads, final ThreadLocal<? extends Parser> parsers,
+                                     final ParseHandler<T> handler) throws InterruptedException {
+    final Object[] results = new Object[questions.size()];
+    final AtomicInteger next = new AtomicInteger();
+    numThreads = Math.max(1, Math.min(numThreads, (questions.size() + BATCH_SIZE - 1) / BATCH_SIZE));
+    List<Future<?>> workers = new ArrayList<Future<?>>(numThreads);
+    try {
+      for (int t = 0; t < numThreads; t++) {
+        workers.add(executor.submit(new Callable<Object>() {
+          public Object call() {
+            Parser parser = parsers.get();
+            for (int start = next.getAndAdd(BATCH_SIZE); start < results.length;
+                 start = next.getAndAdd(BATCH_SIZE)) {
+              for (int i = start, end = Math.min(start + BATCH_SIZE, results.length); i < end; i++) {
+                results[i] = handler.handle(i, ParserTool.parseLine(questions.get(i), parser, numParses));
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      // stop the other workers if one failed or we were interrupted
+      next.set(results.length);
+      for (Future<?> worker : workers) {
+        worker.cancel(true);
+      }
+    }
+    @SuppressWarnings("unchecked")
+    List<T> list = (List<T>) Arrays.asList(results);
+    return list;
+  }
+
+  /**
+   * A {@link ChunkParser} for each thread, created the first time the thread asks for one, with its own
+   * {@link POSTaggerME} and {@link ChunkerME} over the shared models.
+   */
+  public static ThreadLocal<Parser> threadParsers(final ChunkerModel chunkerModel, final POSModel posModel) {
+    return new ThreadLocal<Parser>() {
+      @Override
+      protected Parser initialValue() {
+        return new ChunkParser(new ChunkerME(chunkerModel), new POSTaggerME(posModel));
+      }
+    };
   }
-  
 }
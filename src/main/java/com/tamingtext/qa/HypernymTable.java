@@ -0,0 +1,320 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import net.didion.jwnl.JWNLException;
+import net.didion.jwnl.data.Exc;
+import net.didion.jwnl.data.IndexWord;
+import net.didion.jwnl.data.POS;
+import net.didion.jwnl.dictionary.Dictionary;
+import opennlp.tools.coref.mention.JWNLDictionary;
+
+/**
+ * An in-memory copy of the parts of WordNet used by the {@link AnswerTypeContextGenerator}: the noun lemmas of a
+ * word and the hypernym sense keys of the first sense of each lemma, as returned by
+ * {@link JWNLDictionary#getLemmas(String, String)} and {@link JWNLDictionary#getParentSenseKeys(String, String, int)}.
+ * <p>
+ * Words and sense keys are each stored once in sorted string tables and everything else as int arrays indexed by
+ * their position, so the table is compact and lookups are a binary search with no dictionary I/O.  The table covers
+ * every noun in WordNet and every irregular form in its exception list; regular inflections, such as plurals, are
+ * reduced to their lemmas with the same suffix rules JWNL uses.
+ * <p>
+ * Building the table walks the whole noun hierarchy, so it can be saved to a snapshot with {@link #save(File)} and
+ * read back with {@link #load(File)} for a fast startup.  Instances are immutable and may be shared between threads.
+ */
+public class HypernymTable {
+
+  private static final int MAGIC = 0x48595054; // "HYPT"
+  private static final int VERSION = 1;
+
+  /** The noun suffix rules JWNL detaches to find the base form of a regular inflection. */
+  private static final String[][] NOUN_SUFFIXES = {
+      {"s", ""}, {"ses", "s"}, {"xes", "x"}, {"zes", "z"}, {"ches", "ch"}, {"shes", "sh"}, {"men", "man"},
+      {"ies", "y"}
+  };
+
+  private static final String[] EMPTY = new String[0];
+
+  /** Every word with lemmas or sense keys, sorted. */
+  private final String[] words;
+  /** The lemmas of words[i] are the words lemmas[lemmaStarts[i]] to lemmas[lemmaStarts[i + 1]]. */
+  private final int[] lemmaStarts;
+  private final int[] lemmas;
+  /** Every sense key, sorted. */
+  private final String[] keys;
+  /** The parent sense keys of words[i] are the keys parents[parentStarts[i]] to parents[parentStarts[i + 1]]. */
+  private final int[] parentStarts;
+  private final int[] parents;
+
+  private HypernymTable(String[] words, int[] lemmaStarts, int[] lemmas, String[] keys, int[] parentStarts,
+                        int[] parents) {
+    this.words = words;
+    this.lemmaStarts = lemmaStarts;
+    this.lemmas = lemmas;
+    this.keys = keys;
+    this.parentStarts = parentStarts;
+    this.parents = parents;
+  }
+
+  /** The number of words in the table. */
+  public int size() {
+    return words.length;
+  }
+
+  /**
+   * The noun lemmas of a lower case word, in the order WordNet gives them.
+   */
+  public String[] getLemmas(String word) {
+    int id = Arrays.binarySearch(words, word);
+    if (id >= 0 && lemmaStarts[id] < lemmaStarts[id + 1]) {
+      String[] result = new String[lemmaStarts[id + 1] - lemmaStarts[id]];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = words[lemmas[lemmaStarts[id] + i]];
+      }
+      return result;
+    }
+    List<String> result = new ArrayList<String>();
+    for (String[] rule : NOUN_SUFFIXES) {
+      if (word.endsWith(rule[0])) {
+        String base = word.substring(0, word.length() - rule[0].length()) + rule[1];
+        if (base.length() > 0 && !result.contains(base) && hasParents(base)) {
+          result.add(base);
+        }
+      }
+    }
+    return result.toArray(new String[result.size()]);
+  }
+
+  /** The sense keys of the hypernyms of the first sense of a noun lemma, nearest first. */
+  public String[] getParentSenseKeys(String lemma) {
+    int id = Arrays.binarySearch(words, lemma);
+    if (id < 0) {
+      return EMPTY;
+    }
+    String[] result = new String[parentStarts[id + 1] - parentStarts[id]];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = keys[parents[parentStarts[id] + i]];
+    }
+    return result;
+  }
+
+  /** Add the parent sense keys of every lemma of a lower case word to <code>senseKeys</code>. */
+  public void addParentSenseKeys(String word, Collection<String> senseKeys) {
+    for (String lemma : getLemmas(word)) {
+      int id = Arrays.binarySearch(words, lemma);
+      if (id >= 0) {
+        for (int i = parentStarts[id]; i < parentStarts[id + 1]; i++) {
+          senseKeys.add(keys[parents[i]]);
+        }
+      }
+    }
+  }
+
+  private boolean hasParents(String lemma) {
+    int id = Arrays.binarySearch(words, lemma);
+    return id >= 0 && parentStarts[id] < parentStarts[id + 1];
+  }
+
+  /**
+   * Copy the nouns and noun exceptions of a WordNet dictionary into a table.
+   *
+   * @param wordnet the most recently created {@link JWNLDictionary}, as JWNL keeps a single, process wide dictionary
+   *                which this walks directly.  The caller must make sure nothing else uses JWNL meanwhile.
+   */
+  public static HypernymTable build(JWNLDictionary wordnet) throws JWNLException {
+    Dictionary dictionary = Dictionary.getInstance();
+    TreeSet<String> forms = new TreeSet<String>();
+    for (Iterator it = dictionary.getIndexWordIterator(POS.NOUN); it.hasNext();) {
+      forms.add(((IndexWord) it.next()).getLemma());
+    }
+    for (Iterator it = dictionary.getExceptionIterator(POS.NOUN); it.hasNext();) {
+      forms.add(((Exc) it.next()).getLemma());
+    }
+    Builder builder = new Builder();
+    TreeSet<String> seenLemmas = new TreeSet<String>();
+    for (String form : forms) {
+      String[] formLemmas = wordnet.getLemmas(form, "NN");
+      builder.addLemmas(form, formLemmas);
+      for (String lemma : formLemmas) {
+        if (seenLemmas.add(lemma)) {
+          builder.addParents(lemma, wordnet.getParentSenseKeys(lemma, "NN", 0));
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /** Collects lemmas and parents, in any order, for a table. */
+  public static class Builder {
+    private final Map<String, String[]> lemmaMap = new TreeMap<String, String[]>();
+    private final Map<String, String[]> parentMap = new TreeMap<String, String[]>();
+
+    public Builder addLemmas(String word, String... wordLemmas) {
+      lemmaMap.put(word, wordLemmas.clone());
+      return this;
+    }
+
+    public Builder addParents(String lemma, String... senseKeys) {
+      parentMap.put(lemma, senseKeys.clone());
+      return this;
+    }
+
+    public HypernymTable build() {
+      TreeSet<String> wordSet = new TreeSet<String>(lemmaMap.keySet());
+      wordSet.addAll(parentMap.keySet());
+      for (String[] wordLemmas : lemmaMap.values()) {
+        wordSet.addAll(Arrays.asList(wordLemmas));
+      }
+      TreeSet<String> keySet = new TreeSet<String>();
+      for (String[] senseKeys : parentMap.values()) {
+        keySet.addAll(Arrays.asList(senseKeys));
+      }
+      String[] words = wordSet.toArray(new String[wordSet.size()]);
+      String[] keys = keySet.toArray(new String[keySet.size()]);
+      int[] lemmaStarts = new int[words.length + 1];
+      int[] parentStarts = new int[words.length + 1];
+      IntArray lemmas = new IntArray();
+      IntArray parents = new IntArray();
+      for (int i = 0; i < words.length; i++) {
+        String[] wordLemmas = lemmaMap.get(words[i]);
+        if (wordLemmas != null) {
+          for (String lemma : wordLemmas) {
+            lemmas.add(Arrays.binarySearch(words, lemma));
+          }
+        }
+        lemmaStarts[i + 1] = lemmas.size;
+        String[] senseKeys = parentMap.get(words[i]);
+        if (senseKeys != null) {
+          for (String key : senseKeys) {
+            parents.add(Arrays.binarySearch(keys, key));
+          }
+        }
+        parentStarts[i + 1] = parents.size;
+      }
+      return new HypernymTable(words, lemmaStarts, lemmas.toArray(), keys, parentStarts, parents.toArray());
+    }
+  }
+
+  private static class IntArray {
+    int[] values = new int[1024];
+    int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+  /** Write the table to a binary snapshot. */
+  public void save(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeStrings(out, words);
+      writeInts(out, lemmaStarts);
+      writeInts(out, lemmas);
+      writeStrings(out, keys);
+      writeInts(out, parentStarts);
+      writeInts(out, parents);
+    } finally {
+      out.close();
+    }
+  }
+
+  /** Read a table written by {@link #save(File)}. */
+  public static HypernymTable load(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a hypernym table snapshot: " + file);
+      }
+      return new HypernymTable(readStrings(in), readInts(in), readInts(in), readStrings(in), readInts(in),
+          readInts(in));
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+    out.writeInt(strings.length);
+    for (String s : strings) {
+      out.writeUTF(s);
+    }
+  }
+
+  private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+    out.writeInt(ints.length);
+    for (int i : ints) {
+      out.writeInt(i);
+    }
+  }
+
+  private static String[] readStrings(DataInputStream in) throws IOException {
+    String[] strings = new String[in.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = in.readUTF();
+    }
+    return strings;
+  }
+
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] ints = new int[in.readInt()];
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = in.readInt();
+    }
+    return ints;
+  }
+
+  /** Build the table from a WordNet dict directory and save a snapshot of it. */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("Usage: HypernymTable <wordnet dict dir> <snapshot file>");
+      System.exit(1);
+    }
+    long start = System.currentTimeMillis();
+    HypernymTable table = AnswerTypeContextGenerator.buildHypernymTable(new File(args[0]));
+    table.save(new File(args[1]));
+    System.out.println("Saved " + table.size() + " words in " + (System.currentTimeMillis() - start) + " ms");
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Autowarms the question cache of the {@link QuestionQParserPlugin}. A
+ * {@link QuestionQParser.ParsedQuestion} depends only on the question and
+ * the schema, not on the documents in the index, so the entries of the old
+ * searcher's cache are carried over to the new one unchanged. Configure it
+ * as the regenerator of the cache in solrconfig.xml:
+ * <pre>
+ * &lt;cache name="questionCache" class="solr.LRUCache" size="8192"
+ *   initialSize="512" autowarmCount="8192"
+ *   regenerator="com.tamingtext.qa.ParsedQuestionRegenerator"/&gt;
+ * </pre>
+ */
+public class ParsedQuestionRegenerator implements CacheRegenerator {
+
+  @Override
+  public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                SolrCache oldCache, Object oldKey, Object oldVal) {
+    @SuppressWarnings("unchecked")
+    SolrCache<Object, Object> cache = newCache;
+    cache.put(oldKey, oldVal);
+    return true;
+  }
+}
@@ -36,12 +36,15 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.SearchComponent;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
+import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.util.plugin.PluginInfoInitialized;
 import org.apache.solr.util.plugin.SolrCoreAware;
@@ -49,12 +52,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Given a SpanQuery, get windows around the matches and rank those results
@@ -72,17 +85,78 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
   public static final float DEFAULT_SECOND_ADJACENT_WEIGHT = 0.25f;
   public static final float DEFAULT_BIGRAM_WEIGHT = 1.0f;
 
+  /**
+   * Init arg that, when true, scores passages from the {@link PassageWindowIndex} instead of
+   * reading term vectors for every match.  May be overridden per request with {@link QAParams#PRECOMPUTED_WINDOWS}.
+   * The windows are built by a {@link PassageWindowListener}, which must be configured for the question fields.
+   */
+  public static final String PRECOMPUTED_WINDOWS_ARG = "precomputedWindows";
+
+  /**
+   * Init arg for the number of threads used to rank the segments of the index in parallel.  The default of 1 ranks
+   * them one after another on the request thread.
+   */
+  public static final String THREADS_ARG = "threads";
+
+  /**
+   * Init arg naming the user cache, declared in solrconfig.xml, in which term weights are cached.  Defaults to
+   * {@link #DEFAULT_WEIGHT_CACHE}.  If the searcher has no such cache, weights are computed for every request.
+   */
+  public static final String WEIGHT_CACHE_ARG = "weightCache";
+  public static final String DEFAULT_WEIGHT_CACHE = "termWeightCache";
+
+  private boolean precomputedWindows;
+  private String weightCacheName = DEFAULT_WEIGHT_CACHE;
+  private int threads = 1;
+  private ExecutorService executor;
+
   @Override
   public void init(PluginInfo pluginInfo) {
-
+    if (pluginInfo != null && pluginInfo.initArgs != null) {
+      Object precomputed = pluginInfo.initArgs.get(PRECOMPUTED_WINDOWS_ARG);
+      precomputedWindows = precomputed != null && Boolean.parseBoolean(precomputed.toString());
+      Object weightCacheArg = pluginInfo.initArgs.get(WEIGHT_CACHE_ARG);
+      if (weightCacheArg != null) {
+        weightCacheName = weightCacheArg.toString();
+      }
+      Object threadsArg = pluginInfo.initArgs.get(THREADS_ARG);
+      if (threadsArg != null) {
+        threads = Integer.parseInt(threadsArg.toString());
+      }
+    }
   }
 
   @Override
   public void inform(SolrCore solrCore) {
+    if (threads > 1) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "passageRank-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      solrCore.addCloseHook(new CloseHook() {
+        @Override
+        public void preClose(SolrCore core) {
+          executor.shutdownNow();
+        }
 
+        @Override
+        public void postClose(SolrCore core) {
+        }
+      });
+    }
   }
 
 
+  /** Use the given executor to rank segments in parallel, or none to rank them in turn. */
+  void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
   @Override
   public void prepare(ResponseBuilder rb) throws IOException {
     SolrParams params = rb.req.getParams();
@@ -108,12 +182,13 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
       SpanNearQuery sQuery = (SpanNearQuery) origQuery;
       SolrIndexSearcher searcher = rb.req.getSearcher();
       IndexReader reader = searcher.getIndexReader();
-      Spans spans = sQuery.getSpans(reader);
       //Assumes the query is a SpanQuery
       //Build up the query term weight map and the bi-gram
       Map<String, Float> termWeights = new HashMap<String, Float>();
       Map<String, Float> bigramWeights = new HashMap<String, Float>();
-      createWeights(params.get(CommonParams.Q), sQuery, termWeights, bigramWeights, reader);
+      @SuppressWarnings("unchecked")
+      SolrCache<Term, Float> weightCache = searcher.getCache(weightCacheName);
+      createWeights(params.get(CommonParams.Q), sQuery, termWeights, bigramWeights, reader, weightCache);
       float adjWeight = params.getFloat(ADJACENT_WEIGHT, DEFAULT_ADJACENT_WEIGHT);
       float secondAdjWeight = params.getFloat(SECOND_ADJ_WEIGHT, DEFAULT_SECOND_ADJACENT_WEIGHT);
       float bigramWeight = params.getFloat(BIGRAM_WEIGHT, DEFAULT_BIGRAM_WEIGHT);
@@ -121,33 +196,12 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
       int primaryWindowSize = params.getInt(QAParams.PRIMARY_WINDOW_SIZE, DEFAULT_PRIMARY_WINDOW_SIZE);
       int adjacentWindowSize = params.getInt(QAParams.ADJACENT_WINDOW_SIZE, DEFAULT_ADJACENT_WINDOW_SIZE);
       int secondaryWindowSize = params.getInt(QAParams.SECONDARY_WINDOW_SIZE, DEFAULT_SECONDARY_WINDOW_SIZE);
-      WindowBuildingTVM tvm = new WindowBuildingTVM(primaryWindowSize, adjacentWindowSize, secondaryWindowSize);
-      PassagePriorityQueue rankedPassages = new PassagePriorityQueue();
+      //number the query terms once, so windows can be scored without string lookups
+      PassageWindowIndex.WindowScorer scorer = new PassageWindowIndex.WindowScorer(termWeights, bigramWeights,
+              adjWeight, secondAdjWeight, bigramWeight, primaryWindowSize, adjacentWindowSize, secondaryWindowSize);
+      boolean precomputed = params.getBool(PRECOMPUTED_WINDOWS, precomputedWindows);
       //intersect w/ doclist
-      DocList docList = rb.getResults().docList;
-      while (spans.next() == true) {
-        //build up the window
-        if (docList.exists(spans.doc())) {
-          tvm.spanStart = spans.start();
-          tvm.spanEnd = spans.end();
-          reader.getTermFreqVector(spans.doc(), sQuery.getField(), tvm);
-          //The entries map contains the window, do some ranking of it
-          if (tvm.passage.terms.isEmpty() == false) {
-            log.debug("Candidate: Doc: {} Start: {} End: {} ",
-                    new Object[]{spans.doc(), spans.start(), spans.end()});
-          }
-          tvm.passage.lDocId = spans.doc();
-          tvm.passage.field = sQuery.getField();
-          //score this window
-          try {
-            addPassage(tvm.passage, rankedPassages, termWeights, bigramWeights, adjWeight, secondAdjWeight, bigramWeight);
-          } catch (CloneNotSupportedException e) {
-            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Internal error cloning Passage", e);
-          }
-          //clear out the entries for the next round
-          tvm.passage.clear();
-        }
-      }
+      PassagePriorityQueue rankedPassages = rankSegments(sQuery, reader, rb.getResults().docList, scorer, precomputed);
       NamedList qaResp = new NamedList();
       rb.rsp.add("qaResponse", qaResp);
       int rows = params.getInt(QA_ROWS, 5);
@@ -178,11 +232,11 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
             String fldValue = searcher.doc(passage.lDocId, fields).get(passage.field);
             if (fldValue != null) {
               //get the window of words to display, we don't use the passage window, as that is based on the term vector
-              int start = passage.terms.first().start;//use the offsets
-              int end = passage.terms.last().end;
+              int start = passage.windowStart;//use the offsets
+              int end = passage.windowEnd;
               if (start >= 0 && start < fldValue.length() &&
                       end >= 0 && end < fldValue.length()) {
-                passNL.add("window", fldValue.substring(start, end + passage.terms.last().term.length()));
+                passNL.add("window", fldValue.substring(start, end + passage.lastTerm.length()));
               } else {
                 log.debug("Passage does not have correct offset information");
                 passNL.add("window", fldValue);//we don't have offsets, or they are incorrect, return the whole field value
@@ -199,6 +253,169 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
   }
 
 
+  /**
+   * Rank the passages of each segment of the index, in parallel if the component has been configured with more than
+   * one thread, and merge the results.  The queues are merged under a total order, so the ranking is the same whatever
+   * order the segments finish in.
+   */
+  PassagePriorityQueue rankSegments(final SpanNearQuery sQuery, IndexReader reader, DocList docList,
+                                            final PassageWindowIndex.WindowScorer scorer,
+                                            final boolean precomputed) throws IOException {
+    final IndexReader[] segments = PassageWindowIndex.getSegments(reader);
+    final int[] docStarts = PassageWindowIndex.getDocStarts(segments);
+    final int[][] segmentDocs = splitDocs(docList, docStarts);
+    PassagePriorityQueue rankedPassages = new PassagePriorityQueue();
+    if (executor == null || segments.length == 1) {
+      for (int i = 0; i < segments.length; i++) {
+        merge(rankedPassages, rankSegment(sQuery, segments[i], docStarts[i], segmentDocs[i], scorer, precomputed));
+      }
+      return rankedPassages;
+    }
+    List<Future<PassagePriorityQueue>> results = new ArrayList<Future<PassagePriorityQueue>>();
+    for (int i = 0; i < segments.length; i++) {
+      if (segmentDocs[i].length == 0) {
+        continue;
+      }
+      final int segment = i;
+      results.add(executor.submit(new Callable<PassagePriorityQueue>() {
+        public PassagePriorityQueue call() throws IOException {
+          //the scorer holds per-span state, so each segment gets its own copy
+          return rankSegment(sQuery, segments[segment], docStarts[segment], segmentDocs[segment],
+                  new PassageWindowIndex.WindowScorer(scorer), precomputed);
+        }
+      }));
+    }
+    try {
+      for (Future<PassagePriorityQueue> result : results) {
+        merge(rankedPassages, result.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while ranking passages", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error ranking passages", e.getCause());
+    } finally {
+      for (Future<PassagePriorityQueue> result : results) {
+        result.cancel(true);
+      }
+    }
+    return rankedPassages;
+  }
+
+  /** Split the documents of the DocList by segment, as sorted, segment relative ids. */
+  private static int[][] splitDocs(DocList docList, int[] docStarts) {
+    int[] docs = new int[docList.size()];
+    DocIterator iterator = docList.iterator();
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = iterator.nextDoc();
+    }
+    Arrays.sort(docs);
+    int[][] result = new int[docStarts.length][];
+    int from = 0;
+    for (int s = 0; s < docStarts.length; s++) {
+      int end = s + 1 < docStarts.length ? docStarts[s + 1] : Integer.MAX_VALUE;
+      int to = from;
+      while (to < docs.length && docs[to] < end) {
+        to++;
+      }
+      result[s] = new int[to - from];
+      for (int i = from; i < to; i++) {
+        result[s][i - from] = docs[i] - docStarts[s];
+      }
+      from = to;
+    }
+    return result;
+  }
+
+  private static void merge(PassagePriorityQueue rankedPassages, PassagePriorityQueue segmentPassages) {
+    Passage passage;
+    while ((passage = segmentPassages.pop()) != null) {
+      rankedPassages.insertWithOverflow(passage);
+    }
+  }
+
+  /**
+   * Rank the windows around the spans in the given documents of one segment, either by reading the term vector of the
+   * document for every match, or from the {@link PassageWindowIndex} of the field.  The windows are built by the
+   * {@link PassageWindowListener} when a searcher opens; a segment without them is ranked from its term vectors.
+   *
+   * @param docBase the id of the first document of the segment, which is added to the ids of the ranked passages
+   * @param docs    the sorted, segment relative ids of the documents to visit
+   */
+  private PassagePriorityQueue rankSegment(SpanNearQuery sQuery, IndexReader segment, int docBase, int[] docs,
+                                           PassageWindowIndex.WindowScorer scorer,
+                                           boolean precomputed) throws IOException {
+    PassagePriorityQueue rankedPassages = new PassagePriorityQueue();
+    if (docs.length == 0) {
+      return rankedPassages;
+    }
+    String field = sQuery.getField();
+    PassageWindowIndex.Segment windows = precomputed ? PassageWindowIndex.getSegment(segment, field) : null;
+    PassageWindowIndex.TermVectorWindow window = null;
+    if (windows != null) {
+      scorer.setSegment(windows);
+    } else {
+      window = new PassageWindowIndex.TermVectorWindow(scorer);
+    }
+    Passage spare = new Passage();
+    Spans spans = sQuery.getSpans(segment);
+    int next = 0;
+    boolean more = spans.skipTo(docs[next]);
+    while (more) {
+      int doc = spans.doc();
+      while (next < docs.length && docs[next] < doc) {
+        next++;
+      }
+      if (next == docs.length) {
+        break;
+      }
+      if (docs[next] != doc) {
+        //only visit the documents in the DocList
+        more = spans.skipTo(docs[next]);
+        continue;
+      }
+      float score;
+      if (windows != null) {
+        score = scorer.score(doc, spans.start(), spans.end());
+      } else {
+        window.reset(spans.start(), spans.end());
+        segment.getTermFreqVector(doc, field, window);
+        window.sort();
+        score = scorer.score(window);
+      }
+      if (score >= 0) {
+        log.debug("Candidate: Doc: {} Start: {} End: {} ",
+                new Object[]{docBase + doc, spans.start(), spans.end()});
+        int first = scorer.firstPrimary;
+        int last = scorer.lastPrimary;
+        if (windows != null) {
+          spare.set(docBase + doc, field, score, windows.startOffsets[first], windows.endOffsets[last],
+                  windows.term(windows.termIds[last]));
+        } else {
+          spare.set(docBase + doc, field, score, window.startOffsets[first], window.endOffsets[last],
+                  window.terms[last]);
+        }
+        spare = offer(rankedPassages, spare);
+      }
+      more = spans.next();
+    }
+    return rankedPassages;
+  }
+
+  /**
+   * Offer a passage to the queue.  Passages pushed out of the queue, or that don't make it in, are handed back for
+   * reuse, so only as many passages are created as the queue holds.
+   *
+   * @return a passage that may be overwritten
+   */
+  private Passage offer(PassagePriorityQueue rankedPassages, Passage passage) {
+    Passage spare = rankedPassages.insertWithOverflow(passage);
+    return spare != null ? spare : new Passage();
+  }
+
   protected float scoreTerms(SortedSet<WindowTerm> terms, Map<String, Float> termWeights, Set<String> covered) {
     float score = 0f;
     for (WindowTerm wTerm : terms) {
@@ -276,35 +493,23 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
   //<end id="qa.scorePassage"/>
 
 
+  protected void createWeights(String origQuery, SpanNearQuery parsedQuery,
+                               Map<String, Float> termWeights,
+                               Map<String, Float> bigramWeights, IndexReader reader) throws IOException {
+    createWeights(origQuery, parsedQuery, termWeights, bigramWeights, reader, null);
+  }
+
   /**
-   * Potentially add the passage to the PriorityQueue.
+   * As {@link #createWeights(String, SpanNearQuery, Map, Map, IndexReader)}, looking up the term weights in a cache
+   * first.  Solr creates a new user cache for every searcher, so cached weights never outlive the index they were
+   * computed from.
    *
-   * @param p               The passage to add
-   * @param pq              The {@link org.apache.lucene.util.PriorityQueue} to add the passage to if it ranks high enough
-   * @param termWeights     The weights of the terms
-   * @param bigramWeights   The weights of the bigrams
-   * @param adjWeight       The weight to be applied to the score of the adjacent window
-   * @param secondAdjWeight The weight to be applied to the score of the second adjacent window
-   * @param biWeight        The weight to be applied to the score of the bigrams
-   * @throws CloneNotSupportedException if not cloneable
+   * @param weightCache the searcher's cache of term weights, keyed by {@link Term}, or null.
    */
-  private void addPassage(Passage p, PassagePriorityQueue pq, Map<String, Float> termWeights,
-                          Map<String, Float> bigramWeights,
-                          float adjWeight, float secondAdjWeight, float biWeight) throws CloneNotSupportedException {
-    p.score = scorePassage(p, termWeights, bigramWeights, adjWeight, secondAdjWeight, biWeight);
-    Passage lowest = pq.top();
-    if (lowest == null || pq.lessThan(p, lowest) == false || pq.size() < pq.capacity()) {
-      //by doing this, we can re-use the Passage object
-      Passage cloned = (Passage) p.clone();
-      //TODO: Do we care about the overflow?
-      pq.insertWithOverflow(cloned);
-    }
-
-  }
-
   protected void createWeights(String origQuery, SpanNearQuery parsedQuery,
                                Map<String, Float> termWeights,
-                               Map<String, Float> bigramWeights, IndexReader reader) throws IOException {
+                               Map<String, Float> bigramWeights, IndexReader reader,
+                               SolrCache<Term, Float> weightCache) throws IOException {
 
     SpanQuery[] clauses = parsedQuery.getClauses();
     //we need to recurse through the clauses until we get to SpanTermQuery
@@ -314,14 +519,20 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
       SpanQuery clause = clauses[i];
       if (clause instanceof SpanTermQuery) {
         Term term = ((SpanTermQuery) clause).getTerm();
-        Float weight = calculateWeight(term, reader);
+        Float weight = weightCache != null ? weightCache.get(term) : null;
+        if (weight == null) {
+          weight = calculateWeight(term, reader);
+          if (weightCache != null) {
+            weightCache.put(term, weight);
+          }
+        }
         termWeights.put(term.text(), weight);
         if (lastTerm != null) {//calculate the bi-grams
           //use the smaller of the two weights
           if (lastWeight.floatValue() < weight.floatValue()) {
-            bigramWeights.put(lastTerm + "," + term.text(), new Float(lastWeight.floatValue() * 0.25));
+            bigramWeights.put(lastTerm.text() + "," + term.text(), new Float(lastWeight.floatValue() * 0.25));
           } else {
-            bigramWeights.put(lastTerm + "," + term.text(), new Float(weight.floatValue() * 0.25));
+            bigramWeights.put(lastTerm.text() + "," + term.text(), new Float(weight.floatValue() * 0.25));
           }
         }
         //last
@@ -339,16 +550,22 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
   protected float calculateWeight(Term term, IndexReader reader) throws IOException {
     //if a term is not in the index, then it's weight is 0
     TermEnum termEnum = reader.terms(term);
-    if (termEnum != null && termEnum.term() != null && termEnum.term().equals(term)) {
-      return 1.0f / termEnum.docFreq();
-    } else {
-      log.warn("Couldn't find doc freq for term {}", term);
-      return 0;
+    try {
+      if (termEnum != null && termEnum.term() != null && termEnum.term().equals(term)) {
+        return 1.0f / termEnum.docFreq();
+      } else {
+        log.warn("Couldn't find doc freq for term {}", term);
+        return 0;
+      }
+    } finally {
+      if (termEnum != null) {
+        termEnum.close();
+      }
     }
 
   }
 
-  class Passage implements Cloneable {
+  class Passage {
     int lDocId;
     String field;
 
@@ -360,47 +577,29 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
     SortedSet<WindowTerm> secFollowTerms = new TreeSet<WindowTerm>();
     SortedSet<WindowTerm> bigrams = new TreeSet<WindowTerm>();
 
+    //the start offset of the first term and end offset of the last term of the primary window, for display
+    int windowStart = -1;
+    int windowEnd = -1;
+    String lastTerm;
+
     Passage() {
     }
 
-    @Override
-    protected Object clone() throws CloneNotSupportedException {
-      Passage result = (Passage) super.clone();
-      result.terms = new TreeSet<WindowTerm>();
-      for (WindowTerm term : terms) {
-        result.terms.add((WindowTerm) term.clone());
-      }
-      result.prevTerms = new TreeSet<WindowTerm>();
-      for (WindowTerm term : prevTerms) {
-        result.prevTerms.add((WindowTerm) term.clone());
-      }
-      result.followTerms = new TreeSet<WindowTerm>();
-      for (WindowTerm term : followTerms) {
-        result.followTerms.add((WindowTerm) term.clone());
-      }
-      result.secPrevTerms = new TreeSet<WindowTerm>();
-      for (WindowTerm term : secPrevTerms) {
-        result.secPrevTerms.add((WindowTerm) term.clone());
-      }
-      result.secFollowTerms = new TreeSet<WindowTerm>();
-      for (WindowTerm term : secFollowTerms) {
-        result.secFollowTerms.add((WindowTerm) term.clone());
-      }
-      result.bigrams = new TreeSet<WindowTerm>();
-      for (WindowTerm term : bigrams) {
-        result.bigrams.add((WindowTerm) term.clone());
-      }
-
-      return result;
+    void set(int lDocId, String field, float score, int windowStart, int windowEnd, String lastTerm) {
+      this.lDocId = lDocId;
+      this.field = field;
+      this.score = score;
+      this.windowStart = windowStart;
+      this.windowEnd = windowEnd;
+      this.lastTerm = lastTerm;
     }
 
-
     public void clear() {
       terms.clear();
       prevTerms.clear();
       followTerms.clear();
       secPrevTerms.clear();
-      secPrevTerms.clear();
+      secFollowTerms.clear();
       bigrams.clear();
     }
 
@@ -423,10 +622,15 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
 
     @Override
     public boolean lessThan(Passage passageA, Passage passageB) {
-      if (passageA.score == passageB.score)
+      if (passageA.score != passageB.score)
+        return passageA.score < passageB.score;
+      else if (passageA.lDocId != passageB.lDocId)
         return passageA.lDocId > passageB.lDocId;
+      //break ties within a document by position, so the ranking doesn't depend on the order passages are offered in
+      else if (passageA.windowStart != passageB.windowStart)
+        return passageA.windowStart > passageB.windowStart;
       else
-        return passageA.score < passageB.score;
+        return passageA.windowEnd > passageB.windowEnd;
     }
   }
 
@@ -435,7 +639,8 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
 
   /**
    * The PassageRankingTVM is a Lucene TermVectorMapper that builds a five different windows around a matching term.
-   * This Window can then be used to rank the passages
+   * This Window can then be used to rank the passages with {@link #scorePassage}.  The component itself scores the
+   * same windows from arrays, see {@link PassageWindowIndex.TermVectorWindow}.
    */
   class WindowBuildingTVM extends TermVectorMapper {
     //spanStart and spanEnd are the start and positions of where the match occurred in the document
@@ -449,7 +654,7 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
       this.primaryWS = primaryWindowSize;
       this.adjWS = adjacentWindowSize;
       this.secWS = secondaryWindowSize;
-      passage = new Passage();//reuse the passage, since it will be cloned if it makes it onto the priority queue
+      passage = new Passage();//reuse the passage, clear() it between spans
     }
 
     public void map(String term, int frequency, TermVectorOffsetInfo[] offsets, int[] positions) {
@@ -469,7 +674,6 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
         int secLBEnd = adjLBStart - 1; //don't overlap the adjacent window
         int secUBStart = adjUBEnd + 1;
         int secUBEnd = adjUBEnd + secWS;
-        WindowTerm lastWT = null;
         for (int i = 0; i < positions.length; i++) {//unfortunately, we still have to loop over the positions
           //we'll make this inclusive of the boundaries, do an upfront check here so we can skip over anything that is outside of all windows
           if (positions[i] >= secLBStart && positions[i] <= secUBEnd) {
@@ -483,12 +687,6 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
             }
             if (positions[i] >= primStart && positions[i] <= primEnd) {//are we in the primary window
               passage.terms.add(wt);
-              //we are only going to keep bigrams for the primary window.  You could do it for the other windows, too
-              if (lastWT != null) {
-                WindowTerm bigramWT = new WindowTerm(lastWT.term + "," + term, lastWT.position);//we don't care about offsets for bigrams
-                passage.bigrams.add(bigramWT);
-              }
-              lastWT = wt;
             } else if (positions[i] >= secLBStart && positions[i] <= secLBEnd) {//are we in the secondary previous window?
               passage.secPrevTerms.add(wt);
             } else if (positions[i] >= secUBStart && positions[i] <= secUBEnd) {//are we in the secondary following window?
@@ -505,6 +703,21 @@ public class PassageRankingComponent extends SearchComponent implements PluginIn
 
 
 
+    /**
+     * Add the bigrams of the primary window.  Terms are mapped one at a time, so the bigrams can only be built
+     * once the whole term vector has been read and the window is in position order.
+     */
+    void buildBigrams() {
+      //we are only going to keep bigrams for the primary window.  You could do it for the other windows, too
+      WindowTerm lastWT = null;
+      for (WindowTerm wt : passage.terms) {
+        if (lastWT != null) {
+          passage.bigrams.add(new WindowTerm(lastWT.term + "," + wt.term, lastWT.position));//we don't care about offsets for bigrams
+        }
+        lastWT = wt;
+      }
+    }
+
     public void setExpectations(String field, int numTerms, boolean storeOffsets, boolean storePositions) {
       // do nothing for this example
       //See also the PositionBasedTermVectorMapper.
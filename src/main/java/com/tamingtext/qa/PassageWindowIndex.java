@@ -0,0 +1,651 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import com.tamingtext.texttamer.solr.NameFilter;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermVectorMapper;
+import org.apache.lucene.index.TermVectorOffsetInfo;
+import org.apache.lucene.util.ReaderUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Precomputed passage windows for the {@link PassageRankingComponent}.
+ * <p>
+ * For each segment of the index and each field, the term vector of every
+ * document is read once and flattened into arrays of term ids, positions and
+ * offsets sorted by position. Segments never change once written, so this is
+ * done once per segment, by the {@link PassageWindowListener} while a new
+ * searcher is warmed, instead of reading the term vector and building the
+ * windows for every span match of every question. A {@link WindowScorer} then
+ * scores the windows around a match by scanning a slice of those arrays.
+ * <p>
+ * Like the Lucene FieldCache, the data is cached against the core of each
+ * segment reader, and costs roughly 16 bytes per indexed token. Segments are
+ * only cached while the total stays under {@link #setMaxBytes}; passages in a
+ * segment without windows are ranked from its term vectors instead.
+ */
+public class PassageWindowIndex {
+
+  private transient static Logger log = LoggerFactory.getLogger(PassageWindowIndex.class);
+
+  /** The default limit on the memory used by the windows of all segments, 256MB. */
+  public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+  private static final Map<Object, Map<String, Segment>> cache =
+      new WeakHashMap<Object, Map<String, Segment>>();
+
+  private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+  private PassageWindowIndex() {
+  }
+
+  /**
+   * Limit the memory used by the windows of all segments.  Segments that have
+   * already been built are kept; the limit applies to those built afterwards.
+   */
+  public static void setMaxBytes(long bytes) {
+    maxBytes = bytes;
+  }
+
+  public static long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Get the windows of <code>field</code> for a single segment.  Never builds
+   * them, so a query is not held up by a segment that is still being built.
+   *
+   * @param segmentReader a reader for a single segment, see {@link #getSegments}
+   * @return the windows, or null if they haven't been built, see {@link #build}
+   */
+  public static Segment getSegment(IndexReader segmentReader, String field) {
+    synchronized (cache) {
+      Map<String, Segment> fields = cache.get(segmentReader.getCoreCacheKey());
+      return fields == null ? null : fields.get(field);
+    }
+  }
+
+  /**
+   * Get the windows of <code>field</code> for a single segment, building them
+   * if necessary and if they fit in the memory left under {@link #getMaxBytes}.
+   * The windows are built without holding any lock, so queries and builds of
+   * other segments carry on meanwhile.
+   *
+   * @param segmentReader a reader for a single segment, see {@link #getSegments}
+   * @return the windows, or null if there isn't room for them
+   */
+  public static Segment build(IndexReader segmentReader, String field) throws IOException {
+    Segment segment = getSegment(segmentReader, field);
+    if (segment != null) {
+      return segment;
+    }
+    if (usedBytes() >= maxBytes) {
+      return null;
+    }
+    segment = new Segment(segmentReader, field);
+    synchronized (cache) {
+      Object key = segmentReader.getCoreCacheKey();
+      Map<String, Segment> fields = cache.get(key);
+      if (fields == null) {
+        fields = new HashMap<String, Segment>();
+        cache.put(key, fields);
+      }
+      Segment built = fields.get(field);
+      if (built != null) {
+        return built;
+      }
+      long used = usedBytes();
+      if (used + segment.bytes() > maxBytes) {
+        log.warn("No room for the passage windows of {} in {}: {} of {} bytes used, {} needed",
+            new Object[]{field, segmentReader, used, maxBytes, segment.bytes()});
+        return null;
+      }
+      fields.put(field, segment);
+    }
+    return segment;
+  }
+
+  /**
+   * The memory used by the windows of all segments.  Those of segments whose
+   * readers have been closed count until the readers are garbage collected.
+   */
+  public static long usedBytes() {
+    long used = 0;
+    synchronized (cache) {
+      for (Map<String, Segment> fields : cache.values()) {
+        for (Segment segment : fields.values()) {
+          used += segment.bytes();
+        }
+      }
+    }
+    return used;
+  }
+
+  /** The readers for the segments of <code>reader</code>, in document order. */
+  public static IndexReader[] getSegments(IndexReader reader) {
+    List<IndexReader> segments = new ArrayList<IndexReader>();
+    ReaderUtil.gatherSubReaders(segments, reader);
+    return segments.toArray(new IndexReader[segments.size()]);
+  }
+
+  /** The first document id of each of <code>segments</code>. */
+  public static int[] getDocStarts(IndexReader[] segments) {
+    int[] starts = new int[segments.length];
+    int start = 0;
+    for (int i = 0; i < segments.length; i++) {
+      starts[i] = start;
+      start += segments[i].maxDoc();
+    }
+    return starts;
+  }
+
+  /**
+   * The position sorted terms of one field of every document in a segment.
+   * Named entity type tokens are left out, as they are when the windows are
+   * built from term vectors.
+   */
+  public static class Segment {
+    final String field;
+    /** The distinct terms of the field, sorted, so ids follow term order. */
+    final String[] terms;
+    /** The first entry of each document; <code>docStarts[maxDoc]</code> is the number of entries. */
+    final int[] docStarts;
+    final int[] positions;
+    final int[] termIds;
+    /** Offsets of each entry, or -1 if the term vector has none. */
+    final int[] startOffsets;
+    final int[] endOffsets;
+
+    Segment(IndexReader reader, String field) throws IOException {
+      this.field = field;
+      this.terms = readTerms(reader, field);
+      int maxDoc = reader.maxDoc();
+      docStarts = new int[maxDoc + 1];
+      EntryCollector collector = new EntryCollector(terms);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        docStarts[doc] = collector.size;
+        if (!reader.isDeleted(doc)) {
+          collector.startDocument();
+          reader.getTermFreqVector(doc, field, collector);
+          collector.sortDocument();
+        }
+      }
+      docStarts[maxDoc] = collector.size;
+      positions = Arrays.copyOf(collector.positions, collector.size);
+      termIds = Arrays.copyOf(collector.termIds, collector.size);
+      startOffsets = Arrays.copyOf(collector.startOffsets, collector.size);
+      endOffsets = Arrays.copyOf(collector.endOffsets, collector.size);
+    }
+
+    private static String[] readTerms(IndexReader reader, String field) throws IOException {
+      List<String> terms = new ArrayList<String>();
+      TermEnum termEnum = reader.terms(new Term(field, ""));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term == null || !term.field().equals(field)) {
+            break;
+          }
+          if (!isTypeToken(term.text())) {
+            terms.add(term.text());
+          }
+        } while (termEnum.next());
+      } finally {
+        termEnum.close();
+      }
+      return terms.toArray(new String[terms.size()]);
+    }
+
+    /** @return the id of <code>term</code> in this segment, or -1. */
+    public int termId(String term) {
+      int id = Arrays.binarySearch(terms, term);
+      return id < 0 ? -1 : id;
+    }
+
+    public String term(int termId) {
+      return terms[termId];
+    }
+
+    /** @return the first entry of <code>doc</code> at or after <code>position</code>. */
+    int firstEntry(int doc, int position) {
+      return PassageWindowIndex.firstEntry(positions, docStarts[doc], docStarts[doc + 1], position);
+    }
+
+    public int numEntries() {
+      return positions.length;
+    }
+
+    /** An estimate of the memory used by this segment. */
+    long bytes() {
+      long bytes = 16L * positions.length + 4L * docStarts.length;
+      for (String term : terms) {
+        bytes += 48 + 2 * term.length();
+      }
+      return bytes;
+    }
+  }
+
+  static boolean isTypeToken(String term) {
+    return term.startsWith(NameFilter.NE_PREFIX)
+        || term.startsWith(PassageRankingComponent.NE_PREFIX_LOWER);
+  }
+
+  /** Appends the entries of a term vector to growable arrays. */
+  private static class EntryCollector extends TermVectorMapper {
+    private final String[] terms;
+    int[] positions = new int[1024];
+    int[] termIds = new int[1024];
+    int[] startOffsets = new int[1024];
+    int[] endOffsets = new int[1024];
+    int size;
+    private int docStart;
+    private long[] keys = new long[256];
+    private int[] scratch = new int[256];
+
+    EntryCollector(String[] terms) {
+      this.terms = terms;
+    }
+
+    void startDocument() {
+      docStart = size;
+    }
+
+    @Override
+    public void setExpectations(String field, int numTerms, boolean storeOffsets, boolean storePositions) {
+    }
+
+    @Override
+    public void map(String term, int frequency, TermVectorOffsetInfo[] offsets, int[] positions) {
+      if (positions == null || positions.length == 0 || isTypeToken(term)) {
+        return;
+      }
+      int termId = Arrays.binarySearch(terms, term);
+      if (termId < 0) {
+        return;
+      }
+      ensureCapacity(size + positions.length);
+      for (int i = 0; i < positions.length; i++) {
+        this.positions[size] = positions[i];
+        termIds[size] = termId;
+        startOffsets[size] = offsets != null ? offsets[i].getStartOffset() : -1;
+        endOffsets[size] = offsets != null ? offsets[i].getEndOffset() : -1;
+        size++;
+      }
+    }
+
+    /**
+     * Sort the entries of the current document by position, then term id.
+     * Term vectors are read in term order, so the entries of each position
+     * are already in term id order and ordering by position and then entry
+     * is enough.
+     */
+    void sortDocument() {
+      int n = size - docStart;
+      if (keys.length < n) {
+        keys = new long[Math.max(n, keys.length * 2)];
+        scratch = new int[keys.length];
+      }
+      for (int i = 0; i < n; i++) {
+        keys[i] = ((long) positions[docStart + i] << 32) | i;
+      }
+      Arrays.sort(keys, 0, n);
+      reorder(termIds, n);
+      reorder(startOffsets, n);
+      reorder(endOffsets, n);
+      for (int i = 0; i < n; i++) {
+        positions[docStart + i] = (int) (keys[i] >>> 32);
+      }
+    }
+
+    private void reorder(int[] values, int n) {
+      System.arraycopy(values, docStart, scratch, 0, n);
+      for (int i = 0; i < n; i++) {
+        values[docStart + i] = scratch[(int) keys[i]];
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > positions.length) {
+        int newLength = Math.max(capacity, positions.length * 2);
+        positions = Arrays.copyOf(positions, newLength);
+        termIds = Arrays.copyOf(termIds, newLength);
+        startOffsets = Arrays.copyOf(startOffsets, newLength);
+        endOffsets = Arrays.copyOf(endOffsets, newLength);
+      }
+    }
+  }
+
+  /**
+   * Scores the windows around span matches, using the same windows and
+   * scoring as {@link PassageRankingComponent#scorePassage}, from position
+   * sorted arrays of term ids: either those of a {@link Segment}, or those
+   * read from a term vector by a {@link TermVectorWindow}. The query terms
+   * are numbered once, so scoring a window needs no lookups by string and no
+   * allocation. Not thread-safe, but cheap to create once per query.
+   */
+  public static class WindowScorer {
+    private final String[] queryTerms;
+    private final Map<String, Integer> queryTermIndex;
+    private final float[] termWeights;
+    /** Weight of the bigram of query terms i and j at <code>i * n + j</code>. */
+    private final float[] bigramWeights;
+    /** Number of the bigram of query terms i and j at <code>i * n + j</code>, or -1. */
+    private final int[] bigramIds;
+    private final float adjWeight, secondAdjWeight, biWeight;
+    private final int primaryWS, adjWS, secWS;
+
+    private Segment segment;
+    private int[] queryTermIds;
+    private final BitSet covered = new BitSet();
+    private final BitSet coveredBigrams = new BitSet();
+
+    /** The first and last entries of the primary window of the last passage scored. */
+    int firstPrimary, lastPrimary;
+
+    /**
+     * @param termWeights   the weights of the query terms, as built by
+     *                      {@link PassageRankingComponent#createWeights}
+     * @param bigramWeights the weights of the bigrams of the query terms
+     */
+    public WindowScorer(Map<String, Float> termWeights, Map<String, Float> bigramWeights,
+                        float adjWeight, float secondAdjWeight, float biWeight,
+                        int primaryWindowSize, int adjacentWindowSize, int secondaryWindowSize) {
+      this.queryTerms = termWeights.keySet().toArray(new String[termWeights.size()]);
+      int n = queryTerms.length;
+      this.queryTermIndex = new HashMap<String, Integer>();
+      this.termWeights = new float[n];
+      for (int i = 0; i < n; i++) {
+        queryTermIndex.put(queryTerms[i], i);
+        this.termWeights[i] = termWeights.get(queryTerms[i]);
+      }
+      this.bigramWeights = new float[n * n];
+      this.bigramIds = new int[n * n];
+      Arrays.fill(bigramIds, -1);
+      int numBigrams = 0;
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          Float weight = bigramWeights.get(queryTerms[i] + "," + queryTerms[j]);
+          if (weight != null) {
+            this.bigramWeights[i * n + j] = weight;
+            bigramIds[i * n + j] = numBigrams++;
+          }
+        }
+      }
+      this.adjWeight = adjWeight;
+      this.secondAdjWeight = secondAdjWeight;
+      this.biWeight = biWeight;
+      this.primaryWS = primaryWindowSize;
+      this.adjWS = adjacentWindowSize;
+      this.secWS = secondaryWindowSize;
+    }
+
+    /** A scorer for the same query and parameters, for use by another thread. */
+    public WindowScorer(WindowScorer other) {
+      this.queryTerms = other.queryTerms;
+      this.queryTermIndex = other.queryTermIndex;
+      this.termWeights = other.termWeights;
+      this.bigramWeights = other.bigramWeights;
+      this.bigramIds = other.bigramIds;
+      this.adjWeight = other.adjWeight;
+      this.secondAdjWeight = other.secondAdjWeight;
+      this.biWeight = other.biWeight;
+      this.primaryWS = other.primaryWS;
+      this.adjWS = other.adjWS;
+      this.secWS = other.secWS;
+    }
+
+    /** Look up the query terms in a new segment. */
+    public void setSegment(Segment segment) {
+      this.segment = segment;
+      queryTermIds = new int[queryTerms.length];
+      for (int i = 0; i < queryTerms.length; i++) {
+        queryTermIds[i] = segment.termId(queryTerms[i]);
+      }
+    }
+
+    /** @return the number of a query term, or -1 if it is not in the query. */
+    int queryTerm(String term) {
+      Integer q = queryTermIndex.get(term);
+      return q == null ? -1 : q.intValue();
+    }
+
+    private int queryTerm(int termId) {
+      for (int i = 0; i < queryTermIds.length; i++) {
+        if (queryTermIds[i] == termId) return i;
+      }
+      return -1;
+    }
+
+    /** How far either side of a span terms can affect its score. */
+    int reach() {
+      return primaryWS + adjWS + secWS;
+    }
+
+    /**
+     * Score the windows around a span of a document of the current segment.
+     *
+     * @param doc the document, relative to the segment
+     * @return the score, or -1 if the primary window is empty.
+     */
+    public float score(int doc, int spanStart, int spanEnd) {
+      return score(segment.positions, segment.termIds, true,
+          segment.docStarts[doc], segment.docStarts[doc + 1], spanStart, spanEnd);
+    }
+
+    /**
+     * Score the windows around the span a term vector was read for.
+     *
+     * @return the score, or -1 if the primary window is empty.
+     */
+    public float score(TermVectorWindow window) {
+      return score(window.positions, window.ids, false, 0, window.size, window.spanStart, window.spanEnd);
+    }
+
+    /**
+     * @param segmentIds true if <code>ids</code> are segment term ids, false
+     *                   if they are already query term numbers.
+     */
+    private float score(int[] positions, int[] ids, boolean segmentIds,
+                        int start, int end, int spanStart, int spanEnd) {
+      int primStart = spanStart - primaryWS;
+      int primEnd = spanEnd + primaryWS;
+      int adjLBStart = primStart - adjWS;
+      int adjUBEnd = primEnd + adjWS;
+      int secLBStart = adjLBStart - secWS;
+      int secUBEnd = adjUBEnd + secWS;
+
+      int n = queryTerms.length;
+      float termScore = 0, bigramScore = 0;
+      covered.clear();
+      coveredBigrams.clear();
+      firstPrimary = -1;
+      lastPrimary = -1;
+
+      // the primary window is scored first, as it takes precedence
+      int prevQuery = -1;
+      for (int e = firstEntry(positions, start, end, primStart); e < end && positions[e] <= primEnd; e++) {
+        if (firstPrimary < 0) firstPrimary = e;
+        lastPrimary = e;
+        int q = segmentIds ? queryTerm(ids[e]) : ids[e];
+        if (q >= 0 && !covered.get(q)) {
+          termScore += termWeights[q];
+          covered.set(q);
+        }
+        if (q >= 0 && prevQuery >= 0) {
+          int b = bigramIds[prevQuery * n + q];
+          if (b >= 0 && !coveredBigrams.get(b)) {
+            bigramScore += bigramWeights[prevQuery * n + q];
+            coveredBigrams.set(b);
+          }
+        }
+        prevQuery = q;
+      }
+      if (firstPrimary < 0) {
+        return -1;
+      }
+      float adjScore = scoreRange(positions, ids, segmentIds, start, end, adjLBStart, primStart - 1)
+          + scoreRange(positions, ids, segmentIds, start, end, primEnd + 1, adjUBEnd);
+      float secondScore = scoreRange(positions, ids, segmentIds, start, end, secLBStart, adjLBStart - 1)
+          + scoreRange(positions, ids, segmentIds, start, end, adjUBEnd + 1, secUBEnd);
+      return termScore + (adjWeight * adjScore) + (secondAdjWeight * secondScore) + (biWeight * bigramScore);
+    }
+
+    private float scoreRange(int[] positions, int[] ids, boolean segmentIds,
+                             int start, int end, int from, int to) {
+      float score = 0;
+      for (int e = firstEntry(positions, start, end, from); e < end && positions[e] <= to; e++) {
+        int q = segmentIds ? queryTerm(ids[e]) : ids[e];
+        if (q >= 0 && !covered.get(q)) {
+          score += termWeights[q];
+          covered.set(q);
+        }
+      }
+      return score;
+    }
+  }
+
+  /** @return the first entry from <code>lo</code> up to <code>hi</code> at or after <code>position</code>. */
+  static int firstEntry(int[] positions, int lo, int hi, int position) {
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (positions[mid] < position) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Reads the part of a term vector that can affect the score of a span into
+   * position sorted arrays of query term numbers, for a {@link WindowScorer}.
+   * The arrays are kept between spans, so once they have grown to the
+   * largest window nothing is allocated per span. Not thread-safe.
+   */
+  public static class TermVectorWindow extends TermVectorMapper {
+    private final WindowScorer scorer;
+    int spanStart, spanEnd;
+    private int from, to;
+
+    int[] positions = new int[64];
+    /** The number of each entry's term in the query, or -1. */
+    int[] ids = new int[64];
+    String[] terms = new String[64];
+    int[] startOffsets = new int[64];
+    int[] endOffsets = new int[64];
+    int size;
+    private long[] keys = new long[64];
+    private int[] scratch = new int[64];
+    private String[] termScratch = new String[64];
+
+    public TermVectorWindow(WindowScorer scorer) {
+      this.scorer = scorer;
+    }
+
+    /** Prepare to read the windows of a new span. */
+    public void reset(int spanStart, int spanEnd) {
+      this.spanStart = spanStart;
+      this.spanEnd = spanEnd;
+      from = spanStart - scorer.reach();
+      to = spanEnd + scorer.reach();
+      size = 0;
+    }
+
+    @Override
+    public void setExpectations(String field, int numTerms, boolean storeOffsets, boolean storePositions) {
+    }
+
+    @Override
+    public void map(String term, int frequency, TermVectorOffsetInfo[] offsets, int[] positions) {
+      if (positions == null || positions.length == 0 || isTypeToken(term)) {
+        return;
+      }
+      int q = scorer.queryTerm(term);
+      for (int i = 0; i < positions.length; i++) {
+        if (positions[i] >= from && positions[i] <= to) {
+          if (size == this.positions.length) {
+            grow();
+          }
+          this.positions[size] = positions[i];
+          ids[size] = q;
+          terms[size] = term;
+          startOffsets[size] = offsets != null ? offsets[i].getStartOffset() : -1;
+          endOffsets[size] = offsets != null ? offsets[i].getEndOffset() : -1;
+          size++;
+        }
+      }
+    }
+
+    /**
+     * Sort the entries by position once the term vector has been read. Terms
+     * are mapped in term order, so entries at the same position stay in term
+     * order, as they are in a {@link Segment}.
+     */
+    public void sort() {
+      for (int i = 0; i < size; i++) {
+        keys[i] = ((long) positions[i] << 32) | i;
+      }
+      Arrays.sort(keys, 0, size);
+      for (int i = 0; i < size; i++) {
+        positions[i] = (int) (keys[i] >>> 32);
+      }
+      reorder(ids);
+      reorder(startOffsets);
+      reorder(endOffsets);
+      System.arraycopy(terms, 0, termScratch, 0, size);
+      for (int i = 0; i < size; i++) {
+        terms[i] = termScratch[(int) keys[i]];
+      }
+    }
+
+    private void reorder(int[] values) {
+      System.arraycopy(values, 0, scratch, 0, size);
+      for (int i = 0; i < size; i++) {
+        values[i] = scratch[(int) keys[i]];
+      }
+    }
+
+    private void grow() {
+      int length = positions.length * 2;
+      positions = Arrays.copyOf(positions, length);
+      ids = Arrays.copyOf(ids, length);
+      terms = Arrays.copyOf(terms, length);
+      startOffsets = Arrays.copyOf(startOffsets, length);
+      endOffsets = Arrays.copyOf(endOffsets, length);
+      keys = new long[length];
+      scratch = new int[length];
+      termScratch = new String[length];
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrEventListener;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the {@link PassageWindowIndex} of the new segments of each searcher
+ * before it is registered, so the {@link PassageRankingComponent} never
+ * builds windows while answering a question. Segments that the previous
+ * searcher shared with the new one are already built and are skipped.
+ * Configure it for both the first and new searcher events in solrconfig.xml:
+ * <pre>
+ * &lt;listener event="firstSearcher" class="com.tamingtext.qa.PassageWindowListener"&gt;
+ *   &lt;str name="fields"&gt;body&lt;/str&gt;
+ *   &lt;long name="maxBytes"&gt;268435456&lt;/long&gt;
+ * &lt;/listener&gt;
+ * &lt;listener event="newSearcher" class="com.tamingtext.qa.PassageWindowListener"&gt;
+ *   &lt;str name="fields"&gt;body&lt;/str&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ * <code>fields</code> is a comma separated list of the fields that questions
+ * are asked against. <code>maxBytes</code>, which is optional, sets
+ * {@link PassageWindowIndex#setMaxBytes}; segments that don't fit are ranked
+ * from their term vectors.
+ */
+public class PassageWindowListener implements SolrEventListener {
+
+  private transient static Logger log = LoggerFactory.getLogger(PassageWindowListener.class);
+
+  public static final String FIELDS_ARG = "fields";
+  public static final String MAX_BYTES_ARG = "maxBytes";
+
+  private final List<String> fields = new ArrayList<String>();
+
+  @Override
+  public void init(NamedList args) {
+    Object fieldsArg = args.get(FIELDS_ARG);
+    if (fieldsArg == null) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          PassageWindowListener.class.getSimpleName() + " requires the " + FIELDS_ARG + " to build windows for");
+    }
+    for (String field : fieldsArg.toString().split(",")) {
+      if (field.trim().length() > 0) {
+        fields.add(field.trim());
+      }
+    }
+    Object maxBytesArg = args.get(MAX_BYTES_ARG);
+    if (maxBytesArg != null) {
+      PassageWindowIndex.setMaxBytes(Long.parseLong(maxBytesArg.toString()));
+    }
+  }
+
+  @Override
+  public void postCommit() {
+  }
+
+  @Override
+  public void newSearcher(SolrIndexSearcher newSearcher, SolrIndexSearcher currentSearcher) {
+    try {
+      build(newSearcher.getIndexReader());
+    } catch (IOException e) {
+      // the searcher still works, ranking from term vectors
+      log.error("Couldn't build the passage windows of " + newSearcher, e);
+    }
+  }
+
+  /** Build the windows of every segment of <code>reader</code> that doesn't have them yet. */
+  void build(IndexReader reader) throws IOException {
+    long start = System.currentTimeMillis();
+    IndexReader[] segments = PassageWindowIndex.getSegments(reader);
+    for (IndexReader segment : segments) {
+      for (String field : fields) {
+        PassageWindowIndex.build(segment, field);
+      }
+    }
+    log.info("Built the passage windows of {} segments in {} ms, {} bytes in use",
+        new Object[]{segments.length, System.currentTimeMillis() - start, PassageWindowIndex.usedBytes()});
+  }
+}
@@ -47,5 +47,10 @@ public interface QAParams {
 
   public static final String SECOND_ADJ_WEIGHT = QA_PREFIX + "saw";
 
+  /**
+   * If true, score passages from the precomputed {@link PassageWindowIndex} rather than the term vectors
+   */
+  public static final String PRECOMPUTED_WINDOWS = QA_PREFIX + "precomputed";
+
   public static final String COMPONENT_NAME = "qa";
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import opennlp.model.MaxentModel;
+import opennlp.tools.chunker.ChunkerME;
+import opennlp.tools.chunker.ChunkerModel;
+import opennlp.tools.parser.Parser;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerME;
+
+import com.tamingtext.opennlp.ModelRegistry;
+import com.tamingtext.opennlp.PooledDoccatModel;
+
+/**
+ * A bounded pool of the objects needed to parse and classify a question.
+ * <p>
+ * The OpenNLP models are immutable and shared by every {@link Pipeline}, but
+ * {@link ChunkerME}, {@link POSTaggerME} and the probability buffer of the
+ * {@link AnswerTypeClassifier} are not thread-safe, so each pipeline wraps
+ * the models in its own. Pipelines are created on demand up to the pool
+ * size; after that, threads wait for one to be released. The time spent
+ * waiting is recorded so the pool can be sized.
+ * <p>
+ * The models come from the {@link ModelRegistry} and are not read until the
+ * first pipeline is created, when they are read in parallel.
+ */
+public class QuestionPipelinePool {
+
+  /** A parser and classifier for use by one thread at a time. */
+  public static class Pipeline {
+    private final Parser parser;
+    private final AnswerTypeClassifier classifier;
+
+    Pipeline(Parser parser, AnswerTypeClassifier classifier) {
+      this.parser = parser;
+      this.classifier = classifier;
+    }
+
+    public Parser getParser() {
+      return parser;
+    }
+
+    public AnswerTypeClassifier getClassifier() {
+      return classifier;
+    }
+  }
+
+  private final ModelRegistry.Handle<ChunkerModel> chunkerModel;
+  private final ModelRegistry.Handle<POSModel> posModel;
+  private final ModelRegistry.Handle<PooledDoccatModel> answerModel;
+  private final AnswerTypeContextGenerator atcg;
+  private final int maxSize;
+
+  private final BlockingQueue<Pipeline> idle;
+  private final AtomicInteger created = new AtomicInteger();
+  private final AtomicLong acquisitions = new AtomicLong();
+  private final AtomicLong waits = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  /**
+   * @param answerModel the answer type model, stored as the maxent model of a
+   *                    {@link PooledDoccatModel}
+   * @param atcg    the context generator, shared by all pipelines as it holds
+   *                no per-question state
+   * @param maxSize the most pipelines to create, typically the number of
+   *                cores
+   */
+  public QuestionPipelinePool(ModelRegistry.Handle<ChunkerModel> chunkerModel,
+                              ModelRegistry.Handle<POSModel> posModel,
+                              ModelRegistry.Handle<PooledDoccatModel> answerModel,
+                              AnswerTypeContextGenerator atcg, int maxSize) {
+    this.chunkerModel = chunkerModel;
+    this.posModel = posModel;
+    this.answerModel = answerModel;
+    this.atcg = atcg;
+    this.maxSize = maxSize;
+    this.idle = new ArrayBlockingQueue<Pipeline>(maxSize);
+  }
+
+  /**
+   * Take a pipeline from the pool, creating one or waiting for one to be released as needed.
+   *
+   * @throws IOException if the models could not be read
+   */
+  public Pipeline acquire() throws InterruptedException, IOException {
+    acquisitions.incrementAndGet();
+    Pipeline pipeline = idle.poll();
+    if (pipeline != null) {
+      return pipeline;
+    }
+    if (created.incrementAndGet() <= maxSize) {
+      boolean done = false;
+      try {
+        pipeline = newPipeline();
+        done = true;
+        return pipeline;
+      } finally {
+        if (!done) {
+          created.decrementAndGet();
+        }
+      }
+    }
+    created.decrementAndGet();
+    long start = System.nanoTime();
+    pipeline = idle.take();
+    long wait = System.nanoTime() - start;
+    waits.incrementAndGet();
+    totalWaitNanos.addAndGet(wait);
+    for (long max = maxWaitNanos.get(); wait > max; max = maxWaitNanos.get()) {
+      if (maxWaitNanos.compareAndSet(max, wait)) {
+        break;
+      }
+    }
+    return pipeline;
+  }
+
+  /** Return a pipeline taken with {@link #acquire()} to the pool. */
+  public void release(Pipeline pipeline) {
+    idle.offer(pipeline);
+  }
+
+  /** Create a pipeline on the shared models, reading them first if need be. */
+  protected Pipeline newPipeline() throws IOException {
+    ModelRegistry.load(chunkerModel, posModel, answerModel);
+    Parser parser = new ChunkParser(new ChunkerME(chunkerModel.get()), new POSTaggerME(posModel.get()));
+    MaxentModel model = answerModel.get().getChunkerModel();
+    AnswerTypeClassifier classifier = new AnswerTypeClassifier(model,
+        new double[model.getNumOutcomes()], atcg);
+    return new Pipeline(parser, classifier);
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** The number of pipelines created so far. */
+  public int getCreated() {
+    return Math.min(created.get(), maxSize);
+  }
+
+  public long getAcquisitions() {
+    return acquisitions.get();
+  }
+
+  /** The number of acquisitions that had to wait for a pipeline to be released. */
+  public long getWaits() {
+    return waits.get();
+  }
+
+  public long getTotalWaitNanos() {
+    return totalWaitNanos.get();
+  }
+
+  public long getMaxWaitNanos() {
+    return maxWaitNanos.get();
+  }
+}
@@ -22,6 +22,7 @@ package com.tamingtext.qa;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +45,7 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.QParser;
+import org.apache.solr.search.SolrCache;
 
 /**
  * The QuestionQParser takes in a natural language question and produces a Lucene {@link org.apache.lucene.search.spans.SpanNearQuery}
@@ -53,20 +55,117 @@ public class QuestionQParser extends QParser implements QAParams  {
 
   private Parser parser;
   private AnswerTypeClassifier atc;
+  private QuestionPipelinePool pipelines;
   private Map<String,String> atm;
+  private String cacheName;
 
   public QuestionQParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req,
                          Parser parser, AnswerTypeClassifier atc,
                          Map<String,String> answerTypeMap) {
+    this(qstr, localParams, params, req, parser, atc, answerTypeMap, null);
+  }
+
+  /**
+   * @param cacheName the name of the searcher's user cache of {@link ParsedQuestion}s, or null to parse every
+   *                  question.
+   */
+  public QuestionQParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req,
+                         Parser parser, AnswerTypeClassifier atc,
+                         Map<String,String> answerTypeMap, String cacheName) {
     super(qstr, localParams, params, req);
     this.parser = parser;
     this.atc = atc;
     this.atm = answerTypeMap;
+    this.cacheName = cacheName;
+  }
+
+  /**
+   * Take the parser and classifier from a pool, for the duration of {@link #parse()} only, rather than owning them.
+   *
+   * @param cacheName the name of the searcher's user cache of {@link ParsedQuestion}s, or null to parse every
+   *                  question.
+   */
+  public QuestionQParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req,
+                         QuestionPipelinePool pipelines,
+                         Map<String,String> answerTypeMap, String cacheName) {
+    super(qstr, localParams, params, req);
+    this.pipelines = pipelines;
+    this.atm = answerTypeMap;
+    this.cacheName = cacheName;
   }
 
   @Override
   public Query parse() throws ParseException {
+    String field = params.get(QUERY_FIELD);
+    SchemaField sp = req.getSchema().getFieldOrNull(field);
+    if (sp == null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,"Undefined field: "+field);
+    }
+    //repeated questions skip the parser and classifier altogether
+    @SuppressWarnings("unchecked")
+    SolrCache<String, ParsedQuestion> cache = cacheName != null ? req.getSearcher().getCache(cacheName) : null;
+    String key = cacheKey(field, qstr);
+    ParsedQuestion parsed = cache != null ? cache.get(key) : null;
+    if (parsed == null) {
+      if (pipelines == null) {
+        parsed = parseQuestion(field, sp, parser, atc);
+      } else {
+        QuestionPipelinePool.Pipeline pipeline;
+        try {
+          pipeline = pipelines.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Interrupted waiting for a question parser", e);
+        } catch (IOException e) {
+          throw new SolrException(ErrorCode.SERVER_ERROR, "Unable to load the question answering models", e);
+        }
+        try {
+          parsed = parseQuestion(field, sp, pipeline.getParser(), pipeline.getClassifier());
+        } finally {
+          pipelines.release(pipeline);
+        }
+      }
+      if (cache != null) {
+        cache.put(key, parsed);
+      }
+    }
+    List<SpanQuery> sql = new ArrayList<SpanQuery>();
+    for (String term : parsed.getTerms()) {
+      sql.add(new SpanTermQuery(new Term(field, term)));
+    }
+    return new SpanNearQuery(sql.toArray(new SpanQuery[sql.size()]), params.getInt(QAParams.SLOP, 10), true);//<co id="qqp.spanNear"/>
+  }
 
+  /** The key of the parsed question in the cache. */
+  static String cacheKey(String field, String question) {
+    return field + ':' + normalize(question);
+  }
+
+  /**
+   * Collapse runs of whitespace and trim the question, so trivially different copies of a question share a cache
+   * entry.  Case is left alone, as the tagger and chunker are sensitive to it.
+   */
+  static String normalize(String question) {
+    StringBuilder sb = new StringBuilder(question.length());
+    boolean space = false;
+    for (int i = 0; i < question.length(); i++) {
+      char c = question.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+      } else {
+        if (space) {
+          sb.append(' ');
+          space = false;
+        }
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Work out the answer type and the terms of the span query for the question. */
+  private ParsedQuestion parseQuestion(String field, SchemaField sp, Parser parser, AnswerTypeClassifier atc)
+      throws ParseException {
     //<start id="qqp.parse"/>
     Parse parse = ParserTool.parseLine(qstr, parser, 1)[0];//<co id="qqp.parseLine"/>
     /*
@@ -79,11 +178,6 @@ public class QuestionQParser extends QParser implements QAParams  {
     String type = atc.computeAnswerType(parse);
     String mt = atm.get(type);
     //<end id="qqp.answerType"/>
-    String field = params.get(QUERY_FIELD);
-    SchemaField sp = req.getSchema().getFieldOrNull(field);
-    if (sp == null) {
-      throw new SolrException(ErrorCode.SERVER_ERROR,"Undefined field: "+field);
-    }
     //<start id="qqp.query"/>
     List<SpanQuery> sql = new ArrayList<SpanQuery>();
     if (mt != null) {//<co id="qqp.handleAT"/>
@@ -108,7 +202,11 @@ public class QuestionQParser extends QParser implements QAParams  {
     } catch (IOException e) {
       throw new ParseException(e.getLocalizedMessage());
     }
-    return new SpanNearQuery(sql.toArray(new SpanQuery[sql.size()]), params.getInt(QAParams.SLOP, 10), true);//<co id="qqp.spanNear"/>
+    List<String> terms = new ArrayList<String>(sql.size());
+    for (SpanQuery clause : sql) {
+      terms.add(((SpanTermQuery) clause).getTerm().text());
+    }
+    return new ParsedQuestion(mt, terms);
     /*
     <calloutlist>
         <callout arearefs="qqp.handleAT"><para>Add the AnswerType to the query</para></callout>
@@ -119,4 +217,32 @@ public class QuestionQParser extends QParser implements QAParams  {
     //<end id="qqp.query"/>
   }
 
+  /**
+   * The result of parsing a question: its answer type and the terms of the span query, which depend only on the
+   * question, the field and its query analyzer.  Immutable, so it may be shared between requests.
+   */
+  public static class ParsedQuestion {
+    private final String answerType;
+    private final List<String> terms;
+
+    public ParsedQuestion(String answerType, List<String> terms) {
+      this.answerType = answerType;
+      this.terms = Collections.unmodifiableList(new ArrayList<String>(terms));
+    }
+
+    /** The answer types to look for, such as <code>NE_TIME|NE_DATE</code>, or null. */
+    public String getAnswerType() {
+      return answerType;
+    }
+
+    public List<String> getTerms() {
+      return terms;
+    }
+
+    @Override
+    public String toString() {
+      return answerType + terms;
+    }
+  }
+
 }
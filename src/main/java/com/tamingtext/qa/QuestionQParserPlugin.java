@@ -21,57 +21,85 @@ package com.tamingtext.qa;
 
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import opennlp.maxent.io.SuffixSensitiveGISModelReader;
-import opennlp.model.MaxentModel;
-import opennlp.tools.chunker.ChunkerME;
 import opennlp.tools.chunker.ChunkerModel;
-import opennlp.tools.doccat.DoccatModel;
-import opennlp.tools.parser.Parser;
 import opennlp.tools.postag.POSModel;
-import opennlp.tools.postag.POSTaggerME;
 
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrInfoMBean;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QParserPlugin;
 
+import com.tamingtext.opennlp.ModelRegistry;
+import com.tamingtext.opennlp.PooledDoccatModel;
+
 /**
- *
- *
+ * Creates {@link QuestionQParser}s.  The models come from the {@link ModelRegistry}, so they are shared with any
+ * other core that uses the same files and are not read until the first question, while the
+ * taggers, chunkers and classifiers that wrap them, which are not thread-safe, come from a
+ * {@link QuestionPipelinePool} so concurrent requests never share one.  The pool's statistics, including the time
+ * requests spent waiting for a pipeline, are reported on the Solr admin stats page.
  **/
-public class QuestionQParserPlugin extends QParserPlugin {
+public class QuestionQParserPlugin extends QParserPlugin implements SolrInfoMBean {
+
+  /**
+   * Init arg naming the user cache, declared in solrconfig.xml, that holds parsed questions.  Defaults to
+   * {@link #DEFAULT_QUESTION_CACHE}.  If the searcher has no such cache, every question is parsed.
+   */
+  public static final String QUESTION_CACHE_ARG = "questionCache";
+  public static final String DEFAULT_QUESTION_CACHE = "questionCache";
+
+  /**
+   * Init arg giving the most question parsing pipelines to create, and so the most questions parsed at once.
+   * Defaults to the number of processors.
+   */
+  public static final String POOL_SIZE_ARG = "poolSize";
+
+  /**
+   * Init arg giving a file for the snapshot of the WordNet hypernym table, which is read at startup if it exists and
+   * written otherwise.  See {@link HypernymTable}.
+   */
+  public static final String WORDNET_SNAPSHOT_ARG = "wordnetSnapshot";
+
+  private static final Map<String, String> answerTypeMap;
 
-  private Map<String, String> answerTypeMap;
-  protected MaxentModel model;
-  protected double[] probs;
+  static {
+    Map<String, String> map = new HashMap<String, String>();
+    map.put("L", "NE_LOCATION");
+    map.put("T", "NE_TIME|NE_DATE");
+    map.put("P", "NE_PERSON");
+    map.put("O", "NE_ORGANIZATION");
+    answerTypeMap = Collections.unmodifiableMap(map);
+  }
+
+  private String questionCache = DEFAULT_QUESTION_CACHE;
+  protected ModelRegistry.Handle<PooledDoccatModel> model;
   protected AnswerTypeContextGenerator atcg;
-  private POSTaggerME tagger;
-  private ChunkerME chunker;
+  private QuestionPipelinePool pipelines;
 
   //<start id="qqpp.create"/>
   @Override
   public QParser createParser(String qStr, SolrParams localParams, SolrParams params,
                               SolrQueryRequest req) {
-    answerTypeMap = new HashMap<String, String>();//<co id="qqpp.atm"/>
-    answerTypeMap.put("L", "NE_LOCATION");
-    answerTypeMap.put("T", "NE_TIME|NE_DATE");
-    answerTypeMap.put("P", "NE_PERSON");
-    answerTypeMap.put("O", "NE_ORGANIZATION");
     QParser qParser;
     if (params.getBool(QAParams.COMPONENT_NAME, false) == true //<co id="qqpp.explainif"/>
             && qStr.equals("*:*") == false) {
-      AnswerTypeClassifier atc =
-              new AnswerTypeClassifier(model, probs, atcg);//<co id="qqpp.atc"/>
-      Parser parser = new ChunkParser(chunker, tagger);//<co id="qqpp.parser"/>
+      if (pipelines == null) {
+        throw new SolrException(ErrorCode.SERVER_ERROR,
+                "No question answering models, set modelDirectory");
+      }
       qParser = new QuestionQParser(qStr, localParams, //<co id="qqpp.construct"/>
-              params, req, parser, atc, answerTypeMap);
+              params, req, pipelines, answerTypeMap, questionCache);
     } else {
       //just do a regular query if qa is turned off
       qParser = req.getCore().getQueryPlugin("edismax")
@@ -81,11 +109,8 @@ public class QuestionQParserPlugin extends QParserPlugin {
   }
   /*
   <calloutlist>
-      <callout arearefs="qqpp.atm"><para>Construct a map of the answer types that we are interested in handling, for instance locations, people and times and dates.</para></callout>
       <callout arearefs="qqpp.explainif"><para>We use this if clause to create an regular Solr query parser in the cases where the user hasn't entered a question or the enter the *:* query (<classname>MatchAllDocsQuery</classname>.</para></callout>
-      <callout arearefs="qqpp.atc"><para>The <classname>AnswerTypeClassifier</classname> uses the trained Answer Type model (located in the models directory) to classify the question.</para></callout>
-      <callout arearefs="qqpp.parser"><para>Construct the chunker (parser) that will be responsible for parsing the user question.</para></callout>
-      <callout arearefs="qqpp.construct"><para>Create the <classname>QuestionQParser</classname> by passing in the user's question as well as the pre-initialized resources from the init method.</para></callout>
+      <callout arearefs="qqpp.construct"><para>Create the <classname>QuestionQParser</classname> by passing in the user's question as well as the pool of parsers and <classname>AnswerTypeClassifier</classname>s set up in the init method.</para></callout>
   </calloutlist>
   */
   //<end id="qqpp.create"/>
@@ -97,23 +122,22 @@ public class QuestionQParserPlugin extends QParserPlugin {
             System.getProperty("model.dir"));//<co id="qqpp.model"/>
     String wordnetDirectory = params.get("wordnetDirectory",
             System.getProperty("wordnet.dir"));//<co id="qqpp.wordnet"/>
+    questionCache = params.get(QUESTION_CACHE_ARG, DEFAULT_QUESTION_CACHE);
+    int poolSize = params.getInt(POOL_SIZE_ARG, Runtime.getRuntime().availableProcessors());
+    String wordnetSnapshot = params.get(WORDNET_SNAPSHOT_ARG);
     if (modelDirectory != null) {
       File modelsDir = new File(modelDirectory);
       try {
-        InputStream chunkerStream = new FileInputStream(
-            new File(modelsDir,"en-chunker.bin"));
-        ChunkerModel chunkerModel = new ChunkerModel(chunkerStream);
-        chunker = new ChunkerME(chunkerModel); //<co id="qqpp.chunker"/>
-        InputStream posStream = new FileInputStream(
-            new File(modelsDir,"en-pos-maxent.bin"));
-        POSModel posModel = new POSModel(posStream);
-        tagger =  new POSTaggerME(posModel); //<co id="qqpp.tagger"/>
-        model = new DoccatModel(new FileInputStream( //<co id="qqpp.theModel"/>
-            new File(modelDirectory,"en-answer.bin")))
-            .getChunkerModel();
-        probs = new double[model.getNumOutcomes()];
-        atcg = new AnswerTypeContextGenerator(
-                new File(wordnetDirectory, "dict"));//<co id="qqpp.context"/>
+        ModelRegistry.Handle<ChunkerModel> chunkerModel = ModelRegistry.acquire(
+            new File(modelsDir,"en-chunker.bin"), ChunkerModel.class); //<co id="qqpp.chunker"/>
+        ModelRegistry.Handle<POSModel> posModel = ModelRegistry.acquire(
+            new File(modelsDir,"en-pos-maxent.bin"), POSModel.class); //<co id="qqpp.tagger"/>
+        model = ModelRegistry.acquire( //<co id="qqpp.theModel"/>
+            new File(modelDirectory,"en-answer.bin"), PooledDoccatModel.class);
+        atcg = new AnswerTypeContextGenerator(new File(wordnetDirectory, "dict"),
+                wordnetSnapshot != null ? new File(wordnetSnapshot) : null);//<co id="qqpp.context"/>
+        pipelines = new QuestionPipelinePool(chunkerModel, posModel,
+                model, atcg, poolSize);//<co id="qqpp.pool"/>
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -123,12 +147,61 @@ public class QuestionQParserPlugin extends QParserPlugin {
   <calloutlist>
       <callout arearefs="qqpp.model"><para>The model directory contains all of the OpenNLP models that we use throughout the book.</para></callout>
       <callout arearefs="qqpp.wordnet"><para>WordNet is a lexical resource used to assist in the Answer Type identification process.</para></callout>
-      <callout arearefs="qqpp.chunker"><para>The Treebank Chunker works with a Parser to do shallow parsing of questions</para></callout>
-      <callout arearefs="qqpp.tagger"><para>The tagger is responsible for Part of Speech Tagging</para></callout>
-      <callout arearefs="qqpp.theModel"><para>Create the actual model and save it for reuse, as it is thread safe, but the containing class is not.</para></callout>
+      <callout arearefs="qqpp.chunker"><para>The Treebank Chunker model works with a Parser to do shallow parsing of questions</para></callout>
+      <callout arearefs="qqpp.tagger"><para>The tagger model is responsible for Part of Speech Tagging</para></callout>
+      <callout arearefs="qqpp.theModel"><para>Register the actual model and save it for reuse, as it is thread safe, but the containing class is not. Like the other models, it is read in parallel with them when the first question arrives, and shared with any other core using the same file.</para></callout>
       <callout arearefs="qqpp.context"><para>Create the AnswerTypeContextGenerator, which is responsible for feature selection.</para></callout>
+      <callout arearefs="qqpp.pool"><para>The models are shared, but the chunker, tagger and classifier built on them are not thread safe, so each request borrows its own from a pool.</para></callout>
 
   </calloutlist>
   */
   //<end id="qqpp.init"/>
+
+  ///////////////////////////////////////////
+  ///  SolrInfoMBean
+  ///////////////////////////////////////////
+
+  public String getName() {
+    return QuestionQParserPlugin.class.getName();
+  }
+
+  public String getVersion() {
+    return "$Revision:$";
+  }
+
+  public String getDescription() {
+    return "Question Answering query parser";
+  }
+
+  public Category getCategory() {
+    return Category.QUERYHANDLER;
+  }
+
+  public String getSourceId() {
+    return "$Id:$";
+  }
+
+  public String getSource() {
+    return "$URL:$";
+  }
+
+  public URL[] getDocs() {
+    return null;
+  }
+
+  public NamedList getStatistics() {
+    NamedList<Object> lst = new SimpleOrderedMap<Object>();
+    if (pipelines != null) {
+      long acquisitions = pipelines.getAcquisitions();
+      long waitMs = pipelines.getTotalWaitNanos() / 1000000;
+      lst.add("poolSize", pipelines.getMaxSize());
+      lst.add("pipelines", pipelines.getCreated());
+      lst.add("acquisitions", acquisitions);
+      lst.add("waits", pipelines.getWaits());
+      lst.add("totalWaitMs", waitMs);
+      lst.add("avgWaitMs", acquisitions > 0 ? (double) waitMs / acquisitions : 0d);
+      lst.add("maxWaitMs", pipelines.getMaxWaitNanos() / 1000000);
+    }
+    return lst;
+  }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import java.io.IOException;
+
+/**
+ * Autowarms the term weight cache of the {@link PassageRankingComponent} by
+ * recomputing the weights of the most recently used terms of the old searcher
+ * against the new one, so frequent question terms are never looked up on the
+ * request thread after a commit. Configure it as the regenerator of the
+ * cache in solrconfig.xml:
+ * <pre>
+ * &lt;cache name="termWeightCache" class="solr.LRUCache" size="16384"
+ *   initialSize="1024" autowarmCount="4096"
+ *   regenerator="com.tamingtext.qa.TermWeightRegenerator"/&gt;
+ * </pre>
+ * Weights are recomputed as <code>1/docFreq</code>, the weight used by
+ * {@link PassageRankingComponent#calculateWeight}.
+ */
+public class TermWeightRegenerator implements CacheRegenerator {
+
+  @Override
+  public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+    @SuppressWarnings("unchecked")
+    SolrCache<Term, Float> cache = newCache;
+    regenerate(newSearcher.getIndexReader(), cache, (Term) oldKey);
+    return true;
+  }
+
+  /** Put the weight of the term in the reader into the cache. */
+  void regenerate(IndexReader reader, SolrCache<Term, Float> newCache, Term term) throws IOException {
+    int docFreq = reader.docFreq(term);
+    newCache.put(term, docFreq > 0 ? 1.0f / docFreq : 0f);
+  }
+}
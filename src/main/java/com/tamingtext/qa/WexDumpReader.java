@@ -0,0 +1,340 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the articles of an uncompressed WEX dump, one tab separated line of id, title, date, category XML and body
+ * each, by memory mapping the file and scanning its bytes for tabs and newlines.  Nothing is decoded or copied
+ * until asked for: the fields are {@link CharSequence} views of the mapped bytes, and fields that are plain ASCII,
+ * such as ids and dates, are never decoded at all.  Lines without exactly five fields are skipped, as
+ * {@link WexWikiContentSource} always has.
+ * <p>
+ * A reader may be limited to the lines that start within a byte range of the file, so that several readers, each
+ * on its own thread, can parse a dump in parallel; see {@link #split(File, int)}.  A reader is not thread-safe, and
+ * the views it returns are only valid until the next call to {@link #next()}.
+ */
+public class WexDumpReader implements Closeable {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final int FIELDS = 5;
+  private static final int ID = 0;
+  private static final int TITLE = 1;
+  private static final int DATE = 2;
+  private static final int CATEGORY = 3;
+  private static final int BODY = 4;
+  private static final int MAX_WINDOW = 1 << 30;
+
+  private static final byte[] CATEGORY_PREFIX = bytes("target>Category:");
+  private static final byte[] CATEGORY_SUFFIX = bytes("</target>");
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long length;
+  private final long end;
+  private final int maxWindow;
+
+  /** The mapped part of the file, which starts at windowStart. */
+  private ByteBuffer window;
+  private long windowStart;
+  /** The file position of the next line. */
+  private long pos;
+  private long lineStart;
+
+  private final Slice[] fields = new Slice[FIELDS];
+  private final int[] fieldStarts = new int[FIELDS];
+  private final int[] fieldEnds = new int[FIELDS];
+  private final List<CharSequence> categories = new ArrayList<CharSequence>();
+
+  /** Read the whole file. */
+  public WexDumpReader(File file) throws IOException {
+    this(file, 0, Long.MAX_VALUE);
+  }
+
+  /** Read the lines that start at a position from <code>start</code>, inclusive, to <code>end</code>, exclusive. */
+  public WexDumpReader(File file, long start, long end) throws IOException {
+    this(file, start, end, MAX_WINDOW);
+  }
+
+  /** @param maxWindow the most bytes mapped at a time, and so the longest line allowed */
+  WexDumpReader(File file, long start, long end, int maxWindow) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    this.length = channel.size();
+    this.end = Math.min(end, length);
+    this.maxWindow = maxWindow;
+    for (int i = 0; i < FIELDS; i++) {
+      fields[i] = new Slice();
+    }
+    if (start <= 0) {
+      map(0);
+    } else {
+      // a line that starts before the range belongs to the previous one
+      lineStart = Math.min(start, length) - 1;
+      map(lineStart);
+      pos = findNewline(lineStart) + 1;
+    }
+  }
+
+  /**
+   * Split a file into byte ranges of about the same size for parallel readers.  The ranges need not fall on line
+   * boundaries: each line is read by the reader whose range it starts in.
+   *
+   * @return the <code>n + 1</code> boundaries, so range <code>i</code> is from element <code>i</code> to element
+   *         <code>i + 1</code>
+   */
+  public static long[] split(File file, int n) {
+    long length = file.length();
+    long[] bounds = new long[n + 1];
+    for (int i = 0; i <= n; i++) {
+      bounds[i] = length / n * i + Math.min(i, length % n);
+    }
+    return bounds;
+  }
+
+  /**
+   * Move to the next article.
+   *
+   * @return false when there are no more articles in the range
+   */
+  public boolean next() throws IOException {
+    while (pos < end) {
+      lineStart = pos;
+      long newline = findNewline(lineStart);
+      pos = newline + 1;
+      int from = (int) (lineStart - windowStart);
+      int to = (int) (newline - windowStart);
+      if (to > from && window.get(to - 1) == '\r') {
+        to--;
+      }
+      if (split(from, to)) {
+        for (int i = 0; i < FIELDS; i++) {
+          fields[i].set(window, fieldStarts[i], fieldEnds[i]);
+        }
+        categories.clear();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find the field boundaries of the line, which must have exactly five fields once trailing tabs are ignored, as
+   * with {@link String#split(String)}.
+   */
+  private boolean split(int from, int to) {
+    while (to > from && window.get(to - 1) == '\t') {
+      to--;
+    }
+    int field = 0;
+    fieldStarts[0] = from;
+    for (int i = from; i < to; i++) {
+      if (window.get(i) == '\t') {
+        if (field == FIELDS - 1) {
+          return false;
+        }
+        fieldEnds[field++] = i;
+        fieldStarts[field] = i + 1;
+      }
+    }
+    fieldEnds[field] = to;
+    return field == FIELDS - 1;
+  }
+
+  /** The position of the first newline at or after the position, or the length of the file. */
+  private long findNewline(long from) throws IOException {
+    while (true) {
+      int limit = window.limit();
+      for (int i = (int) (from - windowStart); i < limit; i++) {
+        if (window.get(i) == '\n') {
+          return windowStart + i;
+        }
+      }
+      long windowEnd = windowStart + limit;
+      if (windowEnd >= length) {
+        return length;
+      }
+      if (windowStart == lineStart) {
+        throw new IOException("Line longer than " + maxWindow + " bytes at " + lineStart);
+      }
+      // map again from the start of the line, so the whole line is in one window
+      map(lineStart);
+      from = windowEnd;
+    }
+  }
+
+  private void map(long start) throws IOException {
+    windowStart = start;
+    window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(maxWindow, length - start));
+  }
+
+  /** The byte offset of the current article in the file. */
+  public long getOffset() {
+    return lineStart;
+  }
+
+  public CharSequence getId() {
+    return fields[ID];
+  }
+
+  /** The id, parsed straight from the bytes. */
+  public int getIdAsInt() {
+    Slice id = fields[ID];
+    if (id.start == id.end) {
+      throw new NumberFormatException("Empty id at " + lineStart);
+    }
+    int value = 0;
+    for (int i = id.start; i < id.end; i++) {
+      int digit = window.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return Integer.parseInt(id.toString());
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  public CharSequence getTitle() {
+    return fields[TITLE];
+  }
+
+  public CharSequence getDate() {
+    return fields[DATE];
+  }
+
+  /** The category XML, from which {@link #getCategories()} extracts the names. */
+  public CharSequence getCategoryXml() {
+    return fields[CATEGORY];
+  }
+
+  public CharSequence getBody() {
+    return fields[BODY];
+  }
+
+  /** The names of the article's categories, the text of each <code>target</code> element that starts Category:. */
+  public List<CharSequence> getCategories() {
+    if (categories.isEmpty()) {
+      Slice xml = fields[CATEGORY];
+      int from = xml.start;
+      while (true) {
+        int start = indexOf(CATEGORY_PREFIX, from, xml.end);
+        if (start < 0) break;
+        start += CATEGORY_PREFIX.length;
+        int stop = indexOf(CATEGORY_SUFFIX, start, xml.end);
+        if (stop < 0) break;
+        Slice name = new Slice();
+        name.set(window, start, stop);
+        categories.add(name);
+        from = stop + CATEGORY_SUFFIX.length;
+      }
+    }
+    return categories;
+  }
+
+  private int indexOf(byte[] target, int from, int to) {
+    byte first = target[0];
+    for (int i = from, last = to - target.length; i <= last; i++) {
+      if (window.get(i) == first) {
+        int j = 1;
+        while (j < target.length && window.get(i + j) == target[j]) {
+          j++;
+        }
+        if (j == target.length) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  public void close() throws IOException {
+    window = null;
+    file.close();
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(UTF8);
+  }
+
+  /**
+   * A view of UTF-8 bytes as characters.  ASCII is read straight from the bytes; anything else is decoded, once,
+   * the first time it is needed.
+   */
+  static class Slice implements CharSequence {
+    private ByteBuffer bytes;
+    private int start;
+    private int end;
+    private boolean ascii;
+    private String decoded;
+
+    void set(ByteBuffer bytes, int start, int end) {
+      this.bytes = bytes;
+      this.start = start;
+      this.end = end;
+      this.decoded = null;
+      ascii = true;
+      for (int i = start; i < end; i++) {
+        if (bytes.get(i) < 0) {
+          ascii = false;
+          break;
+        }
+      }
+    }
+
+    public int length() {
+      return ascii ? end - start : toString().length();
+    }
+
+    public char charAt(int index) {
+      return ascii ? (char) bytes.get(start + index) : toString().charAt(index);
+    }
+
+    public CharSequence subSequence(int from, int to) {
+      if (!ascii) {
+        return toString().subSequence(from, to);
+      }
+      Slice slice = new Slice();
+      slice.bytes = bytes;
+      slice.start = start + from;
+      slice.end = start + to;
+      slice.ascii = true;
+      return slice;
+    }
+
+    @Override
+    public String toString() {
+      if (decoded == null) {
+        ByteBuffer view = bytes.duplicate();
+        view.limit(end).position(start);
+        decoded = UTF8.decode(view).toString();
+      }
+      return decoded;
+    }
+  }
+}
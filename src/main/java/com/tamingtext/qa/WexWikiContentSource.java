@@ -34,6 +34,11 @@ import org.apache.lucene.benchmark.byTask.feeds.NoMoreDataException;
 import org.apache.lucene.benchmark.byTask.utils.Config;
 import org.apache.lucene.benchmark.byTask.utils.StreamUtils;
 
+/**
+ * Reads the articles of a WEX dump.  Uncompressed dumps are memory mapped and parsed by a {@link WexDumpReader},
+ * optionally only the byte range from <code>docs.file.start</code> to <code>docs.file.end</code> so several sources
+ * can parse one dump in parallel; compressed dumps are read line by line.
+ */
 public class WexWikiContentSource extends ContentSource {
   
   private static final Map<String,Integer> ELEMENTS = new HashMap<String,Integer>();
@@ -101,11 +106,30 @@ public class WexWikiContentSource extends ContentSource {
   }
   
   private File file;
+  private long rangeStart = 0;
+  private long rangeEnd = Long.MAX_VALUE;
   Parser parser = new Parser();
+  private WexDumpReader dumpReader;
+  private final StringBuilder categories = new StringBuilder();
   
   public void resetInputs() throws IOException {
     super.resetInputs();
-    ir = getReader(file);
+    close();
+    open();
+  }
+
+  private void open() throws IOException {
+    if (isMappable(file)) {
+      dumpReader = new WexDumpReader(file, rangeStart, rangeEnd);
+    } else {
+      ir = getReader(file);
+    }
+  }
+
+  /** Whether the file can be parsed in place, which it can't if it is compressed. */
+  static boolean isMappable(File file) {
+    String name = file.getName().toLowerCase();
+    return !(name.endsWith(".gz") || name.endsWith(".bz2") || name.endsWith(".bzip2"));
   }
   
   public BufferedReader getReader(File file) throws IOException {
@@ -115,6 +139,10 @@ public class WexWikiContentSource extends ContentSource {
   
   @Override
   public void close() throws IOException {
+    if (dumpReader != null) {
+      dumpReader.close();
+      dumpReader = null;
+    }
     if (ir != null) {
       ir.close();
       ir = null;
@@ -126,8 +154,11 @@ public class WexWikiContentSource extends ContentSource {
   @Override
   public DocData getNextDocData(DocData docData) throws NoMoreDataException,
       IOException {
-    if (ir == null) {
-      ir = getReader(file);
+    if (ir == null && dumpReader == null) {
+      open();
+    }
+    if (dumpReader != null) {
+      return getNextMappedDocData(docData);
     }
     
     String[] tuple = parser.next();
@@ -145,6 +176,25 @@ public class WexWikiContentSource extends ContentSource {
     return docData;
   }
   
+  private DocData getNextMappedDocData(DocData docData) throws IOException {
+    if (!dumpReader.next()) return null;
+
+    docData.clear();
+    docData.setID(dumpReader.getIdAsInt());
+    docData.setTitle(dumpReader.getTitle().toString());
+    docData.setBody(dumpReader.getBody().toString());
+    docData.setDate(dumpReader.getDate().toString());
+
+    categories.setLength(0);
+    for (CharSequence category : dumpReader.getCategories()) {
+      categories.append(category).append(";;");
+    }
+    props.setProperty("category", categories.toString());
+    docData.setProps(props);
+
+    return docData;
+  }
+
   @Override
   public void setConfig(Config config) {
     super.setConfig(config);
@@ -153,5 +203,7 @@ public class WexWikiContentSource extends ContentSource {
       throw new IllegalArgumentException("docs.file must be set");
     }
     file = new File(fileName).getAbsoluteFile();
+    rangeStart = Long.parseLong(config.get("docs.file.start", "0"));
+    rangeEnd = Long.parseLong(config.get("docs.file.end", String.valueOf(Long.MAX_VALUE)));
   }
 }
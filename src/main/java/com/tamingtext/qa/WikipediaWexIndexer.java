@@ -20,11 +20,30 @@
 package com.tamingtext.qa;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.cli2.CommandLine;
 import org.apache.commons.cli2.Group;
@@ -49,6 +68,12 @@ public class WikipediaWexIndexer {
   
   private SolrServer server;
   public static final String DEFAULT_SOLR_URL = "http://localhost:8983/solr";
+
+  private int numWorkers = Runtime.getRuntime().availableProcessors();
+  private int numSenders = 4;
+  private int queueSize = 1000;
+  private File checkpointFile;
+  private long reportIntervalMs = 30000;
   
   public WikipediaWexIndexer() throws MalformedURLException {
     this.server = new CommonsHttpSolrServer(DEFAULT_SOLR_URL);
@@ -62,6 +87,15 @@ public class WikipediaWexIndexer {
     return index(wikipediaWEX, Integer.MAX_VALUE, 1000);
   }
   
+  /**
+   * Index up to <code>numDocs</code> articles of a WEX dump.  A reader thread parses the dump into a bounded queue,
+   * a pool of workers turns the articles into {@link SolrInputDocument}s and several senders add them to Solr in
+   * batches of <code>batchSize</code>, each over its own connection.  The bounded queues keep the reader from running
+   * ahead of Solr.  Progress is logged periodically and, if a checkpoint file is set, committed and saved there so
+   * that a later run resumes after the articles already committed.
+   *
+   * @return the number of articles indexed by this call
+   */
   public int index(File wikipediaWEX, int numDocs, int batchSize)
       throws Exception {
     int result = 0;
@@ -74,61 +108,356 @@ public class WikipediaWexIndexer {
       properties.setProperty("doc.maker.forever", "false");
       contentSource.setConfig(new Config(properties));
       contentSource.resetInputs();
-      // docMaker.openFile();
-      List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(1000);
-      int i = 0;
-      SolrInputDocument sDoc = null;
+      long offset = readCheckpoint(filePath);
+      if (offset > 0) {
+        log.info("Resuming " + filePath + " after " + offset + " docs");
+      }
       long start = System.currentTimeMillis();
       try {
-        DocData docData = new DocData();
-        
-        while ((docData = contentSource.getNextDocData(docData)) != null
-            && i < numDocs) {
-          int mod = i % batchSize;
-          
-          sDoc = new SolrInputDocument();
-          docs.add(sDoc);
-          sDoc.addField("file", filePath + "_" + i);
-          
-          sDoc.addField("docid", String.valueOf(docData.getID()));
-          sDoc.addField("body", docData.getBody());
-          sDoc.addField("doctitle", docData.getTitle());
-          sDoc.addField("name_s", docData.getName());
-          
-          String[] categories = docData.getProps().getProperty("category")
-              .split(";;");
-          
-          for (String c : categories) {
-            sDoc.addField("category", c);
-          }
-          
-          if (mod == batchSize - 1) {
-            log.info("Sending: " + docs.size() + " docs"
-                + " total sent for this file: " + i);
-            server.add(docs);
-            docs.clear();
-          }
-          i++;
-        }
-      } catch (NoMoreDataException e) {
-
+        result = new IndexRun(contentSource, filePath, offset, numDocs, batchSize).run();
+      } finally {
+        contentSource.close();
       }
       long finish = System.currentTimeMillis();
       if (log.isInfoEnabled()) {
         log.info("Indexing took " + (finish - start) + " ms");
       }
-      if (docs.size() > 0) {
-        server.add(docs);
-      }
-      result = i + docs.size();
-      server.commit();
       server.optimize();
     } else {
       System.out.println("Can't find file: " + wikipediaWEX);
     }
     return result;
   }
-  
+
+  /** The number of threads building documents.  Defaults to the number of processors. */
+  public void setNumWorkers(int numWorkers) {
+    this.numWorkers = numWorkers;
+  }
+
+  /** The number of threads sending documents to Solr, each with its own update request in flight. */
+  public void setNumSenders(int numSenders) {
+    this.numSenders = numSenders;
+  }
+
+  /** The most articles, and the most documents, waiting between the stages of the pipeline. */
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * A properties file recording, for each dump file, the number of articles from its start that have all been
+   * sent to Solr and committed.  Indexing a file skips that many articles.  The checkpoint is only saved after a
+   * commit, every report interval and at the end of the run, as Solr loses documents added since the last commit
+   * if it is restarted.  Articles sent after the last checkpoint are sent again on resume, which is harmless as they
+   * replace themselves by docid.
+   */
+  public void setCheckpointFile(File checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+
+  /** How often to log progress and, if there is a checkpoint file, commit and save the checkpoint. */
+  public void setReportIntervalMs(long reportIntervalMs) {
+    this.reportIntervalMs = reportIntervalMs;
+  }
+
+  private long readCheckpoint(String filePath) throws IOException {
+    if (checkpointFile == null || !checkpointFile.exists()) {
+      return 0;
+    }
+    Properties checkpoints = loadCheckpoints();
+    return Long.parseLong(checkpoints.getProperty(filePath, "0"));
+  }
+
+  private Properties loadCheckpoints() throws IOException {
+    Properties checkpoints = new Properties();
+    if (checkpointFile.exists()) {
+      InputStream in = new FileInputStream(checkpointFile);
+      try {
+        checkpoints.load(in);
+      } finally {
+        in.close();
+      }
+    }
+    return checkpoints;
+  }
+
+  private synchronized void writeCheckpoint(String filePath, long offset) throws IOException {
+    if (checkpointFile == null) {
+      return;
+    }
+    Properties checkpoints = loadCheckpoints();
+    checkpoints.setProperty(filePath, String.valueOf(offset));
+    File tmp = new File(checkpointFile.getPath() + ".tmp");
+    OutputStream out = new FileOutputStream(tmp);
+    try {
+      checkpoints.store(out, "WEX articles sent to Solr, by dump file");
+    } finally {
+      out.close();
+    }
+    if (!tmp.renameTo(checkpointFile)) {
+      checkpointFile.delete();
+      if (!tmp.renameTo(checkpointFile)) {
+        throw new IOException("Unable to write checkpoint " + checkpointFile);
+      }
+    }
+  }
+
+  /** An article, copied out of the reused {@link DocData}, and then its document. */
+  private static class Article {
+    long ordinal;
+    int id;
+    String title;
+    String body;
+    String name;
+    String categories;
+    SolrInputDocument doc;
+  }
+
+  /** Marks the end of a queue. */
+  private static final Article END = new Article();
+
+  /**
+   * Tracks which articles have been sent, which may happen out of order, to find how many from the start of the
+   * file have all been sent.
+   */
+  private static class Watermark {
+    private long base;
+    private BitSet sent = new BitSet();
+
+    Watermark(long base) {
+      this.base = base;
+    }
+
+    synchronized void sent(long ordinal) {
+      sent.set((int) (ordinal - base));
+    }
+
+    /** The number of articles from the start of the file that have all been sent. */
+    synchronized long get() {
+      int n = sent.nextClearBit(0);
+      if (n > 65536) {
+        sent = sent.get(n, Math.max(n, sent.length()));
+        base += n;
+        n = 0;
+      }
+      return base + n;
+    }
+  }
+
+  /** One call to {@link #index(File, int, int)}: the threads, queues and counters of the pipeline. */
+  private class IndexRun {
+    private final WexWikiContentSource contentSource;
+    private final String filePath;
+    private final long offset;
+    private final int numDocs;
+    private final int batchSize;
+
+    private final BlockingQueue<Article> articles = new ArrayBlockingQueue<Article>(queueSize);
+    private final BlockingQueue<Article> docs = new ArrayBlockingQueue<Article>(queueSize);
+    private final AtomicInteger liveWorkers = new AtomicInteger(numWorkers);
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong built = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final Watermark watermark;
+    /** The articles from the start of the file covered by the last commit, as saved in the checkpoint. */
+    private long committed;
+    /** Set once the run is over, so a thread marking the end of a queue nobody drains gives up. */
+    private volatile boolean stopped;
+
+    IndexRun(WexWikiContentSource contentSource, String filePath, long offset, int numDocs, int batchSize) {
+      this.contentSource = contentSource;
+      this.filePath = filePath;
+      this.offset = offset;
+      this.numDocs = numDocs;
+      this.batchSize = batchSize;
+      this.watermark = new Watermark(offset);
+      this.committed = offset;
+    }
+
+    int run() throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(1 + numWorkers + numSenders, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "wexIndexer-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      CompletionService<Object> tasks = new ExecutorCompletionService<Object>(executor);
+      boolean finished = false;
+      try {
+        tasks.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            read();
+            return null;
+          }
+        });
+        for (int i = 0; i < numWorkers; i++) {
+          tasks.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+              build();
+              return null;
+            }
+          });
+        }
+        for (int i = 0; i < numSenders; i++) {
+          tasks.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+              send();
+              return null;
+            }
+          });
+        }
+        long start = System.currentTimeMillis();
+        long lastReport = start;
+        // take the tasks as they finish, so a failure anywhere stops the pipeline rather than leaving it blocked
+        for (int running = 1 + numWorkers + numSenders; running > 0; ) {
+          Future<Object> task = tasks.poll(reportIntervalMs, TimeUnit.MILLISECONDS);
+          if (task != null) {
+            task.get();
+            running--;
+          }
+          if (System.currentTimeMillis() - lastReport >= reportIntervalMs) {
+            if (checkpointFile != null) {
+              checkpoint();
+            }
+            report(start);
+            lastReport = System.currentTimeMillis();
+          }
+        }
+        checkpoint();
+        report(start);
+        finished = true;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+      } finally {
+        stopped = true;
+        executor.shutdownNow();
+        if (!finished) {
+          // keep what was sent before the failure, if Solr will still commit it, without hiding the failure
+          try {
+            checkpoint();
+          } catch (Exception e) {
+            log.warn("Unable to commit and save the checkpoint of " + filePath + " after indexing failed", e);
+          }
+        }
+      }
+      return (int) sent.get();
+    }
+
+    /**
+     * Commit and then save the checkpoint.  The position is taken before the commit, so every article it covers had
+     * already been added and is part of the commit.
+     */
+    private void checkpoint() throws Exception {
+      long position = watermark.get();
+      server.commit();
+      writeCheckpoint(filePath, position);
+      committed = position;
+    }
+
+    /** Log progress. */
+    private void report(long start) {
+      long elapsed = Math.max(1, System.currentTimeMillis() - start);
+      long numSent = sent.get();
+      log.info("Read " + read.get() + ", built " + built.get() + ", sent " + numSent + " docs, "
+          + (numSent * 1000 / elapsed) + " docs/sec; " + (read.get() - numSent) + " docs in flight ("
+          + articles.size() + " to build, " + docs.size() + " to send); checkpoint " + committed);
+    }
+
+    private void read() throws Exception {
+      try {
+        DocData docData = new DocData();
+        long ordinal = 0;
+        while (read.get() < numDocs && (docData = contentSource.getNextDocData(docData)) != null) {
+          if (ordinal >= offset) {
+            Article article = new Article();
+            article.ordinal = ordinal;
+            article.id = docData.getID();
+            article.title = docData.getTitle();
+            article.body = docData.getBody();
+            article.name = docData.getName();
+            article.categories = docData.getProps().getProperty("category");
+            articles.put(article);
+            read.incrementAndGet();
+          }
+          ordinal++;
+        }
+      } catch (NoMoreDataException e) {
+
+      } finally {
+        end(articles, numWorkers);
+      }
+    }
+
+    private void build() throws InterruptedException {
+      try {
+        for (Article article = articles.take(); article != END; article = articles.take()) {
+          SolrInputDocument sDoc = new SolrInputDocument();
+          sDoc.addField("file", filePath + "_" + article.ordinal);
+
+          sDoc.addField("docid", String.valueOf(article.id));
+          sDoc.addField("body", article.body);
+          sDoc.addField("doctitle", article.title);
+          sDoc.addField("name_s", article.name);
+
+          String[] categories = article.categories.split(";;");
+
+          for (String c : categories) {
+            sDoc.addField("category", c);
+          }
+          article.doc = sDoc;
+          article.body = null;
+          docs.put(article);
+          built.incrementAndGet();
+        }
+      } finally {
+        if (liveWorkers.decrementAndGet() == 0) {
+          end(docs, numSenders);
+        }
+      }
+    }
+
+    /**
+     * Tell the <code>count</code> threads taking from the queue that there is no more to come.  If the run has
+     * stopped after a failure they may be gone, leaving the queue full, so don't wait for room then.
+     */
+    private void end(BlockingQueue<Article> queue, int count) throws InterruptedException {
+      for (int i = 0; i < count; i++) {
+        while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+          if (stopped) {
+            return;
+          }
+        }
+      }
+    }
+
+    private void send() throws Exception {
+      List<Article> batch = new ArrayList<Article>(batchSize);
+      List<SolrInputDocument> sDocs = new ArrayList<SolrInputDocument>(batchSize);
+      for (Article article = docs.take(); ; article = docs.take()) {
+        if (article != END) {
+          batch.add(article);
+          sDocs.add(article.doc);
+        }
+        if (batch.size() == batchSize || (article == END && batch.size() > 0)) {
+          server.add(sDocs);
+          for (Article a : batch) {
+            watermark.sent(a.ordinal);
+          }
+          sent.addAndGet(batch.size());
+          batch.clear();
+          sDocs.clear();
+        }
+        if (article == END) {
+          return;
+        }
+      }
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     DefaultOptionBuilder obuilder = new DefaultOptionBuilder();
     ArgumentBuilder abuilder = new ArgumentBuilder();
@@ -170,11 +499,36 @@ public class WikipediaWexIndexer {
         .withDescription("The number of docs to include in each indexing batch")
         .withShortName("b").create();
     
+    Option workersOpt = obuilder
+        .withLongName("workers")
+        .withRequired(false)
+        .withArgument(
+            abuilder.withName("workers").withMinimum(1).withMaximum(1).create())
+        .withDescription("The number of threads building documents, by default the number of processors")
+        .withShortName("t").create();
+
+    Option sendersOpt = obuilder
+        .withLongName("senders")
+        .withRequired(false)
+        .withArgument(
+            abuilder.withName("senders").withMinimum(1).withMaximum(1).create())
+        .withDescription("The number of concurrent update requests to Solr")
+        .withShortName("u").create();
+
+    Option checkpointOpt = obuilder
+        .withLongName("checkpoint")
+        .withRequired(false)
+        .withArgument(
+            abuilder.withName("checkpoint").withMinimum(1).withMaximum(1).create())
+        .withDescription("A file recording progress, so an interrupted run resumes where it left off")
+        .withShortName("c").create();
+
     Option helpOpt = obuilder.withLongName("help").withDescription(
         "Print out help").withShortName("h").create();
     
     Group group = gbuilder.withName("Options").withOption(wikipediaFileOpt)
         .withOption(numDocsOpt).withOption(solrURLOpt).withOption(solrBatchOpt)
+        .withOption(workersOpt).withOption(sendersOpt).withOption(checkpointOpt)
         .withOption(helpOpt).create();
     
     Parser parser = new Parser();
@@ -215,6 +569,15 @@ public class WikipediaWexIndexer {
       }
       WikipediaWexIndexer indexer = new WikipediaWexIndexer(
           new CommonsHttpSolrServer(url));
+      if (cmdLine.hasOption(workersOpt)) {
+        indexer.setNumWorkers(Integer.parseInt(cmdLine.getValue(workersOpt).toString()));
+      }
+      if (cmdLine.hasOption(sendersOpt)) {
+        indexer.setNumSenders(Integer.parseInt(cmdLine.getValue(sendersOpt).toString()));
+      }
+      if (cmdLine.hasOption(checkpointOpt)) {
+        indexer.setCheckpointFile(new File(cmdLine.getValue(checkpointOpt).toString()));
+      }
       int total = 0;
       for (int i = 0; i < dumpFiles.length && total < numDocs; i++) {
         File dumpFile = dumpFiles[i];
@@ -20,8 +20,16 @@
 package com.tamingtext.texttamer.solr;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import opennlp.tools.namefind.NameFinderME;
 import opennlp.tools.tokenize.SimpleTokenizer;
@@ -36,6 +44,8 @@ import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.util.AttributeSource;
 
+import com.tamingtext.util.NameFinderFactory;
+
 public final class NameFilter extends TokenFilter {
 
   public static final String NE_PREFIX = "NE_";
@@ -44,6 +54,7 @@ public final class NameFilter extends TokenFilter {
   private final String[] tokenTypeNames;
 
   private final NameFinderME[] finders;
+  private final ExecutorService executor;
   private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
   private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
   private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
@@ -56,16 +67,29 @@ public final class NameFilter extends TokenFilter {
   private String[] tokens;
   private Span[][] foundNames;
 
-  private boolean[][] tokenTypes;
+  /** Bit <code>token * finders.length + finder</code> is set if the finder found the token in a name. */
+  private final BitSet tokenTypes = new BitSet();
 
   private int spanOffset     = 0;
   private final Queue<AttributeSource.State> tokenQueue =
     new LinkedList<AttributeSource.State>();
 
   public NameFilter(TokenStream in,String[] modelNames, NameFinderME[] finders) {
+    this(in, modelNames, finders, null);
+  }
+
+  /**
+   * @param executor
+   *   runs the finders on each sentence concurrently, one task per finder, or
+   *   null to run them one after another.  Either way the tokens come out in
+   *   the same order.
+   */
+  public NameFilter(TokenStream in,String[] modelNames, NameFinderME[] finders,
+      ExecutorService executor) {
     super(in);
     this.tokenizer = SimpleTokenizer.INSTANCE;
     this.finders = finders;
+    this.executor = executor;
     this.tokenTypeNames = new String[modelNames.length];
     for (int i=0; i < modelNames.length; i++) {
       tokenTypeNames[i] = NE_PREFIX + modelNames[i];
@@ -85,14 +109,9 @@ public final class NameFilter extends TokenFilter {
     
     spans = tokenizer.tokenizePos(text);
     tokens = Span.spansToStrings(spans, text);
-    foundNames = new Span[finders.length][];
-    for (int i = 0; i < finders.length; i++) {
-      foundNames[i] = finders[i].find(tokens);
-    }
+    foundNames = findNames(tokens);
 
-    //TODO: make this a bitset that is tokens.length * finders.length 
-    // in size.
-    tokenTypes = new boolean[tokens.length][finders.length];
+    tokenTypes.clear();
     
     for (int i = 0; i < finders.length; i++) {
       Span[] spans = foundNames[i];
@@ -100,7 +119,7 @@ public final class NameFilter extends TokenFilter {
         int start = spans[j].getStart();
         int end   = spans[j].getEnd();
         for (int k = start; k < end; k++) {
-          tokenTypes[k][i] = true;
+          tokenTypes.set(k * finders.length + i);
         }
       }
     }
@@ -110,6 +129,47 @@ public final class NameFilter extends TokenFilter {
     return true;
   }
 
+  /** Run each finder over the tokens, concurrently if there is an executor.
+   * @return the names found by each finder, in the order of the finders.
+   */
+  private Span[][] findNames(final String[] tokens) throws IOException {
+    Span[][] names = new Span[finders.length][];
+    if (executor == null || finders.length < 2) {
+      for (int i = 0; i < finders.length; i++) {
+        names[i] = finders[i].find(tokens);
+      }
+      return names;
+    }
+    
+    List<Future<Span[]>> futures = new ArrayList<Future<Span[]>>(finders.length);
+    for (int i = 1; i < finders.length; i++) {
+      final NameFinderME finder = finders[i];
+      futures.add(executor.submit(new Callable<Span[]>() {
+        public Span[] call() {
+          return finder.find(tokens);
+        }
+      }));
+    }
+    // the first finder runs here rather than waiting idle
+    names[0] = finders[0].find(tokens);
+    try {
+      for (int i = 1; i < finders.length; i++) {
+        names[i] = futures.get(i - 1).get();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted finding names");
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw (IOException) new IOException().initCause(e.getCause());
+    }
+    return names;
+  }
+
   public boolean incrementToken() throws IOException {
     // if there's nothing in the queue.
     if (tokenQueue.peek() == null) {
@@ -136,9 +196,9 @@ public final class NameFilter extends TokenFilter {
       // determine of the current token is of a named entity type, if so
       // push the current state into the queue and add a token reflecting
       // any matching entity types.
-      boolean[] types = tokenTypes[spanOffset];
+      int types = spanOffset * finders.length;
       for (int i = 0; i < finders.length; i++) {
-        if (types[i]) {
+        if (tokenTypes.get(types + i)) {
           keywordAtt.setKeyword(true);
           posIncrAtt.setPositionIncrement(0);
           tokenQueue.add(captureState());
@@ -158,6 +218,16 @@ public final class NameFilter extends TokenFilter {
     return true;
   }
   
+  /** Called before each field value is analyzed, so the finders forget the
+   *  names of the previous document.
+   */
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    NameFinderFactory.clearAdaptiveData(finders);
+    resetState();
+  }
+
   @Override
   public void close() throws IOException {
     super.close();
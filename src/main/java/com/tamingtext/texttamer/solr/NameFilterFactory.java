@@ -21,18 +21,39 @@ package com.tamingtext.texttamer.solr;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.solr.analysis.BaseTokenFilterFactory;
 
 import com.tamingtext.util.NameFinderFactory;
 
+/** Creates {@link NameFilter}s, each with its own name finders over the
+ *  shared models, as Solr uses each TokenStream on one thread at a time.  With a <code>threads</code> argument greater than
+ *  zero, the filters run their name finders concurrently on each sentence using a
+ *  pool shared by all of the filters in the JVM.  The pool is never shut down, as
+ *  the factories of a reloaded core are not told when the old core closes; it has
+ *  as many threads as the largest <code>threads</code> argument, and they exit when idle.
+ */
 public class NameFilterFactory extends BaseTokenFilterFactory {
+  private static ThreadPoolExecutor sharedExecutor;
+
   private NameFinderFactory factory;
+  private ExecutorService executor;
 
   public void init(Map<String, String> args) {
     super.init(args);
 
+    int threads = getInt("threads", 0);
+    if (threads > 0) {
+      executor = sharedExecutor(threads);
+    }
+
     try {
       factory = new NameFinderFactory(args);
     }
@@ -41,8 +62,30 @@ public class NameFilterFactory extends BaseTokenFilterFactory {
     }
   }
 
+  /** The pool shared by the filters, created on first use and grown to at least the given number of threads. */
+  static synchronized ExecutorService sharedExecutor(int threads) {
+    if (sharedExecutor == null) {
+      sharedExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "nameFilter-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      sharedExecutor.allowCoreThreadTimeOut(true);
+    }
+    else if (threads > sharedExecutor.getMaximumPoolSize()) {
+      sharedExecutor.setMaximumPoolSize(threads);
+      sharedExecutor.setCorePoolSize(threads);
+    }
+    return sharedExecutor;
+  }
+
   public NameFilter create(TokenStream ts) {
     return new NameFilter(ts,
-        factory.getModelNames(), factory.getNameFinders());
+        factory.getModelNames(), factory.createNameFinders(), executor);
   }
 }
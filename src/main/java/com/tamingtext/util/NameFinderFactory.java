@@ -20,10 +20,8 @@
 package com.tamingtext.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Map;
 
 import opennlp.tools.namefind.NameFinderME;
@@ -32,18 +30,34 @@ import opennlp.tools.namefind.TokenNameFinderModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tamingtext.opennlp.ModelRegistry;
 import com.tamingtext.opennlp.PooledTokenNameFinderModel;
 
 /** Encapsulates OpenNLP's NameFinder by providing a mechanism to load
  *  all of the name finder models files found in a single directory into memory
  *  and instantiating an array of NameFinderME objects.
+ *  <p>
+ *  The models are immutable, so they come from the {@link ModelRegistry}: each
+ *  model file is loaded only once per JVM and shared by every factory, and
+ *  not until the first finders are created, when all of the models are read
+ *  in parallel.  NameFinderME is not thread-safe, so the
+ *  finders are not shared: {@link #getNameFinders()} gives each thread its own
+ *  and {@link #createNameFinders()} creates a new set, for instance for each
+ *  TokenStream.
  */
 public class NameFinderFactory {
   
   private static final Logger log = LoggerFactory.getLogger(NameFinderFactory.class);
 
-  NameFinderME[] finders;
+  ModelRegistry.Handle<PooledTokenNameFinderModel>[] finderModels;
   String[] modelNames;
+
+  private final ThreadLocal<NameFinderME[]> threadFinders = new ThreadLocal<NameFinderME[]>() {
+    @Override
+    protected NameFinderME[] initialValue() {
+      return createNameFinders();
+    }
+  };
   
   /** Create a NameFinderEngine that loads models from the directory specified
    *  in the system property <code>model.dir</code> system property for the
@@ -114,6 +128,7 @@ public class NameFinderFactory {
    *      can be null to use the value of the system property model.dir
    * @throws IOException
    */
+  @SuppressWarnings("unchecked")
   protected void loadNameFinders(String language, String modelDirectory) throws IOException {
     //<start id="maxent.examples.namefinder.setup"/> 
     File modelFile;
@@ -121,18 +136,13 @@ public class NameFinderFactory {
     File[] models //<co id="nfe.findmodels"/>
       = findNameFinderModels(language, modelDirectory);
     modelNames = new String[models.length];
-    finders = new NameFinderME[models.length];
+    finderModels = new ModelRegistry.Handle[models.length];
 
     for (int fi = 0; fi < models.length; fi++) {
       modelFile = models[fi];
       modelNames[fi] = modelNameFromFile(language, modelFile); //<co id="nfe.modelname"/>
-      
-      log.info("Loading model {}", modelFile); 
-      InputStream modelStream = new FileInputStream(modelFile);
-      TokenNameFinderModel model = //<co id="nfe.modelreader"/>
-          new PooledTokenNameFinderModel(modelStream);
-      finders[fi] = new NameFinderME(model);
-      
+      finderModels[fi] = ModelRegistry.acquire(modelFile, //<co id="nfe.modelreader"/>
+          PooledTokenNameFinderModel.class);
     }
 
     /*<calloutlist>
@@ -154,15 +164,61 @@ public class NameFinderFactory {
     return modelName.replace(language + "-ner-", "").replace(".bin", "");
   }
 
-  /** Obtain a reference to the array of NameFinderME's loaded by the engine. 
+  /** Obtain the calling thread's array of NameFinderME's, one for each of the
+   *  models loaded by the engine, for the next document.  What they learned
+   *  about the names in the thread's previous document is cleared first.  They
+   *  must not be handed to other threads.
    * @return
    */
   public NameFinderME[] getNameFinders() {
+    NameFinderME[] finders = threadFinders.get();
+    clearAdaptiveData(finders);
+    return finders;
+  }
+
+  /** Create a new array of NameFinderME's, one for each of the models loaded by
+   *  the engine, for use by one thread at a time.
+   * @return
+   * @throws RuntimeException if the models can't be read
+   */
+  public NameFinderME[] createNameFinders() {
+    TokenNameFinderModel[] models = getModels();
+    NameFinderME[] finders = new NameFinderME[models.length];
+    for (int fi = 0; fi < models.length; fi++) {
+      finders[fi] = new NameFinderME(models[fi]);
+    }
     return finders;
   }
 
+  /** The shared, immutable models, parallel with the array returned by
+   *  {@link #getModelNames()}, which are read on the first call.
+   * @throws RuntimeException if the models can't be read
+   */
+  public TokenNameFinderModel[] getModels() {
+    TokenNameFinderModel[] models = new TokenNameFinderModel[finderModels.length];
+    try {
+      ModelRegistry.load(finderModels);
+      for (int fi = 0; fi < finderModels.length; fi++) {
+        models[fi] = finderModels[fi].get();
+      }
+    }
+    catch (IOException e) {
+      throw (RuntimeException) new RuntimeException().initCause(e);
+    }
+    return models;
+  }
+
+  /** Forget what the finders have learned about the names in the document
+   *  they have just processed, so it doesn't affect the next document.
+   */
+  public static void clearAdaptiveData(NameFinderME[] finders) {
+    for (NameFinderME finder : finders) {
+      finder.clearAdaptiveData();
+    }
+  }
+
   /** Returns the names of each of the models loaded by the engine, an array
-   *  parallel with the array returned by {@link #getFinders()}
+   *  parallel with the array returned by {@link #getNameFinders()}
    * @return
    */
   public String[] getModelNames() {
@@ -1,9 +1,7 @@
 package com.tamingtext.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Map;
 
 import opennlp.tools.sentdetect.SentenceDetector;
@@ -13,11 +11,13 @@ import opennlp.tools.sentdetect.SentenceModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tamingtext.opennlp.ModelRegistry;
+
 public class SentenceDetectorFactory {
 
   private static final Logger log = LoggerFactory.getLogger(SentenceDetectorFactory.class);
 
-  SentenceDetector detector;
+  ModelRegistry.Handle<SentenceModel> model;
   
   public SentenceDetectorFactory() throws IOException {
     this(null);
@@ -32,11 +32,19 @@ public class SentenceDetectorFactory {
   public SentenceDetectorFactory(String language, String modelDirectory) throws IOException {
     loadSentenceDetector(language, modelDirectory);
   }
-  /** Obtain a reference to an english sentence detector to use in conjunction 
-   *  with the NameFinders
+  /** Obtain a new english sentence detector to use in conjunction 
+   *  with the NameFinders.  The model is shared through the
+   *  {@link ModelRegistry} and read on the first call, but the detector is
+   *  not thread-safe, so each thread needs its own.
+   * @throws RuntimeException if the model can't be read
    */
   public SentenceDetector getSentenceDetector() {
-    return detector;
+    try {
+      return new SentenceDetectorME(model.get());
+    }
+    catch (IOException e) {
+      throw (RuntimeException) new RuntimeException().initCause(e);
+    }
   }
   
   /** Load the sentence detector
@@ -49,10 +57,8 @@ public class SentenceDetectorFactory {
     String modelFile = modelDirectory + 
         File.separatorChar + language + "-sent.bin";
     
-    log.info("Loading sentence model {}", modelFile);
-    InputStream modelStream = new FileInputStream(modelFile);
-    SentenceModel model = new SentenceModel(modelStream);
-    detector = new SentenceDetectorME(model);
+    log.info("Using sentence model {}", modelFile);
+    model = ModelRegistry.acquire(new File(modelFile), SentenceModel.class);
   }
   
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.tamingtext.TamingTextTestJ4;
+import org.junit.*;
+
+public class BulkMovieMatcherTest extends TamingTextTestJ4 {
+
+  private BulkMovieMatcher reference() {
+    BulkMovieMatcher matcher = new BulkMovieMatcher();
+    matcher.add(BulkMovieMatcher.Movie.parse("tt1\tThe Godfather\t1972\tMarlon Brando,Al Pacino"));
+    matcher.add(BulkMovieMatcher.Movie.parse("tt2\tThe Godfather: Part II\t1974\tAl Pacino,Robert De Niro"));
+    matcher.add(BulkMovieMatcher.Movie.parse("tt3\tStar Wars\t1977\tMark Hamill,Harrison Ford"));
+    matcher.add(BulkMovieMatcher.Movie.parse("tt4\tStar Wars\tNULL\tHarrison Ford"));
+    matcher.add(BulkMovieMatcher.Movie.parse("tt5\tCasablanca\t1942\tHumphrey Bogart"));
+    return matcher;
+  }
+
+  @Test
+  public void testNormalize() {
+    assertEquals(" the godfather part ii ", BulkMovieMatcher.normalize("The Godfather: Part II"));
+    assertEquals(1, BulkMovieMatcher.trigrams("a").length);
+    assertEquals(BulkMovieMatcher.trigrams("abab").length, BulkMovieMatcher.trigrams("abab ").length);
+  }
+
+  @Test
+  public void testScoreMatchesMovieMatcher() throws Exception {
+    // the bulk matcher must keep scoring as the book's MovieMatcher does
+    Method score = MovieMatcher.class.getDeclaredMethod("score",
+        String.class, int.class, Set.class, String.class, int.class, Set.class);
+    score.setAccessible(true);
+    MovieMatcher matcher = new MovieMatcher();
+    Set<String> cast1 = MovieScorer.castSet(Arrays.asList("Marlon Brando", "Al Pacino"));
+    Set<String> cast2 = MovieScorer.castSet(Arrays.asList("al pacino", "Robert De Niro", "Diane Keaton"));
+    assertEquals(score.invoke(matcher, "The Godfather", 1972, cast1, "The Godfather: Part II", 1974, cast2),
+        MovieScorer.score("The Godfather", 1972, cast1, "The Godfather: Part II", 1974, cast2));
+    assertEquals(score.invoke(matcher, "Star Wars", 0, cast2, "star wars", 1977, cast1),
+        MovieScorer.score("Star Wars", 0, cast2, "star wars", 1977, cast1));
+  }
+
+  @Test
+  public void testBlocking() {
+    BulkMovieMatcher matcher = reference();
+    // Casablanca is blocked out by its decade
+    for (int doc : matcher.candidates("Casablanca", 1992)) {
+      assertTrue(doc != 4);
+    }
+    // movies with unknown year are always candidates
+    boolean found = false;
+    for (int doc : matcher.candidates("Star Wars", 1997)) {
+      found |= doc == 3;
+    }
+    assertTrue(found);
+    assertEquals(4, matcher.candidates("Casablanca", 0)[0]);
+  }
+
+  @Test
+  public void testMatchAll() throws Exception {
+    BulkMovieMatcher matcher = reference();
+    List<BulkMovieMatcher.Movie> queries = new ArrayList<BulkMovieMatcher.Movie>();
+    for (int i = 0; i < 2500; i++) {
+      queries.add(BulkMovieMatcher.Movie.parse("q" + i + "\tcasablanca\t1942\thumphrey bogart"));
+      queries.add(BulkMovieMatcher.Movie.parse("r" + i + "\tThe Godfather\t1972\tmarlon brando"));
+    }
+    final List<String> results = new ArrayList<String>();
+    matcher.matchAll(queries.iterator(), 4, new BulkMovieMatcher.MatchListener() {
+      public void matched(BulkMovieMatcher.Movie movie, String matchId) {
+        results.add(movie.id + "," + matchId);
+      }
+    });
+    assertEquals(queries.size(), results.size());
+    for (int i = 0; i < queries.size(); i++) {
+      assertTrue(results.get(i).startsWith(queries.get(i).id + ","));
+    }
+    assertEquals("q0,tt5", results.get(0));
+    assertEquals("r0,tt1", results.get(1));
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.tamingtext.TamingTextTestJ4;
+import org.junit.*;
+
+public class CompactTrieTest extends TamingTextTestJ4 {
+  @Test
+  public void testPrefix() {
+    CompactTrie trie = CompactTrie.build(Arrays.asList(
+        "tomorrow", "bat", "tom", "tommy", "tom"));
+    assertEquals(4, trie.getNumWords());
+    String[] words = trie.getWords("tom", 1);
+    assertEquals(1, words.length);
+    assertEquals("tom", words[0]);
+    words = trie.getWords("tom", 5);
+    assertEquals(3, words.length);
+    assertEquals("tom", words[0]);
+    assertEquals("tommy", words[1]);
+    assertEquals("tomorrow", words[2]);
+    assertEquals(0, trie.getWords("tomb", 5).length);
+    assertEquals(4, trie.getWords("", 10).length);
+  }
+
+  @Test
+  public void testUnicode() {
+    CompactTrie trie = CompactTrie.build(Arrays.asList(
+        "Zürich", "Zug", "São Paulo", "St. Louis"));
+    assertTrue(trie.contains("Zürich"));
+    assertFalse(trie.contains("Zü"));
+    String[] words = trie.getWords("Z", 5);
+    assertEquals(2, words.length);
+    assertEquals("Zug", words[0]);
+    assertEquals("Zürich", words[1]);
+    words = trie.getWords("S", 5);
+    assertEquals(2, words.length);
+    assertEquals("St. Louis", words[0]);
+    assertEquals("São Paulo", words[1]);
+  }
+
+  @Test
+  public void testFromTrieNode() {
+    TrieNode node = new TrieNode(false);
+    node.addWord("tomorrow");
+    node.addWord("tomahawk");
+    node.addWord("tom");
+    node.addWord("bat");
+    CompactTrie trie = CompactTrie.build(node);
+    assertEquals(4, trie.getNumWords());
+    assertEquals(Arrays.asList(node.getWords("tom", 5)),
+        Arrays.asList(trie.getWords("tom", 5)));
+  }
+
+  @Test
+  public void testCollectorReusesBuffer() {
+    CompactTrie trie = CompactTrie.build(Arrays.asList("a", "ab", "abc", "b"));
+    CompactTrie.Scratch scratch = new CompactTrie.Scratch(1);
+    final StringBuilder sb = new StringBuilder();
+    int n = trie.collectWords("a", 10, scratch, new CompactTrie.WordCollector() {
+      public void collect(char[] buffer, int length) {
+        sb.append(buffer, 0, length).append(' ');
+      }
+    });
+    assertEquals(3, n);
+    assertEquals("a ab abc ", sb.toString());
+  }
+
+  @Test
+  public void testTopWords() {
+    Map<String,Float> weighted = new HashMap<String,Float>();
+    weighted.put("tom", 1f);
+    weighted.put("tomato", 40f);
+    weighted.put("tomahawk", 5f);
+    weighted.put("tomorrow", 25f);
+    weighted.put("tommy", 10f);
+    weighted.put("zebra", 100f);
+    CompactTrie trie = CompactTrie.build(weighted);
+    assertTrue(trie.isWeighted());
+    assertEquals(25f, trie.getWeight("tomorrow"), 0f);
+    assertTrue(Float.isNaN(trie.getWeight("tomo")));
+
+    String[] words = trie.getTopWords("tom", 3);
+    assertEquals(Arrays.asList("tomato", "tomorrow", "tommy"), Arrays.asList(words));
+    words = trie.getTopWords("to", 10);
+    assertEquals(Arrays.asList("tomato", "tomorrow", "tommy", "tomahawk", "tom"),
+        Arrays.asList(words));
+    words = trie.getTopWords("", 2);
+    assertEquals(Arrays.asList("zebra", "tomato"), Arrays.asList(words));
+    assertEquals(0, trie.getTopWords("x", 2).length);
+  }
+
+  @Test
+  public void testTopWordsUnweighted() {
+    CompactTrie trie = CompactTrie.build(Arrays.asList("tom", "tommy", "tomorrow"));
+    assertFalse(trie.isWeighted());
+    assertEquals(Arrays.asList(trie.getWords("tom", 2)),
+        Arrays.asList(trie.getTopWords("tom", 2)));
+  }
+
+  @Test
+  public void testWriteAndOpen() throws Exception {
+    Map<String,Float> weighted = new HashMap<String,Float>();
+    weighted.put("tom", 1f);
+    weighted.put("tomato", 40f);
+    weighted.put("tommy", 10f);
+    weighted.put("Zürich", 5f);
+    CompactTrie trie = CompactTrie.build(weighted);
+    File file = File.createTempFile("compact-trie", ".bin");
+    file.deleteOnExit();
+    trie.write(file);
+    assertTrue(CompactTrie.isTrieFile(file));
+
+    CompactTrie mapped = CompactTrie.open(file);
+    assertEquals(trie.getNumNodes(), mapped.getNumNodes());
+    assertEquals(trie.getNumWords(), mapped.getNumWords());
+    assertTrue(mapped.isWeighted());
+    assertTrue(mapped.contains("Zürich"));
+    assertEquals(Arrays.asList(trie.getWords("tom", 5)),
+        Arrays.asList(mapped.getWords("tom", 5)));
+    assertEquals(Arrays.asList("tomato", "tommy", "tom"),
+        Arrays.asList(mapped.getTopWords("tom", 5)));
+    assertEquals(10f, mapped.getWeight("tommy"), 0f);
+
+    CompactTrie.build(Arrays.asList("a", "b")).write(file);
+    mapped = CompactTrie.open(file);
+    assertFalse(mapped.isWeighted());
+    assertEquals(Arrays.asList("a", "b"), Arrays.asList(mapped.getWords("", 5)));
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import com.tamingtext.TamingTextTestJ4;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.*;
+
+public class FuzzyDictionaryTest extends TamingTextTestJ4 {
+  @Test
+  public void testWords() {
+    FuzzyDictionary dictionary = new FuzzyDictionary(Arrays.asList(
+        "taming", "text", "test", "tent", "texts", "zoo", "zoom", "boom"));
+    assertEquals(Arrays.asList("tent", "test", "text"),
+        Arrays.asList(dictionary.getWords("tezt", 1)));
+    assertEquals(Arrays.asList("text"), Arrays.asList(dictionary.getWords("text", 0)));
+    assertEquals(Arrays.asList("boom", "zoo", "zoom"),
+        Arrays.asList(dictionary.getWords("zom", 2)));
+    assertEquals("zoom", dictionary.getClosestWord("zoomm", 2));
+    assertNull(dictionary.getClosestWord("elephant", 2));
+  }
+
+  @Test
+  public void testMatchesBruteForce() {
+    Random random = new Random(7);
+    char[] alphabet = "abcd".toCharArray();
+    TreeSet<String> words = new TreeSet<String>();
+    for (int i = 0; i < 500; i++) {
+      words.add(randomWord(random, alphabet, random.nextInt(8)));
+    }
+    FuzzyDictionary dictionary = new FuzzyDictionary(words);
+    LevenshteinDistance lev = new LevenshteinDistance();
+    for (int trial = 0; trial < 100; trial++) {
+      String query = randomWord(random, alphabet, random.nextInt(8));
+      int k = random.nextInt(3);
+      List<String> expected = new ArrayList<String>();
+      for (String word : words) {
+        if (lev.levenshteinDistance(query.toCharArray(), word.toCharArray()) <= k) {
+          expected.add(word);
+        }
+      }
+      assertEquals(expected, Arrays.asList(dictionary.getWords(query, k)));
+    }
+  }
+
+  @Test
+  public void testFromIndex() throws Exception {
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(
+        Version.LUCENE_36, new WhitespaceAnalyzer(Version.LUCENE_36)));
+    Document doc = new Document();
+    doc.add(new Field("word", "taming text tent", Field.Store.NO, Field.Index.ANALYZED));
+    doc.add(new Field("other", "test", Field.Store.NO, Field.Index.ANALYZED));
+    writer.addDocument(doc);
+    writer.close();
+    IndexReader reader = IndexReader.open(directory);
+    FuzzyDictionary dictionary = FuzzyDictionary.build(reader, "word");
+    reader.close();
+    assertEquals(Arrays.asList("tent", "text"),
+        Arrays.asList(dictionary.getWords("test", 1)));
+  }
+
+  private static String randomWord(Random random, char[] alphabet, int length) {
+    char[] s = new char[length];
+    for (int i = 0; i < length; i++) {
+      s[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+    return new String(s);
+  }
+}
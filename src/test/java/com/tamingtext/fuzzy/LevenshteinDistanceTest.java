@@ -20,6 +20,8 @@
 package com.tamingtext.fuzzy;
 
 
+import java.util.Random;
+
 import com.tamingtext.TamingTextTestJ4;
 import org.junit.Test;
 
@@ -43,4 +45,51 @@ public class LevenshteinDistanceTest extends TamingTextTestJ4 {
 
     assertEquals(2, lev.levenshteinDistance("taming text".toCharArray(), "tamming test".toCharArray()));//book example
   }
+
+  @Test
+  public void testBounded() throws Exception {
+    LevenshteinDistance lev = new LevenshteinDistance();
+    int[] scratch = new int[64];
+    assertEquals(2, lev.levenshteinDistance("taming text".toCharArray(), "tamming test".toCharArray(), 2, scratch));
+    assertEquals(2, lev.levenshteinDistance("taming text".toCharArray(), "tamming test".toCharArray(), 1, scratch));//exceeds bound
+    assertEquals(7, lev.levenshteinDistance("zoo".toCharArray(), "zoological".toCharArray(), 6, scratch));//length difference
+    assertEquals(3, lev.levenshteinDistance("".toCharArray(), "zoo".toCharArray(), 5, scratch));
+    assertEquals(0, lev.levenshteinDistance("zoo".toCharArray(), "zoo".toCharArray(), 0, scratch));
+
+    LevenshteinDistance.BitParallelMatcher matcher =
+        new LevenshteinDistance.BitParallelMatcher("taming text".toCharArray());
+    assertEquals(2, matcher.distance("tamming test".toCharArray()));
+    assertEquals(2, matcher.distance("tamming test".toCharArray(), 1));
+    assertEquals(11, matcher.distance("".toCharArray()));
+  }
+
+  @Test
+  public void testBoundedMatchesFull() throws Exception {
+    LevenshteinDistance lev = new LevenshteinDistance();
+    Random random = new Random(42);
+    char[] alphabet = "abcé\u4e2d".toCharArray();
+    int[] scratch = new int[2 * 71];
+    for (int trial = 0; trial < 2000; trial++) {
+      char[] s = randomString(random, alphabet, random.nextInt(70));
+      char[] t = randomString(random, alphabet, random.nextInt(70));
+      int full = lev.levenshteinDistance(s, t);
+      int k = random.nextInt(10);
+      int expected = full <= k ? full : k + 1;
+      assertEquals(expected, lev.levenshteinDistance(s, t, k, scratch));
+      if (s.length <= LevenshteinDistance.BitParallelMatcher.MAX_PATTERN_LENGTH) {
+        LevenshteinDistance.BitParallelMatcher matcher =
+            new LevenshteinDistance.BitParallelMatcher(s);
+        assertEquals(full, matcher.distance(t));
+        assertEquals(expected, matcher.distance(t, k));
+      }
+    }
+  }
+
+  private static char[] randomString(Random random, char[] alphabet, int length) {
+    char[] s = new char[length];
+    for (int i = 0; i < length; i++) {
+      s[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+    return s;
+  }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.util.List;
+
+import com.tamingtext.TamingTextTestJ4;
+import org.junit.*;
+
+public class MinHashIndexTest extends TamingTextTestJ4 {
+  @Test
+  public void testNearDuplicates() {
+    MinHashIndex index = new MinHashIndex();
+    int original = index.add("Taming Text is designed to teach software engineers the basic " +
+        "concepts of working with text to solve search and NLP problems.");
+    index.add("Apache Mahout is a library of scalable machine learning algorithms " +
+        "focused on clustering, classification and recommendations.");
+    int copy = index.add("Taming Text is designed to teach software engineers the basic " +
+        "concepts of working with text to solve search and NLP problems!");
+    assertEquals(3, index.size());
+
+    List<MinHashIndex.Match> matches = index.query("Taming Text is designed to teach " +
+        "software engineers the basic concepts of working with text to solve search " +
+        "and NLP problems.", 0.8f);
+    assertEquals(2, matches.size());
+    assertEquals(original, matches.get(0).getDoc());
+    assertEquals(1f, matches.get(0).getSimilarity(), 0f);
+    assertEquals(copy, matches.get(1).getDoc());
+
+    assertTrue(index.query("Something else entirely, about frankenstein's monster.", 0.5f).isEmpty());
+  }
+
+  @Test
+  public void testIds() {
+    MinHashIndex index = new MinHashIndex(10, 2, 3);
+    int[] a = new int[100];
+    int[] b = new int[100];
+    for (int i = 0; i < 100; i++) {
+      a[i] = i;
+      b[i] = i < 95 ? i : 1000 + i;
+    }
+    index.add(a, a.length);
+    List<MinHashIndex.Match> matches = index.query(b, b.length, 0.85f);
+    assertEquals(1, matches.size());
+    assertEquals((float) 95 / 105, matches.get(0).getSimilarity(), 0f);
+  }
+
+  @Test
+  public void testLongIntMap() {
+    MinHashIndex.LongIntMap map = new MinHashIndex.LongIntMap();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(-1, map.put(i * 7919L, i));
+    }
+    assertEquals(10, map.put(10 * 7919L, 5));
+    assertEquals(5, map.get(10 * 7919L));
+    assertEquals(999, map.get(999 * 7919L));
+    assertEquals(-1, map.get(3L));
+  }
+}
@@ -19,6 +19,8 @@
 
 package com.tamingtext.fuzzy;
 
+import java.util.Random;
+
 import com.tamingtext.TamingTextTestJ4;
 import junit.framework.TestCase;
 import org.apache.lucene.search.TopDocs;
@@ -37,6 +39,86 @@ public class OverlapMeasuresTest extends TamingTextTestJ4 {
     assertEquals(om.jaccard("zooto".toCharArray(), "zoomo".toCharArray()),(float) 2/4);
   }
 
+  @Test
+  public void testJaccardMatchesScan() {
+    OverlapMeasures om = new OverlapMeasures();
+    Random random = new Random(42);
+    char[] alphabet = "abcdefgzoom\u00e9\u4e2d\uffff".toCharArray();
+    for (int i = 0; i < 1000; i++) {
+      char[] s = new char[1 + random.nextInt(12)];
+      char[] t = new char[1 + random.nextInt(12)];
+      for (int j = 0; j < s.length; j++) s[j] = alphabet[random.nextInt(alphabet.length)];
+      for (int j = 0; j < t.length; j++) t[j] = alphabet[random.nextInt(alphabet.length)];
+      // repeated calls see no characters left over from earlier ones
+      assertEquals(om.jaccardByScan(s, t), om.jaccard(s, t), 0f);
+      assertEquals(om.jaccardByScan(t, s), om.jaccard(t, s), 0f);
+    }
+    assertEquals(1f, om.jaccard(new char[0], new char[0]), 0f);
+    assertEquals(0f, om.jaccard("abc".toCharArray(), new char[0]), 0f);
+  }
+
+  @Test
+  public void testDice() {
+    OverlapMeasures om = new OverlapMeasures();
+    assertEquals(1f, om.dice("zoo".toCharArray(), "zoo".toCharArray()), 0f);
+    assertEquals((float) 4/5, om.dice("zoo".toCharArray(), "zoom".toCharArray()), 0f);
+    assertEquals(0f, om.dice("abc".toCharArray(), "xyz".toCharArray()), 0f);
+    assertEquals((float) 4/5, om.dice("zoo".toCharArray(), "zooto".toCharArray()), 0f);
+    assertEquals(1f, om.dice(new char[0], new char[0]), 0f);
+  }
+
+  @Test
+  public void testSortedSets() {
+    OverlapMeasures om = new OverlapMeasures();
+    int[] s = {5, 3, 9, 3, 1};
+    int[] t = {9, 4, 1, 1};
+    int sn = OverlapMeasures.toSortedSet(s, s.length);
+    int tn = OverlapMeasures.toSortedSet(t, t.length);
+    assertEquals(4, sn);
+    assertEquals(3, tn);
+    assertEquals(2, OverlapMeasures.intersectionSize(s, sn, t, tn));
+    assertEquals((float) 2/5, om.jaccard(s, sn, t, tn), 0f);
+    assertEquals((float) 4/7, om.dice(s, sn, t, tn), 0f);
+
+    // agrees with the character based version
+    char[] a = "zooto".toCharArray();
+    char[] b = "zoomo".toCharArray();
+    int[] ai = new int[a.length];
+    int[] bi = new int[b.length];
+    for (int i = 0; i < a.length; i++) ai[i] = a[i];
+    for (int i = 0; i < b.length; i++) bi[i] = b[i];
+    assertEquals(om.jaccard(a, b), om.jaccard(ai, OverlapMeasures.toSortedSet(ai, ai.length),
+        bi, OverlapMeasures.toSortedSet(bi, bi.length)), 0f);
+  }
+
+  @Test
+  public void testBitsets() {
+    OverlapMeasures om = new OverlapMeasures();
+    long[] s = new long[2];
+    long[] t = new long[3];
+    for (int id : new int[] {1, 3, 5, 70}) s[id >> 6] |= 1L << id;
+    for (int id : new int[] {1, 5, 70, 130}) t[id >> 6] |= 1L << id;
+    assertEquals((float) 3/5, om.jaccard(s, t), 0f);
+    assertEquals((float) 6/8, om.dice(s, t), 0f);
+  }
+
+  @Test
+  public void testMinHash() {
+    MinHash minHash = new MinHash(256);
+    int[] s = new int[1000];
+    int[] t = new int[1000];
+    for (int i = 0; i < 1000; i++) {
+      s[i] = i;
+      t[i] = i + 500; // jaccard = 500/1500
+    }
+    float estimate = MinHash.similarity(minHash.signature(s), minHash.signature(t));
+    assertEquals(1f/3, estimate, 0.1f);
+    assertEquals(1f, MinHash.similarity(minHash.signature("taming text", 3),
+        minHash.signature("taming text", 3)), 0f);
+    assertTrue(MinHash.similarity(minHash.signature("taming text", 3),
+        minHash.signature("gaming next", 3)) < 0.5f);
+  }
+
   //just a simple test of the cosine overlap discussion in the Fuzzy chapter.
   @Test
   public void testCosine() throws Exception {
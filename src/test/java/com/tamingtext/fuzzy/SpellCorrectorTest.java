@@ -0,0 +1,193 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.fuzzy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.search.spell.LevensteinDistance;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class SpellCorrectorTest extends TamingTextTestJ4 {
+
+  private static final String[] DICTIONARY = {
+      "taming", "text", "solr", "lucene", "search", "spelling", "correct", "suggest", "mahout", "cluster",
+      "classify", "tagging", "answer", "question", "parser", "entity", "token", "index", "query", "score"
+  };
+
+  private static final String[] MISSPELLINGS = {
+      "tamming", "tezt", "solar", "lucen", "serch", "speling", "corect", "sugest", "mahut", "clustr",
+      "clasify", "taging", "anwser", "qestion", "parsr", "entty", "tokn", "indx", "qury", "scor",
+      "xyzzy", "tamming", "solar"
+  };
+
+  /** Returns the dictionary words sharing a character bigram with a term of
+   *  the n-gram query, or of each group query when grouping.
+   */
+  static class NGramServer extends SolrServer {
+    private static final Pattern TERM = Pattern.compile("wordNGram:\\(?((?:\\\\.|[^\\s()\\\\])+)\\)?");
+    final AtomicInteger requests = new AtomicInteger();
+    final List<String> queried = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) {
+      requests.incrementAndGet();
+      SolrParams params = request.getParams();
+      int rows = params.getInt(CommonParams.ROWS, 10);
+      NamedList<Object> response = new NamedList<Object>();
+      if (params.getBool(GroupParams.GROUP, false)) {
+        NamedList<Object> grouped = new SimpleOrderedMap<Object>();
+        for (String groupQuery : params.getParams(GroupParams.GROUP_QUERY)) {
+          SolrDocumentList docs = find(groupQuery, params.getInt(GroupParams.GROUP_LIMIT, 1));
+          SimpleOrderedMap<Object> group = new SimpleOrderedMap<Object>();
+          group.add("matches", Integer.valueOf(docs.size()));
+          group.add("doclist", docs);
+          grouped.add(groupQuery, group);
+        }
+        response.add("grouped", grouped);
+      } else {
+        response.add("response", find(params.get(CommonParams.Q), rows));
+      }
+      return response;
+    }
+
+    private SolrDocumentList find(String q, int rows) {
+      List<String> terms = new ArrayList<String>();
+      Matcher m = TERM.matcher(q);
+      while (m.find()) {
+        terms.add(m.group(1).replaceAll("\\\\(.)", "$1"));
+      }
+      queried.addAll(terms);
+      SolrDocumentList docs = new SolrDocumentList();
+      for (String word : DICTIONARY) {
+        if (docs.size() < rows && matches(word, terms)) {
+          SolrDocument doc = new SolrDocument();
+          doc.setField("word", word);
+          docs.add(doc);
+        }
+      }
+      docs.setNumFound(docs.size());
+      return docs;
+    }
+
+    private static boolean matches(String word, List<String> terms) {
+      for (String term : terms) {
+        for (int i = 0; i + 2 <= term.length(); i++) {
+          if (word.contains(term.substring(i, i + 2))) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+  private static SpellCorrector corrector(NGramServer server, ExecutorService executor, int batchSize) {
+    SpellCorrector corrector = new SpellCorrector(server, new LevensteinDistance(), 0.5f, executor, 1000);
+    corrector.setBatchSize(batchSize);
+    return corrector;
+  }
+
+  @Test
+  public void testBatching() throws Exception {
+    NGramServer server = new NGramServer();
+    Map<String,String> suggestions = corrector(server, null, 10).topSuggestions(Arrays.asList(MISSPELLINGS));
+    // 21 distinct words in batches of 10
+    assertEquals(3, server.requests.get());
+    assertEquals(Arrays.asList(MISSPELLINGS).subList(0, 21), new ArrayList<String>(suggestions.keySet()));
+    for (int i = 0; i < DICTIONARY.length; i++) {
+      assertEquals(DICTIONARY[i], suggestions.get(MISSPELLINGS[i]));
+    }
+    assertNull(suggestions.get("xyzzy"));
+  }
+
+  @Test
+  public void testCacheIsPerWord() throws Exception {
+    NGramServer server = new NGramServer();
+    SpellCorrector corrector = corrector(server, null, 5);
+    List<String> words = Arrays.asList(MISSPELLINGS).subList(0, 5);
+    Map<String,String> suggestions = corrector.topSuggestions(words);
+    assertEquals(1, server.requests.get());
+    // the words are answered from the cache in any batch, or on their own
+    for (Map.Entry<String,String> e : corrector.topSuggestions(Arrays.asList(MISSPELLINGS).subList(1, 4)).entrySet()) {
+      assertEquals(suggestions.get(e.getKey()), e.getValue());
+    }
+    assertEquals("taming", corrector.topSuggestion("tamming"));
+    assertEquals(1, server.requests.get());
+    // a batch mixing cached words and new ones only looks up the new ones
+    server.queried.clear();
+    Map<String,String> shifted = corrector.topSuggestions(Arrays.asList(MISSPELLINGS).subList(3, 8));
+    assertEquals(2, server.requests.get());
+    assertEquals(new HashSet<String>(Arrays.asList(MISSPELLINGS).subList(5, 8)),
+        new HashSet<String>(server.queried));
+    assertEquals("lucene", shifted.get("lucen"));
+    assertEquals("correct", shifted.get("corect"));
+    // and a word corrected in a batch is then answered from the cache on its own
+    assertEquals("spelling", corrector.topSuggestion("speling"));
+    assertEquals(2, server.requests.get());
+  }
+
+  @Test
+  public void testBatchMatchesSingleWords() throws Exception {
+    // each word's candidates come from its own n-gram query, not its neighbors'
+    Map<String,String> batched =
+        corrector(new NGramServer(), null, 7).topSuggestions(Arrays.asList(MISSPELLINGS));
+    for (String spelling : MISSPELLINGS) {
+      assertEquals(spelling, corrector(new NGramServer(), null, 7).topSuggestion(spelling),
+          batched.get(spelling));
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testParallelMatchesSerial() throws Exception {
+    Map<String,String> serial = corrector(new NGramServer(), null, 2).topSuggestions(Arrays.asList(MISSPELLINGS));
+    // many more batches than threads, each with more than one word to score
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      NGramServer server = new NGramServer();
+      Map<String,String> parallel = corrector(server, executor, 2).topSuggestions(Arrays.asList(MISSPELLINGS));
+      assertEquals(serial, parallel);
+      assertEquals(new ArrayList<String>(serial.keySet()), new ArrayList<String>(parallel.keySet()));
+      assertEquals(11, server.requests.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
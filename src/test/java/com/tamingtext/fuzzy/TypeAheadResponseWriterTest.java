@@ -0,0 +1,83 @@
+package com.tamingtext.fuzzy;
+
+import java.io.StringWriter;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+
+import com.tamingtext.TTTestCaseJ4;
+import org.junit.*;
+
+public class TypeAheadResponseWriterTest extends TTTestCaseJ4 {
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("bayes-update-config.xml", "bayes-update-schema.xml");
+    // two segments, so the field cache is read per segment
+    assertU(adoc("id", "Tom & Jerry", "details", "cartoon"));
+    assertU(adoc("id", "say \"hi\"", "details", "greeting"));
+    assertU(commit());
+    assertU(adoc("id", "<b>bold</b>", "details", "markup"));
+    assertU(commit());
+  }
+
+  private String write(String format, boolean useFieldCache) throws Exception {
+    NamedList<Object> args = new NamedList<Object>();
+    args.add("field", "id");
+    args.add("format", format);
+    args.add("useFieldCache", String.valueOf(useFieldCache));
+    TypeAheadResponseWriter writer = new TypeAheadResponseWriter();
+    writer.init(args);
+    SolrQueryRequest req = req("q", "*:*", "sort", "id asc");
+    try {
+      SolrQueryResponse rsp = new SolrQueryResponse();
+      h.getCore().execute(h.getCore().getRequestHandler(null), req, rsp);
+      StringWriter w = new StringWriter();
+      writer.write(w, req, rsp);
+      assertEquals("json".equals(format) ? "application/json;charset=UTF-8" : "text/html;charset=UTF-8",
+          writer.getContentType(req, rsp));
+      for (Object entry : FieldCache.DEFAULT.getCacheEntries()) {
+        IndexReader top = req.getSearcher().getIndexReader();
+        assertNotSame("top-level reader in the field cache", top,
+            ((FieldCache.CacheEntry) entry).getReaderKey());
+      }
+      return w.toString();
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testWriteHtml() throws Exception {
+    String expected = "<ul>\n<li>&lt;b&gt;bold&lt;/b&gt;</li>\n<li>Tom &amp; Jerry</li>\n"
+        + "<li>say &quot;hi&quot;</li>\n</ul>\n";
+    assertEquals(expected, write("html", false));
+    assertEquals(expected, write("html", true));
+  }
+
+  @Test
+  public void testWriteJson() throws Exception {
+    String expected = "[\"<b>bold</b>\",\"Tom & Jerry\",\"say \\\"hi\\\"\"]\n";
+    assertEquals(expected, write("json", false));
+    assertEquals(expected, write("json", true));
+  }
+
+  @Test
+  public void testHtmlEscaping() throws Exception {
+    StringWriter w = new StringWriter();
+    TypeAheadResponseWriter.writeHtmlEscaped(w, "Tom & Jerry <\"Cat's\">");
+    assertEquals("Tom &amp; Jerry &lt;&quot;Cat&#39;s&quot;&gt;", w.toString());
+    w = new StringWriter();
+    TypeAheadResponseWriter.writeHtmlEscaped(w, "plain");
+    assertEquals("plain", w.toString());
+  }
+
+  @Test
+  public void testJsonEscaping() throws Exception {
+    StringWriter w = new StringWriter();
+    TypeAheadResponseWriter.writeJsonEscaped(w, "say \"hi\"\\\n\u0001é");
+    assertEquals("say \\\"hi\\\"\\\\\\n\\u0001é", w.toString());
+  }
+}
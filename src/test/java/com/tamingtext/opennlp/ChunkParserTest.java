@@ -22,6 +22,11 @@ package com.tamingtext.opennlp;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import opennlp.tools.chunker.ChunkerME;
 import opennlp.tools.chunker.ChunkerModel;
@@ -62,4 +67,109 @@ public class ChunkParserTest extends TamingTextTestJ4 {
     assertTrue(chunks[0].getHead().toString().equals("Twins"));
     //<end id="openChunkParse"/>
   }
-}
\ No newline at end of file
+
+  private static final String[] QUESTIONS = {
+    "Who is the greatest hockey player of all time ?",
+    "What is the capital of Minnesota ?",
+    "When did the Minnesota Twins win the World Series ?",
+    "Where is the Mall of America ?",
+    "How many players are on a baseball team ?"
+  };
+
+  private ChunkerModel chunkerModel() throws IOException {
+    return new ChunkerModel(new FileInputStream(new File(getModelDir(), "en-chunker.bin")));
+  }
+
+  private POSModel posModel() throws IOException {
+    return new POSModel(new FileInputStream(new File(getModelDir(), "en-pos-maxent.bin")));
+  }
+
+  private static String show(Parse parse) {
+    StringBuffer sb = new StringBuffer();
+    parse.show(sb);
+    return sb.toString();
+  }
+
+  @Test
+  public void testParseAll() throws Exception {
+    ChunkerModel chunkerModel = chunkerModel();
+    POSModel posModel = posModel();
+    // enough questions for a few batches, each one different
+    List<String> questions = new ArrayList<String>();
+    for (int i = 0; i < 150; i++) {
+      questions.add(QUESTIONS[i % QUESTIONS.length].replace("?", i + " ?"));
+    }
+    Parser parser = new ChunkParser(new ChunkerME(chunkerModel), new POSTaggerME(posModel));
+    // more threads than batches
+    List<Parse[]> results = ChunkParser.parseAll(questions, 2, chunkerModel, posModel, 8);
+    assertEquals(questions.size(), results.size());
+    for (int i = 0; i < questions.size(); i++) {
+      Parse[] expected = ParserTool.parseLine(questions.get(i), parser, 2);
+      Parse[] actual = results.get(i);
+      assertEquals(expected.length, actual.length);
+      for (int k = 0; k < expected.length; k++) {
+        assertEquals(show(expected[k]), show(actual[k]));
+        assertEquals(expected[k].getProb(), actual[k].getProb(), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testParseAllReusesExecutorAndParsers() throws Exception {
+    final AtomicInteger created = new AtomicInteger();
+    ThreadLocal<Parser> parsers = new ThreadLocal<Parser>() {
+      @Override
+      protected Parser initialValue() {
+        created.incrementAndGet();
+        // leaves the tokens unparsed, so no models are needed
+        return new Parser() {
+          public Parse parse(Parse tokens) {
+            return tokens;
+          }
+
+          public Parse[] parse(Parse tokens, int numParses) {
+            return new Parse[]{tokens};
+          }
+        };
+      }
+    };
+    ChunkParser.ParseHandler<String> handler = new ChunkParser.ParseHandler<String>() {
+      public String handle(int index, Parse[] parses) {
+        return index + ":" + parses[0].getChildren()[0];
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for (int batch = 0; batch < 5; batch++) {
+        List<String> questions = new ArrayList<String>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+          questions.add("q" + batch + "." + i + " ?");
+          expected.add(i + ":q" + batch + "." + i);
+        }
+        assertEquals(expected, ChunkParser.parseAll(questions, 1, executor, 3, parsers, handler));
+      }
+      assertFalse(executor.isShutdown());
+      // a parser per thread of the pool, not per thread per call
+      assertTrue(created.get() <= 3);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTopParses() throws Exception {
+    Parser parser = new ChunkParser(new ChunkerME(chunkerModel()), new POSTaggerME(posModel()));
+    for (String question : QUESTIONS) {
+      Parse best = ParserTool.parseLine(question, parser, 1)[0];
+      Parse[] parses = ParserTool.parseLine(question, parser, 3);
+      assertTrue(parses.length >= 1 && parses.length <= 3);
+      assertEquals(show(best), show(parses[0]));
+      for (int k = 1; k < parses.length; k++) {
+        assertTrue(parses[k - 1].getProb() >= parses[k].getProb());
+        // each parse has its own tree over the tokens
+        assertNotSame(parses[k - 1].getChildren()[0], parses[k].getChildren()[0]);
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.opennlp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.maxent.GIS;
+import opennlp.model.AbstractModel;
+import opennlp.model.BinaryFileDataReader;
+import opennlp.model.Event;
+import opennlp.model.GenericModelReader;
+import opennlp.model.ListEventStream;
+import opennlp.model.OnePassDataIndexer;
+import opennlp.perceptron.PerceptronTrainer;
+import opennlp.tools.util.model.GenericModelSerializer;
+
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class CompactModelTest extends TamingTextTestJ4 {
+
+  private static final String[][] CONTEXTS = {
+      {"w=john", "cap", "prev=bos"},
+      {"w=smith", "cap", "prev=john"},
+      {"w=went", "prev=smith"},
+      {"w=to", "prev=went"},
+      {"w=paris", "cap", "prev=to"},
+      {"w=mary", "cap", "prev=bos"},
+      {"w=lives", "prev=mary"},
+      {"w=in", "prev=lives"},
+      {"w=london", "cap", "prev=in"},
+      {"w=the", "prev=bos"},
+  };
+  private static final String[] OUTCOMES = {
+      "person", "person", "other", "other", "location", "person", "other", "other", "location", "other"
+  };
+
+  private static ListEventStream events() {
+    List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < CONTEXTS.length; i++) {
+      events.add(new Event(OUTCOMES[i], CONTEXTS[i]));
+    }
+    return new ListEventStream(events);
+  }
+
+  private static byte[] serialize(AbstractModel model) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new GenericModelSerializer().serialize(model, out);
+    return out.toByteArray();
+  }
+
+  private static AbstractModel readStandard(byte[] bytes) throws Exception {
+    return new GenericModelReader(new BinaryFileDataReader(new ByteArrayInputStream(bytes))).getModel();
+  }
+
+  private static void assertSameModel(AbstractModel expected, AbstractModel actual) throws Exception {
+    assertEquals(expected.getNumOutcomes(), actual.getNumOutcomes());
+    assertEquals(expected.getModelType(), actual.getModelType());
+    for (int i = 0; i < expected.getNumOutcomes(); i++) {
+      assertEquals(expected.getOutcome(i), actual.getOutcome(i));
+    }
+    List<String[]> contexts = new ArrayList<String[]>(Arrays.asList(CONTEXTS));
+    contexts.add(new String[] {"w=unseen", "cap", "prev=bos"});
+    contexts.add(new String[0]);
+    float[] values = {0.5f, 2f, 1f};
+    for (String[] context : contexts) {
+      assertTrue(Arrays.equals(expected.eval(context), actual.eval(context)));
+      if (context.length == values.length) {
+        assertTrue(Arrays.equals(expected.eval(context, values), actual.eval(context, values)));
+      }
+    }
+  }
+
+  private void assertCompact(AbstractModel trained) throws Exception {
+    byte[] bytes = serialize(trained);
+    AbstractModel standard = readStandard(bytes);
+    AbstractModel compact = new PooledGenericModelSerializer().create(new ByteArrayInputStream(bytes));
+    assertTrue(compact instanceof CompactModel);
+    assertSameModel(standard, compact);
+    // written back out, the compact model reads as the same model
+    assertSameModel(standard, readStandard(serialize(compact)));
+  }
+
+  @Test
+  public void testGIS() throws Exception {
+    assertCompact(GIS.trainModel(events(), 50, 0, false, false));
+  }
+
+  @Test
+  public void testPerceptron() throws Exception {
+    assertCompact(new PerceptronTrainer().trainModel(50, new OnePassDataIndexer(events(), 0), 0));
+  }
+
+  @Test
+  public void testPredicateTable() {
+    String[] names = new String[1000];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = "p=" + i;
+    }
+    // distinct strings with the same hash code
+    names[10] = "Aa";
+    names[11] = "BB";
+    CompactModel.PredicateTable table = new CompactModel.PredicateTable(names);
+    assertEquals(names.length, table.size());
+    for (int i = 0; i < names.length; i++) {
+      assertEquals(i, table.get(new String(names[i])));
+    }
+    assertEquals(-1, table.get("p=1000"));
+    assertTrue(Arrays.equals(names, table.toArray(new String[names.length])));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.opennlp;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class ModelRegistryTest extends TamingTextTestJ4 {
+
+  /** A stand-in for an OpenNLP model, which records how often it is read. */
+  public static class CountingModel {
+    static final AtomicInteger reads = new AtomicInteger();
+    final int content;
+
+    public CountingModel(InputStream in) throws IOException {
+      reads.incrementAndGet();
+      content = in.read();
+    }
+  }
+
+  public static class BrokenModel {
+    public BrokenModel(InputStream in) throws IOException {
+      throw new IOException("bad model");
+    }
+  }
+
+  private static File writeModel(int content) throws IOException {
+    File file = File.createTempFile("model", ".bin");
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void testSharedAndLazy() throws Exception {
+    File file = writeModel(1);
+    try {
+      int reads = CountingModel.reads.get();
+      ModelRegistry.Handle<CountingModel> first = ModelRegistry.acquire(file, CountingModel.class);
+      ModelRegistry.Handle<CountingModel> second = ModelRegistry.acquire(file, CountingModel.class);
+      assertEquals(reads, CountingModel.reads.get());
+      assertSame(first.get(), second.get());
+      assertEquals(1, first.get().content);
+      assertEquals(reads + 1, CountingModel.reads.get());
+      first.release();
+      second.release();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testReleaseAndReload() throws Exception {
+    File file = writeModel(2);
+    try {
+      int size = ModelRegistry.size();
+      ModelRegistry.Handle<CountingModel> first = ModelRegistry.acquire(file, CountingModel.class);
+      ModelRegistry.Handle<CountingModel> second = ModelRegistry.acquire(file, CountingModel.class);
+      CountingModel model = first.get();
+      assertEquals(size + 1, ModelRegistry.size());
+      first.release();
+      assertEquals(size + 1, ModelRegistry.size());
+      assertSame(model, second.get());
+      second.release();
+      assertEquals(size, ModelRegistry.size());
+      ModelRegistry.Handle<CountingModel> third = ModelRegistry.acquire(file, CountingModel.class);
+      assertNotSame(model, third.get());
+      third.release();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testModifiedFileIsReloaded() throws Exception {
+    File file = writeModel(3);
+    try {
+      ModelRegistry.Handle<CountingModel> before = ModelRegistry.acquire(file, CountingModel.class);
+      assertTrue(file.setLastModified(file.lastModified() - 10000));
+      ModelRegistry.Handle<CountingModel> after = ModelRegistry.acquire(file, CountingModel.class);
+      ModelRegistry.load(before, after);
+      assertNotSame(before.get(), after.get());
+      before.release();
+      after.release();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testFailures() throws Exception {
+    File file = writeModel(4);
+    try {
+      ModelRegistry.Handle<BrokenModel> handle = ModelRegistry.acquire(file, BrokenModel.class);
+      try {
+        handle.get();
+        fail("Expected IOException");
+      } catch (IOException e) {
+        assertEquals("bad model", e.getMessage());
+      }
+      handle.release();
+    } finally {
+      file.delete();
+    }
+    try {
+      ModelRegistry.acquire(file, CountingModel.class);
+      fail("Expected FileNotFoundException");
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+  }
+}
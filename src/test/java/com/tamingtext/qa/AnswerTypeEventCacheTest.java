@@ -0,0 +1,63 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.model.Event;
+import opennlp.model.ListEventStream;
+
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class AnswerTypeEventCacheTest extends TamingTextTestJ4 {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    List<Event> events = new ArrayList<Event>();
+    events.add(new Event("P", new String[] {"def", "qw=who", "hw=president", "s=7846"}));
+    events.add(new Event("L", new String[] {"def", "qw=where", "fn=null"}));
+    events.add(new Event("P", new String[] {"def", "qw=who", "s=7846"}));
+    // enough distinct predicates that their ids need more than one byte
+    String[] many = new String[300];
+    for (int i = 0; i < many.length; i++) {
+      many[i] = "rw=w" + i;
+    }
+    events.add(new Event("O", many));
+    File file = File.createTempFile("answer-events", ".bin");
+    try {
+      assertEquals(4, AnswerTypeEventCache.write(new ListEventStream(events), file));
+      AnswerTypeEventCache.Reader reader = new AnswerTypeEventCache.Reader(file);
+      for (Event expected : events) {
+        assertTrue(reader.hasNext());
+        Event actual = reader.next();
+        assertEquals(expected.getOutcome(), actual.getOutcome());
+        assertEquals(Arrays.asList(expected.getContext()), Arrays.asList(actual.getContext()));
+      }
+      assertFalse(reader.hasNext());
+    } finally {
+      file.delete();
+    }
+  }
+}
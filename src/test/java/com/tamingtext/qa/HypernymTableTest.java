@@ -0,0 +1,80 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class HypernymTableTest extends TamingTextTestJ4 {
+
+  private HypernymTable table() {
+    return new HypernymTable.Builder()
+        .addLemmas("president", "president")
+        .addLemmas("geese", "goose")
+        .addLemmas("goose", "goose")
+        .addLemmas("church", "church")
+        .addParents("president", "7846", "1740")
+        .addParents("goose", "1504", "1740")
+        .addParents("church", "8080")
+        .build();
+  }
+
+  @Test
+  public void testLookup() throws Exception {
+    HypernymTable table = table();
+    assertEquals(Arrays.asList("president"), Arrays.asList(table.getLemmas("president")));
+    assertEquals(Arrays.asList("goose"), Arrays.asList(table.getLemmas("geese")));
+    assertEquals(Arrays.asList("7846", "1740"), Arrays.asList(table.getParentSenseKeys("president")));
+    assertEquals(0, table.getParentSenseKeys("zebra").length);
+    assertEquals(0, table.getLemmas("zebra").length);
+  }
+
+  @Test
+  public void testRegularInflections() throws Exception {
+    HypernymTable table = table();
+    assertEquals(Arrays.asList("president"), Arrays.asList(table.getLemmas("presidents")));
+    assertEquals(Arrays.asList("church"), Arrays.asList(table.getLemmas("churches")));
+    Set<String> keys = new TreeSet<String>();
+    table.addParentSenseKeys("presidents", keys);
+    table.addParentSenseKeys("geese", keys);
+    assertEquals(new TreeSet<String>(Arrays.asList("1504", "1740", "7846")), keys);
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    HypernymTable table = table();
+    File file = File.createTempFile("hypernyms", ".bin");
+    try {
+      table.save(file);
+      HypernymTable loaded = HypernymTable.load(file);
+      assertEquals(table.size(), loaded.size());
+      assertEquals(Arrays.asList("goose"), Arrays.asList(loaded.getLemmas("geese")));
+      assertEquals(Arrays.asList("1504", "1740"), Arrays.asList(loaded.getParentSenseKeys("goose")));
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.tamingtext.TamingTextTestJ4;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.DocSlice;
+import org.junit.*;
+
+public class PassageWindowIndexTest extends TamingTextTestJ4 {
+
+  private static final String[] DOCS = {
+      "wayne gretzky is the greatest hockey player of all time",
+      "hockey is played on ice and the greatest hockey player is canadian",
+      "michael jordan is the greatest basketball player but not a hockey player",
+      "player hockey greatest greatest hockey the the player"
+  };
+
+  private IndexReader reader;
+
+  @Before
+  public void openIndex() throws Exception {
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(
+        Version.LUCENE_36, new WhitespaceAnalyzer(Version.LUCENE_36))
+        .setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES));
+    for (int i = 0; i < DOCS.length; i++) {
+      Document doc = new Document();
+      doc.add(new Field("details", DOCS[i], Field.Store.YES, Field.Index.ANALYZED,
+          Field.TermVector.WITH_POSITIONS_OFFSETS));
+      writer.addDocument(doc);
+      writer.commit(); // a segment per document
+    }
+    writer.close();
+    reader = IndexReader.open(directory);
+  }
+
+  @After
+  public void closeIndex() throws Exception {
+    reader.close();
+  }
+
+  @Test
+  public void testSegments() throws Exception {
+    IndexReader[] segments = PassageWindowIndex.getSegments(reader);
+    assertEquals(DOCS.length, segments.length);
+    int[] starts = PassageWindowIndex.getDocStarts(segments);
+    assertEquals(3, starts[3]);
+
+    PassageWindowIndex.Segment segment = PassageWindowIndex.build(segments[3], "details");
+    assertSame(segment, PassageWindowIndex.getSegment(segments[3], "details"));
+    assertSame(segment, PassageWindowIndex.build(segments[3], "details"));
+    String[] tokens = DOCS[3].split(" ");
+    assertEquals(tokens.length, segment.numEntries());
+    for (int e = 0; e < tokens.length; e++) {
+      assertEquals(e, segment.positions[e]);
+      assertEquals(tokens[e], segment.term(segment.termIds[e]));
+      assertEquals(DOCS[3].indexOf(tokens[e], e == 0 ? 0 : segment.endOffsets[e - 1]),
+          segment.startOffsets[e]);
+    }
+    assertEquals(-1, segment.termId("gretzky"));
+    assertEquals(2, segment.firstEntry(0, 2));
+  }
+
+  @Test
+  public void testScoresMatchTermVectors() throws Exception {
+    Map<String, Float> termWeights = new HashMap<String, Float>();
+    termWeights.put("greatest", 0.3f);
+    termWeights.put("hockey", 0.5f);
+    termWeights.put("player", 0.2f);
+    Map<String, Float> bigramWeights = new HashMap<String, Float>();
+    bigramWeights.put("greatest,hockey", 0.075f);
+    bigramWeights.put("hockey,player", 0.05f);
+
+    PassageRankingComponent component = new PassageRankingComponent();
+    IndexReader[] segments = PassageWindowIndex.getSegments(reader);
+    Random random = new Random(7);
+    for (int trial = 0; trial < 200; trial++) {
+      int pws = random.nextInt(4), aws = random.nextInt(4), sws = random.nextInt(4);
+      PassageWindowIndex.WindowScorer scorer = new PassageWindowIndex.WindowScorer(termWeights, bigramWeights,
+          0.5f, 0.25f, 1.0f, pws, aws, sws);
+      PassageRankingComponent.WindowBuildingTVM tvm = component.new WindowBuildingTVM(pws, aws, sws);
+      PassageWindowIndex.TermVectorWindow window = new PassageWindowIndex.TermVectorWindow(scorer);
+      for (int doc = 0; doc < DOCS.length; doc++) {
+        int start = random.nextInt(DOCS[doc].split(" ").length);
+        tvm.spanStart = start;
+        tvm.spanEnd = start + random.nextInt(3);
+        reader.getTermFreqVector(doc, "details", tvm);
+        tvm.buildBigrams();
+        float expected = component.scorePassage(tvm.passage, termWeights, bigramWeights, 0.5f, 0.25f, 1.0f);
+        int firstStart = tvm.passage.terms.first().start;
+        int lastEnd = tvm.passage.terms.last().end;
+        tvm.passage.clear();
+
+        scorer.setSegment(PassageWindowIndex.build(segments[doc], "details"));
+        assertEquals(expected, scorer.score(0, tvm.spanStart, tvm.spanEnd), 0.00001f);
+
+        window.reset(tvm.spanStart, tvm.spanEnd);
+        reader.getTermFreqVector(doc, "details", window);
+        window.sort();
+        assertEquals(expected, scorer.score(window), 0.00001f);
+        assertEquals(firstStart, window.startOffsets[scorer.firstPrimary]);
+        assertEquals(lastEnd, window.endOffsets[scorer.lastPrimary]);
+      }
+    }
+  }
+
+  @Test
+  public void testListenerBuildsEverySegment() throws Exception {
+    IndexReader[] segments = PassageWindowIndex.getSegments(reader);
+    for (IndexReader segment : segments) {
+      assertNull(PassageWindowIndex.getSegment(segment, "details"));
+    }
+    listener().build(reader);
+    for (IndexReader segment : segments) {
+      assertNotNull(PassageWindowIndex.getSegment(segment, "details"));
+    }
+    assertNull(PassageWindowIndex.getSegment(segments[0], "other"));
+  }
+
+  @Test
+  public void testMaxBytes() throws Exception {
+    IndexReader[] segments = PassageWindowIndex.getSegments(reader);
+    long maxBytes = PassageWindowIndex.getMaxBytes();
+    try {
+      PassageWindowIndex.setMaxBytes(0);
+      assertNull(PassageWindowIndex.build(segments[0], "details"));
+      assertNull(PassageWindowIndex.getSegment(segments[0], "details"));
+
+      PassageWindowIndex.setMaxBytes(maxBytes);
+      PassageWindowIndex.Segment segment = PassageWindowIndex.build(segments[1], "details");
+      assertTrue(segment.bytes() > 16 * segment.numEntries());
+      PassageWindowIndex.setMaxBytes(0);
+      // segments already built are kept
+      assertSame(segment, PassageWindowIndex.getSegment(segments[1], "details"));
+      assertNull(PassageWindowIndex.build(segments[2], "details"));
+    } finally {
+      PassageWindowIndex.setMaxBytes(maxBytes);
+    }
+  }
+
+  @Test
+  public void testParallelRankingMatchesSerial() throws Exception {
+    Map<String, Float> termWeights = new HashMap<String, Float>();
+    termWeights.put("greatest", 0.3f);
+    termWeights.put("player", 0.2f);
+    Map<String, Float> bigramWeights = new HashMap<String, Float>();
+    SpanNearQuery query = new SpanNearQuery(new SpanQuery[]{
+        new SpanTermQuery(new Term("details", "greatest")),
+        new SpanTermQuery(new Term("details", "player"))}, 3, false);
+    PassageWindowIndex.WindowScorer scorer = new PassageWindowIndex.WindowScorer(termWeights, bigramWeights,
+        0.5f, 0.25f, 1.0f, 2, 2, 2);
+    // every document but the second
+    DocList docList = new DocSlice(0, 3, new int[]{3, 0, 2}, null, 3, 0f);
+
+    PassageRankingComponent component = new PassageRankingComponent();
+    List<String> serial = ranking(component.rankSegments(query, reader, docList, scorer, false));
+    assertEquals(Arrays.asList("0:14", "2:15", "3:0", "3:7"), docsAndStarts(serial));
+    // without windows, segments are ranked from term vectors
+    assertEquals(serial, ranking(component.rankSegments(query, reader, docList, scorer, true)));
+    // and with only some of them, from both
+    PassageWindowIndex.build(PassageWindowIndex.getSegments(reader)[0], "details");
+    assertEquals(serial, ranking(component.rankSegments(query, reader, docList, scorer, true)));
+    listener().build(reader);
+    assertEquals(serial, ranking(component.rankSegments(query, reader, docList, scorer, true)));
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      component.setExecutor(executor);
+      for (int i = 0; i < 10; i++) {
+        assertEquals(serial, ranking(component.rankSegments(query, reader, docList, scorer, false)));
+        assertEquals(serial, ranking(component.rankSegments(query, reader, docList, scorer, true)));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static PassageWindowListener listener() {
+    PassageWindowListener listener = new PassageWindowListener();
+    NamedList<Object> args = new NamedList<Object>();
+    args.add(PassageWindowListener.FIELDS_ARG, "details");
+    listener.init(args);
+    return listener;
+  }
+
+  private static List<String> ranking(PassageRankingComponent.PassagePriorityQueue queue) {
+    List<String> ranking = new ArrayList<String>();
+    PassageRankingComponent.Passage passage;
+    while ((passage = queue.pop()) != null) {
+      ranking.add(0, passage.lDocId + ":" + passage.windowStart + ":" + passage.score);
+    }
+    return ranking;
+  }
+
+  private static List<String> docsAndStarts(List<String> ranking) {
+    List<String> result = new ArrayList<String>();
+    for (String passage : ranking) {
+      result.add(passage.substring(0, passage.lastIndexOf(':')));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.solr.search.LRUCache;
+import org.apache.solr.search.SolrCache;
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class QuestionCacheTest extends TamingTextTestJ4 {
+
+  @Test
+  public void testNormalize() {
+    assertEquals("Who is the greatest hockey player?",
+        QuestionQParser.normalize("Who is the greatest hockey player?"));
+    assertEquals("Who is the greatest hockey player?",
+        QuestionQParser.normalize("  Who  is the\tgreatest\n\nhockey   player? \r\n"));
+    assertEquals("", QuestionQParser.normalize(" \t\n"));
+    assertEquals("", QuestionQParser.normalize(""));
+    // case matters to the tagger, so it is kept
+    assertEquals("who is WAYNE gretzky?", QuestionQParser.normalize("who is  WAYNE gretzky?"));
+  }
+
+  @Test
+  public void testCacheKey() {
+    assertEquals(QuestionQParser.cacheKey("details", "Who is the greatest hockey player?"),
+        QuestionQParser.cacheKey("details", " Who is  the greatest\thockey player? "));
+    assertFalse(QuestionQParser.cacheKey("details", "Who is Wayne Gretzky?")
+        .equals(QuestionQParser.cacheKey("details", "who is wayne gretzky?")));
+    assertFalse(QuestionQParser.cacheKey("details", "Who is Wayne Gretzky?")
+        .equals(QuestionQParser.cacheKey("title", "Who is Wayne Gretzky?")));
+  }
+
+  private static LRUCache<String, QuestionQParser.ParsedQuestion> newCache() {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("name", QuestionQParserPlugin.DEFAULT_QUESTION_CACHE);
+    args.put("size", "10");
+    args.put("autowarmCount", "10");
+    LRUCache<String, QuestionQParser.ParsedQuestion> cache = new LRUCache<String, QuestionQParser.ParsedQuestion>();
+    cache.init(args, null, new ParsedQuestionRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    return cache;
+  }
+
+  @Test
+  public void testRegeneratorCarriesEntriesOver() throws Exception {
+    LRUCache<String, QuestionQParser.ParsedQuestion> oldCache = newCache();
+    String key = QuestionQParser.cacheKey("details", "Who is the greatest hockey player?");
+    QuestionQParser.ParsedQuestion parsed = new QuestionQParser.ParsedQuestion("NE_PERSON",
+        Arrays.asList("ne_person", "greatest", "hockey", "player"));
+    oldCache.put(key, parsed);
+    LRUCache<String, QuestionQParser.ParsedQuestion> newCache = newCache();
+    // the parsed question doesn't depend on the index, so no searcher is needed
+    newCache.warm(null, oldCache);
+    assertSame(parsed, newCache.get(QuestionQParser.cacheKey("details", "Who is the greatest  hockey player?")));
+    assertNull(newCache.get(QuestionQParser.cacheKey("details", "Who is Wayne Gretzky?")));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class QuestionPipelinePoolTest extends TamingTextTestJ4 {
+
+  /** A pool of empty pipelines, so no models are needed. */
+  static class TestPool extends QuestionPipelinePool {
+    final AtomicBoolean fail = new AtomicBoolean();
+
+    TestPool(int maxSize) {
+      super(null, null, null, null, maxSize);
+    }
+
+    @Override
+    protected Pipeline newPipeline() throws IOException {
+      if (fail.get()) {
+        throw new IOException("no models");
+      }
+      return new Pipeline(null, null);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testSizeLimitAndReuse() throws Exception {
+    final int maxSize = 2;
+    final int threads = 8;
+    final int rounds = 25;
+    final TestPool pool = new TestPool(maxSize);
+    final Set<QuestionPipelinePool.Pipeline> seen =
+        Collections.synchronizedSet(Collections.newSetFromMap(
+            new IdentityHashMap<QuestionPipelinePool.Pipeline, Boolean>()));
+    final Set<QuestionPipelinePool.Pipeline> inUse =
+        Collections.synchronizedSet(Collections.newSetFromMap(
+            new IdentityHashMap<QuestionPipelinePool.Pipeline, Boolean>()));
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int t = 0; t < threads; t++) {
+        results.add(executor.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            start.await();
+            for (int i = 0; i < rounds; i++) {
+              QuestionPipelinePool.Pipeline pipeline = pool.acquire();
+              try {
+                assertTrue("pipeline shared by two threads", inUse.add(pipeline));
+                seen.add(pipeline);
+                Thread.sleep(1);
+              } finally {
+                inUse.remove(pipeline);
+                pool.release(pipeline);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(pool.getCreated() <= maxSize);
+    assertTrue(seen.size() <= maxSize);
+    assertEquals(threads * rounds, pool.getAcquisitions());
+    assertTrue(pool.getWaits() > 0);
+    assertTrue(pool.getTotalWaitNanos() > 0);
+    assertTrue(pool.getMaxWaitNanos() > 0);
+    assertTrue(pool.getMaxWaitNanos() <= pool.getTotalWaitNanos());
+  }
+
+  @Test
+  public void testFailedCreationIsNotCounted() throws Exception {
+    TestPool pool = new TestPool(1);
+    pool.fail.set(true);
+    try {
+      pool.acquire();
+      fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(0, pool.getCreated());
+    // the slot is still free, so the next acquisition creates a pipeline rather than waiting forever
+    pool.fail.set(false);
+    QuestionPipelinePool.Pipeline pipeline = pool.acquire();
+    assertEquals(1, pool.getCreated());
+    pool.release(pipeline);
+    assertSame(pipeline, pool.acquire());
+    assertEquals(0, pool.getWaits());
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.LRUCache;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class TermWeightCacheTest extends TamingTextTestJ4 {
+
+  private static final String[] QUERY_TERMS = {"greatest", "hockey", "player", "zamboni"};
+
+  private final PassageRankingComponent component = new PassageRankingComponent();
+
+  private static void addDocs(RAMDirectory dir, String... details) throws IOException {
+    IndexWriter writer = new IndexWriter(dir,
+        new IndexWriterConfig(Version.LUCENE_36, new WhitespaceAnalyzer(Version.LUCENE_36)));
+    for (String text : details) {
+      Document doc = new Document();
+      doc.add(new Field("details", text, Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+  }
+
+  private static SpanNearQuery query() {
+    SpanQuery[] clauses = new SpanQuery[QUERY_TERMS.length];
+    for (int i = 0; i < clauses.length; i++) {
+      clauses[i] = new SpanTermQuery(new Term("details", QUERY_TERMS[i]));
+    }
+    return new SpanNearQuery(clauses, 10, false);
+  }
+
+  private static LRUCache<Term, Float> newCache(CacheRegenerator regenerator) {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("name", PassageRankingComponent.DEFAULT_WEIGHT_CACHE);
+    args.put("size", "100");
+    args.put("autowarmCount", "100");
+    LRUCache<Term, Float> cache = new LRUCache<Term, Float>();
+    cache.init(args, null, regenerator);
+    cache.setState(SolrCache.State.LIVE);
+    return cache;
+  }
+
+  private void assertCachedWeights(IndexReader reader, SolrCache<Term, Float> cache) throws IOException {
+    Map<String, Float> uncached = new HashMap<String, Float>();
+    Map<String, Float> uncachedBigrams = new HashMap<String, Float>();
+    component.createWeights(null, query(), uncached, uncachedBigrams, reader);
+    Map<String, Float> cached = new HashMap<String, Float>();
+    Map<String, Float> cachedBigrams = new HashMap<String, Float>();
+    component.createWeights(null, query(), cached, cachedBigrams, reader, cache);
+    assertEquals(uncached, cached);
+    assertEquals(uncachedBigrams, cachedBigrams);
+    for (String text : QUERY_TERMS) {
+      Term term = new Term("details", text);
+      assertEquals(component.calculateWeight(term, reader), cache.get(term).floatValue(), 0f);
+    }
+  }
+
+  @Test
+  public void testCachedWeightsMatchAndSurviveRegeneration() throws Exception {
+    RAMDirectory dir = new RAMDirectory();
+    addDocs(dir, "Michael Jordan is the greatest basketball player of all time",
+        "Wayne Gretzky is the greatest hockey player of all time");
+    IndexReader oldReader = IndexReader.open(dir);
+    final TermWeightRegenerator regenerator = new TermWeightRegenerator();
+    LRUCache<Term, Float> oldCache = newCache(regenerator);
+    assertCachedWeights(oldReader, oldCache);
+    assertEquals(QUERY_TERMS.length, oldCache.size());
+
+    // the docFreqs change, and the new cache is warmed from the old one
+    addDocs(dir, "Bobby Orr played hockey", "the greatest zamboni driver");
+    final IndexReader newReader = IndexReader.open(dir);
+    LRUCache<Term, Float> newCache = newCache(new CacheRegenerator() {
+      public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache,
+                                    Object oldKey, Object oldVal) throws IOException {
+        @SuppressWarnings("unchecked")
+        SolrCache<Term, Float> cache = newCache;
+        regenerator.regenerate(newReader, cache, (Term) oldKey);
+        return true;
+      }
+    });
+    newCache.warm(null, oldCache);
+    assertEquals(QUERY_TERMS.length, newCache.size());
+    assertEquals(0.5f, oldCache.get(new Term("details", "greatest")).floatValue(), 0f);
+    assertEquals(1f / 3, newCache.get(new Term("details", "greatest")).floatValue(), 0f);
+    assertCachedWeights(newReader, newCache);
+    assertEquals(QUERY_TERMS.length, newCache.size());
+
+    oldReader.close();
+    newReader.close();
+  }
+}
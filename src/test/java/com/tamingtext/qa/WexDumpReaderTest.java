@@ -0,0 +1,117 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.lucene.benchmark.byTask.feeds.DocData;
+import org.apache.lucene.benchmark.byTask.utils.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class WexDumpReaderTest extends TamingTextTestJ4 {
+
+  private File dump;
+
+  @Before
+  public void writeDump() throws IOException {
+    dump = File.createTempFile("wex", ".tsv");
+    Writer out = new OutputStreamWriter(new FileOutputStream(dump), "UTF-8");
+    try {
+      for (int i = 0; i < 40; i++) {
+        String title = i % 3 == 0 ? "Café " + i : "Title " + i;
+        out.write(i + "\t" + title + "\t2009-01-0" + (i % 9 + 1)
+            + "\t<link><target>Category:A" + i + "</target></link><link><target>Category:B</target></link>"
+            + "\tBody of article " + i + (i % 4 == 0 ? "\r\n" : "\n"));
+        if (i % 7 == 0) {
+          out.write("malformed\tline\n");
+        }
+      }
+      out.write("40\tLast\t2009-01-01\t\tNo newline at the end");
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void deleteDump() {
+    dump.delete();
+  }
+
+  private static List<String> read(WexDumpReader reader) throws IOException {
+    List<String> articles = new ArrayList<String>();
+    try {
+      while (reader.next()) {
+        articles.add(reader.getIdAsInt() + "|" + reader.getTitle() + "|" + reader.getDate() + "|"
+            + reader.getCategories() + "|" + reader.getBody());
+      }
+    } finally {
+      reader.close();
+    }
+    return articles;
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    List<String> articles = read(new WexDumpReader(dump));
+    assertEquals(41, articles.size());
+    assertEquals("0|Café 0|2009-01-01|[A0, B]|Body of article 0", articles.get(0));
+    assertEquals("1|Title 1|2009-01-02|[A1, B]|Body of article 1", articles.get(1));
+    assertEquals("40|Last|2009-01-01|[]|No newline at the end", articles.get(40));
+  }
+
+  @Test
+  public void testRanges() throws Exception {
+    List<String> expected = read(new WexDumpReader(dump));
+    for (int n = 1; n <= 13; n += 3) {
+      long[] bounds = WexDumpReader.split(dump, n);
+      assertEquals(dump.length(), bounds[n]);
+      List<String> articles = new ArrayList<String>();
+      for (int i = 0; i < n; i++) {
+        articles.addAll(read(new WexDumpReader(dump, bounds[i], bounds[i + 1], 300)));
+      }
+      assertEquals("ranges: " + n, expected, articles);
+    }
+  }
+
+  @Test
+  public void testContentSource() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("docs.file", dump.getAbsolutePath());
+    WexWikiContentSource source = new WexWikiContentSource();
+    source.setConfig(new Config(properties));
+    source.resetInputs();
+    DocData docData = source.getNextDocData(new DocData());
+    assertEquals(0, docData.getID());
+    assertEquals("Café 0", docData.getTitle());
+    assertEquals("A0;;B;;", docData.getProps().getProperty("category"));
+    source.close();
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.qa;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class WikipediaWexIndexerTest extends TamingTextTestJ4 {
+
+  /** Records the docids of the documents added. */
+  static class RecordingServer extends SolrServer {
+    final Set<String> docids = new TreeSet<String>();
+
+    @Override
+    public synchronized NamedList<Object> request(SolrRequest request) throws IOException {
+      if (request instanceof UpdateRequest && ((UpdateRequest) request).getDocuments() != null) {
+        for (SolrInputDocument doc : ((UpdateRequest) request).getDocuments()) {
+          docids.add((String) doc.getFieldValue("docid"));
+        }
+      }
+      return new NamedList<Object>();
+    }
+  }
+
+  /** Fails every update. */
+  static class FailingServer extends SolrServer {
+    @Override
+    public NamedList<Object> request(SolrRequest request) throws SolrServerException {
+      throw new SolrServerException("Solr is down");
+    }
+  }
+
+  /**
+   * Like Solr 3.6, which has no update log, only keeps the documents added since the last commit until it is
+   * restarted.  Checks on every request that the checkpoint only covers committed documents.
+   */
+  static class CommittingServer extends SolrServer {
+    final Set<String> pending = new HashSet<String>();
+    final Set<String> committed = new HashSet<String>();
+    final List<String> violations = new ArrayList<String>();
+    final File checkpoint;
+    final String dumpPath;
+    int addsBeforeCrash = Integer.MAX_VALUE;
+    boolean down;
+
+    CommittingServer(File checkpoint, File dump) {
+      this.checkpoint = checkpoint;
+      this.dumpPath = dump.getAbsolutePath();
+    }
+
+    @Override
+    public synchronized NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+      checkCheckpoint();
+      if (down) {
+        throw new SolrServerException("Solr is still down");
+      }
+      UpdateRequest update = (UpdateRequest) request;
+      if (update.getDocuments() != null) {
+        if (addsBeforeCrash-- == 0) {
+          down = true;
+          throw new SolrServerException("Solr went down");
+        }
+        for (SolrInputDocument doc : update.getDocuments()) {
+          pending.add((String) doc.getFieldValue("docid"));
+        }
+      }
+      if (update.getAction() == AbstractUpdateRequest.ACTION.COMMIT
+          || update.getAction() == AbstractUpdateRequest.ACTION.OPTIMIZE) {
+        committed.addAll(pending);
+        pending.clear();
+      }
+      return new NamedList<Object>();
+    }
+
+    synchronized void restart() {
+      pending.clear();
+      down = false;
+      addsBeforeCrash = Integer.MAX_VALUE;
+    }
+
+    private void checkCheckpoint() throws IOException {
+      if (!checkpoint.exists()) {
+        return;
+      }
+      Properties checkpoints = new Properties();
+      InputStream in = new FileInputStream(checkpoint);
+      try {
+        checkpoints.load(in);
+      } finally {
+        in.close();
+      }
+      int position = Integer.parseInt(checkpoints.getProperty(dumpPath, "0"));
+      for (int i = 0; i < position; i++) {
+        if (!committed.contains(String.valueOf(i))) {
+          violations.add("checkpoint " + position + " covers uncommitted doc " + i);
+          return;
+        }
+      }
+    }
+  }
+
+  private File writeDump(int numArticles) throws IOException {
+    File file = File.createTempFile("wex", ".tsv");
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      for (int i = 0; i < numArticles; i++) {
+        out.write(i + "\tTitle " + i + "\t2009-01-01\t<target>Category:Test</target>\tBody of article " + i + "\n");
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void testIndexAndResume() throws Exception {
+    File dump = writeDump(57);
+    File checkpoint = File.createTempFile("wex", ".checkpoint");
+    checkpoint.delete();
+    try {
+      RecordingServer server = new RecordingServer();
+      WikipediaWexIndexer indexer = new WikipediaWexIndexer(server);
+      indexer.setNumWorkers(3);
+      indexer.setNumSenders(2);
+      indexer.setQueueSize(4);
+      indexer.setCheckpointFile(checkpoint);
+      assertEquals(20, indexer.index(dump, 20, 6));
+      assertEquals(20, server.docids.size());
+
+      // a second run picks up after the first 20
+      assertEquals(37, indexer.index(dump, Integer.MAX_VALUE, 6));
+      assertEquals(57, server.docids.size());
+      assertEquals(0, indexer.index(dump, Integer.MAX_VALUE, 6));
+    } finally {
+      dump.delete();
+      checkpoint.delete();
+    }
+  }
+
+  @Test
+  public void testResumeAfterSentButNotCommitted() throws Exception {
+    File dump = writeDump(60);
+    File checkpoint = File.createTempFile("wex", ".checkpoint");
+    checkpoint.delete();
+    try {
+      CommittingServer server = new CommittingServer(checkpoint, dump);
+      WikipediaWexIndexer indexer = new WikipediaWexIndexer(server);
+      indexer.setNumWorkers(2);
+      indexer.setNumSenders(2);
+      indexer.setQueueSize(4);
+      indexer.setCheckpointFile(checkpoint);
+      // commit and checkpoint as often as possible
+      indexer.setReportIntervalMs(1);
+      // Solr goes down after 30 docs have been added, with some of them not yet committed
+      server.addsBeforeCrash = 6;
+      try {
+        indexer.index(dump, Integer.MAX_VALUE, 5);
+        fail("Expected SolrServerException");
+      } catch (SolrServerException e) {
+        // not the failure to commit afterwards
+        assertEquals("Solr went down", e.getMessage());
+      }
+      server.restart();
+
+      indexer.index(dump, Integer.MAX_VALUE, 5);
+      assertEquals(60, server.committed.size());
+      assertTrue(server.pending.isEmpty());
+      assertEquals(new ArrayList<String>(), server.violations);
+    } finally {
+      dump.delete();
+      checkpoint.delete();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testFailureStopsThePipeline() throws Exception {
+    File dump = writeDump(500);
+    Set<Thread> before = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+    try {
+      WikipediaWexIndexer indexer = new WikipediaWexIndexer(new FailingServer());
+      indexer.setNumWorkers(3);
+      indexer.setNumSenders(2);
+      // small queues, so the reader and workers are left blocked on full queues
+      indexer.setQueueSize(2);
+      try {
+        indexer.index(dump, Integer.MAX_VALUE, 5);
+        fail("Expected SolrServerException");
+      } catch (SolrServerException e) {
+        assertEquals("Solr is down", e.getMessage());
+      }
+      // every thread of the run finishes rather than waiting on a queue forever
+      Set<Thread> alive = new HashSet<Thread>();
+      for (long deadline = System.currentTimeMillis() + 10000; System.currentTimeMillis() < deadline; ) {
+        alive.clear();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+          if (!before.contains(thread) && thread.isAlive() && thread.getName().startsWith("wexIndexer-")) {
+            alive.add(thread);
+          }
+        }
+        if (alive.isEmpty()) {
+          break;
+        }
+        Thread.sleep(50);
+      }
+      assertTrue("Threads still running: " + alive, alive.isEmpty());
+    } finally {
+      dump.delete();
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2008-2011 Grant Ingersoll, Thomas Morton and Drew Farris
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * -------------------
+ * To purchase or learn more about Taming Text, by Grant Ingersoll, Thomas Morton and Drew Farris, visit
+ * http://www.manning.com/ingersoll
+ */
+
+package com.tamingtext.texttamer.solr;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Test;
+
+import com.tamingtext.TamingTextTestJ4;
+
+public class NameFilterFactoryTest extends TamingTextTestJ4 {
+
+  @Test
+  public void testSharedExecutor() {
+    ThreadPoolExecutor executor = (ThreadPoolExecutor) NameFilterFactory.sharedExecutor(2);
+    int size = executor.getMaximumPoolSize();
+    assertTrue(size >= 2);
+    // a reloaded core gets the same pool rather than a new one
+    assertSame(executor, NameFilterFactory.sharedExecutor(2));
+    assertEquals(size, executor.getMaximumPoolSize());
+    // which grows for a factory wanting more threads
+    assertSame(executor, NameFilterFactory.sharedExecutor(size + 2));
+    assertEquals(size + 2, executor.getMaximumPoolSize());
+    assertEquals(size + 2, executor.getCorePoolSize());
+    assertFalse(executor.isShutdown());
+  }
+}
@@ -25,6 +25,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 import opennlp.tools.namefind.NameFinderME;
@@ -41,6 +45,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.tamingtext.TamingTextTestJ4;
+import com.tamingtext.util.NameFinderFactory;
 
 
 public class NameFilterTest extends TamingTextTestJ4 {
@@ -57,6 +62,7 @@ public class NameFilterTest extends TamingTextTestJ4 {
   };
   
   private static SentenceDetector detector;
+  private static TokenNameFinderModel[] models;
   private static NameFinderME[] finder;
 
   @BeforeClass 
@@ -64,12 +70,14 @@ public class NameFilterTest extends TamingTextTestJ4 {
 
     File modelDir = getModelDir();
      
+    models = new TokenNameFinderModel[modelName.length];
     finder = new NameFinderME[modelName.length];
     for (int i=0; i < modelName.length; i++) {
-      finder[i] = new NameFinderME(new TokenNameFinderModel(
+      models[i] = new TokenNameFinderModel(
           new FileInputStream(
               new File(modelDir, "en-ner-" + modelName[i] + ".bin")
-              )));
+              ));
+      finder[i] = new NameFinderME(models[i]);
     }
 
     File modelFile = new File(modelDir, "en-sent.bin");
@@ -97,9 +105,22 @@ public class NameFilterTest extends TamingTextTestJ4 {
   };
 
   @Test public void testNameFilter() throws IOException {
+    assertNameFilter(null);
+  }
+
+  @Test public void testNameFilterConcurrentFinders() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      assertNameFilter(executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void assertNameFilter(ExecutorService executor) throws IOException {
     Reader in = new StringReader(input);
     Tokenizer tok = new SentenceTokenizer(in, detector);
-    NameFilter nf = new NameFilter(tok, modelName, finder);
+    NameFilter nf = new NameFilter(tok, modelName, finder, executor);
 
     CharTermAttribute cta;
     PositionIncrementAttribute pta;
@@ -149,4 +170,77 @@ public class NameFilterTest extends TamingTextTestJ4 {
       pass++;
     }
   }
+
+  /** Counts the calls to {@link #clearAdaptiveData()}. */
+  static class CountingNameFinder extends NameFinderME {
+    final AtomicInteger cleared = new AtomicInteger();
+
+    CountingNameFinder(TokenNameFinderModel model) {
+      super(model);
+    }
+
+    @Override
+    public void clearAdaptiveData() {
+      cleared.incrementAndGet();
+      super.clearAdaptiveData();
+    }
+  }
+
+  @Test public void testResetClearsAdaptiveData() throws IOException {
+    CountingNameFinder[] finders = new CountingNameFinder[models.length];
+    for (int i = 0; i < models.length; i++) {
+      finders[i] = new CountingNameFinder(models[i]);
+    }
+    Tokenizer tok = new SentenceTokenizer(new StringReader(input), detector);
+    NameFilter nf = new NameFilter(tok, modelName, finders);
+    for (int doc = 1; doc <= 2; doc++) {
+      int count = 0;
+      while (nf.incrementToken()) {
+        count++;
+      }
+      assertEquals(tokenStrings.length, count);
+      nf.end();
+      for (CountingNameFinder f : finders) {
+        assertEquals(doc - 1, f.cleared.get());
+      }
+      // Solr resets the stream before reusing it for the next document
+      tok.reset(new StringReader(input));
+      nf.reset();
+      for (CountingNameFinder f : finders) {
+        assertEquals(doc, f.cleared.get());
+      }
+    }
+  }
+
+  @Test public void testNameFinderPerThread() throws Exception {
+    final NameFinderFactory factory = new NameFinderFactory("en", getModelDir().getAbsolutePath());
+    NameFinderME[] mine = factory.getNameFinders();
+    assertSame(mine, factory.getNameFinders());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    NameFinderME[] theirs;
+    try {
+      theirs = executor.submit(new Callable<NameFinderME[]>() {
+        public NameFinderME[] call() {
+          return factory.getNameFinders();
+        }
+      }).get();
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(mine.length, theirs.length);
+    for (int i = 0; i < mine.length; i++) {
+      assertNotSame(mine[i], theirs[i]);
+    }
+    NameFinderME[] created = factory.createNameFinders();
+    for (int i = 0; i < mine.length; i++) {
+      assertNotSame(mine[i], created[i]);
+    }
+    // over the same models, read once and shared with other factories
+    TokenNameFinderModel[] models = factory.getModels();
+    TokenNameFinderModel[] again = new NameFinderFactory("en", getModelDir().getAbsolutePath()).getModels();
+    assertEquals(mine.length, models.length);
+    for (int i = 0; i < models.length; i++) {
+      assertSame(models[i], again[i]);
+    }
+  }
 }